@@ -24,32 +24,27 @@
 
 package org.neo4j.hintplugin.centrality;
 
-import java.nio.charset.Charset;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.Status;
-import static org.neo4j.graphalgo.GraphAlgoFactory.allPaths;
-import static org.neo4j.kernel.Traversal.expanderForAllTypes;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
-import org.neo4j.helpers.collection.IteratorUtil;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 /**
  * Betweeness Class
  * Returns the Betweenness Centrality given a target node.
+ * The betweenness of all the nodes is computed once over the KNOWS
+ * relationships of the GraphSnapshot, then every request is a lookup.
+ * The first request can set how many threads share that computation.
  * @see (Brandes, U. (2001). A Faster Algorithm for Betweenness Centrality)
  * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
  * @author  Reaumobile, SNA Team (Universidad de las Américas Puebla). http://ict.udlap.mx/
@@ -60,12 +55,8 @@ import java.util.List;
 @Path("/betweenness")
 public class Betweenness {
     private final GraphDatabaseService database;
-    /**
-     * Relationships types allowed in this class.
-     */
-    private enum MyRelationshipTypes implements RelationshipType {
-        KNOWS
-    }
+    private double normalized;
+    private double errorBound;
     /**
      * The constructor that passes the database service.
      */
@@ -74,18 +65,52 @@ public class Betweenness {
     }
     /**
      * RESTFUL Betweenness Service
+     * Exact by default, approximate when samples or epsilon are given.
      * @param target the target node ID
+     * @param weighted true to use the KNOWS "weight" as the relationship length.
+     * @param parallelism number of threads (defaults to, and at most, the available processors).
+     * @param samples number of random pivots for the approximate mode.
+     * @param epsilon error (relative to n(n-2)/2) for the approximate mode,
+     *                used to derive the number of pivots when samples is not given.
+     * @param confidence probability that the error bound holds, in (0, 1);
+     *                   400 if it or epsilon is out of range.
      * @return double as the betweenness value.
      */
     @GET
     @Produces( MediaType.TEXT_PLAIN )
     @Path( "/{target}" )
-    public Response betweeness(@PathParam("target") long targetNode) {
+    public Response betweeness(@PathParam("target") long targetNode,
+                               @QueryParam("weighted") @DefaultValue("false") boolean weighted,
+                               @QueryParam("parallelism") @DefaultValue("0") int parallelism,
+                               @QueryParam("samples") @DefaultValue("0") int samples,
+                               @QueryParam("epsilon") @DefaultValue("0") double epsilon,
+                               @QueryParam("confidence") @DefaultValue("0.95") double confidence) {
+        if (parallelism <= 0)
+            parallelism = Runtime.getRuntime().availableProcessors();
+        parallelism = Brandes.workers(parallelism);
         Gson       gson = new GsonBuilder().create();
         JsonObject obj  = new JsonObject();
+        try {
+            if (samples <= 0 && epsilon != 0)
+                samples = Brandes.samplesFor(epsilon, confidence);
+            if (samples > 0)
+                Brandes.checkConfidence(confidence);
+        } catch (IllegalArgumentException ex) {
+            obj.addProperty("error", ex.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST)
+                .entity(gson.toJson(obj)).type(MediaType.APPLICATION_JSON).build();
+        }
         try{
-            obj.addProperty("betweenness", this.getBetweenness(targetNode));
+            obj.addProperty("betweenness", this.getBetweenness(targetNode, weighted, parallelism, samples, confidence));
+            obj.addProperty("normalized",  this.normalized);
             obj.addProperty("targetNode",  targetNode);
+            obj.addProperty("weighted",    weighted);
+            obj.addProperty("approximate", this.errorBound > 0);
+            if (this.errorBound > 0) {
+                obj.addProperty("samples",    samples);
+                obj.addProperty("errorBound", this.errorBound);
+                obj.addProperty("confidence", confidence);
+            }
         } catch (Exception ex) {
             System.err.println("Centrality.Betweenness" + ex);
         }
@@ -95,64 +120,28 @@ public class Betweenness {
     /**
      * Calculates Betweenness given a target node
      * @param target the target node ID
+     * @param weighted true to run Dijkstra instead of BFS.
+     * @param parallelism number of threads used if it has to be computed.
+     * @param samples number of pivots, 0 (or at least n) for the exact value.
+     * @param confidence probability that the error bound holds.
      * @return double as the betweenness value.
      */
-    private double getBetweenness(long targetNodeId) {
-       double betweeness = 0.0;/* 
-        List shortestPathStack = new ArrayList();
-        Transaction tx = database.beginTx();
-        try {
-            Node targetNode = database.getNodeById(targetNodeId);
-            
-        } catch (Exception e) {
-           // GraphAlgoFactory.dijkstra().findAllPaths(nodea,nodeb)
-        }*/
-        /**
-        int v, w;
-		for(w = 0; w < size; w++)
-			CB[w] = 0.0;
-		for(int s = 0; s < size; s++){
-			Pred.clear();
-			// Initialization - Begin
-			for(w = 0; w < size; w++){
-				Pred.add(new ArrayList<Integer>());
-				sigma[w] = 0;
-				dist[w] = -1;
-			}
-			sigma[s] = 1;
-			dist[s] = 0;
-			Q.add(s);
-			// Initialization - End
-			while(!Q.isEmpty()){
-				v = Q.poll();
-				S.push(v);
-				for(w = 0; w < size; w++)
-					if(G[v][w] > 0){
-						if(dist[w] < 0){
-							Q.add(w);
-							dist[w] = dist[v] + 1;
-						}
-						if(dist[w] == (dist[v] + 1)){
-							sigma[w] = sigma[w] + sigma[v];
-							Pred.get(w).add(v);
-						}
-					}
-			}
-			// Accumulation - Begin
-			for(w = 0; w < size; w++)
-				delta[w] = 0.0;
-			while(!S.empty()){
-				w = S.pop();
-				for(int v1 : Pred.get(w))
-					delta[v1] = delta[v1] + (sigma[v1] + 0.0)/sigma[w]*(1 + delta[w]);
-				if(w != s)
-					CB[w] = CB[w] + delta[w];
-			}
-			// Accumulation - End
-		}
-		for(v = 0; v < size; v++)
-			System.out.println(v + " " + CB[v]);
-         */
-        return betweeness;
+    private double getBetweenness(long targetNodeId, boolean weighted, int parallelism,
+                                  int samples, double confidence) {
+        GraphSnapshot graph = GraphSnapshot.get(this.database);
+        int target = graph.indexOf(targetNodeId);
+        if (target < 0)
+            throw new IllegalArgumentException("Node " + targetNodeId + " is not in the snapshot");
+        double betweenness;
+        this.errorBound = 0.0;
+        if (samples > 0 && samples < graph.size()) {
+            betweenness = Brandes.estimate(graph, GraphSnapshot.Rels.KNOWS, weighted, samples, parallelism)[target];
+            this.errorBound = Brandes.errorBound(graph, samples, confidence);
+        } else {
+            betweenness = Brandes.betweenness(graph, GraphSnapshot.Rels.KNOWS, weighted, parallelism)[target];
+        }
+        double pairs = (graph.size() - 1.0) * (graph.size() - 2.0) / 2.0;
+        this.normalized = (pairs > 0) ? betweenness / pairs : 0.0;
+        return betweenness;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,466 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.centrality;
+
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Brandes Class
+ * Betweenness Centrality for all the nodes of a GraphSnapshot in O(nm),
+ * using a BFS per source for unweighted graphs and Dijkstra for weighted ones.
+ * Relationships are followed in both directions, so every value is already
+ * divided by 2 (each pair s,t is counted once).
+ * The sources are split across a ForkJoinPool, every worker keeps its own
+ * arrays for all the sources it takes and its own partial vector, and the
+ * partial vectors are added up at the end.
+ * For large graphs the betweenness can be estimated from a random sample
+ * of sources (pivots) instead of all of them.
+ * @see (Brandes, U. (2001). A Faster Algorithm for Betweenness Centrality)
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class Brandes {
+    /**
+     * Computed vectors by snapshot, keyed by the mode they were computed with.
+     */
+    private static final Map<GraphSnapshot, Map<String, FutureTask<double[]>>> results =
+        new WeakHashMap<GraphSnapshot, Map<String, FutureTask<double[]>>>();
+    
+    private Brandes() {
+    }
+    /**
+     * Returns the cached betweenness vector of a snapshot, computing it if needed.
+     * @param graph:    the snapshot to work on.
+     * @param type:     the relationship type to follow.
+     * @param weighted: true to use the "weight" of the relationships as length.
+     * @param parallelism: the number of workers used if it has to be computed.
+     * @return double[] the betweenness of every node index.
+     */
+    public static double[] betweenness(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                       boolean weighted, int parallelism) {
+        return cached(graph, type, weighted, 0, parallelism);
+    }
+    /**
+     * Returns the cached estimate of a snapshot computed from k random pivots,
+     * computing it if needed.
+     * @param graph:    the snapshot to work on.
+     * @param type:     the relationship type to follow.
+     * @param weighted: true to use the "weight" of the relationships as length.
+     * @param samples:  the number of pivots.
+     * @param parallelism: the number of workers used if it has to be computed.
+     * @return double[] the estimated betweenness of every node index.
+     */
+    public static double[] estimate(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                    boolean weighted, int samples, int parallelism) {
+        return cached(graph, type, weighted, samples, parallelism);
+    }
+    private static double[] cached(final GraphSnapshot graph, final GraphSnapshot.Rels type,
+                                   final boolean weighted, int samples, final int parallelism) {
+        final int pivots = (samples >= graph.size()) ? 0 : samples;
+        String key = type.name() + (weighted ? "-weighted" : "") + "-" + pivots;
+        FutureTask<double[]> task;
+        boolean owner = false;
+        // The lock only guards the map, the searches run outside of it...
+        synchronized (results) {
+            Map<String, FutureTask<double[]>> cached = results.get(graph);
+            if (cached == null) {
+                cached = new HashMap<String, FutureTask<double[]>>();
+                results.put(graph, cached);
+            }
+            task = cached.get(key);
+            if (task == null) {
+                task = new FutureTask<double[]>(new Callable<double[]>() {
+                    public double[] call() {
+                        return (pivots > 0)
+                            ? sample(graph, type, weighted, pivots, parallelism, new Random())
+                            : compute(graph, type, weighted, parallelism);
+                    }
+                });
+                cached.put(key, task);
+                owner = true;
+            }
+        }
+        if (owner)
+            task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // Not cached, the next request tries again...
+            synchronized (results) {
+                Map<String, FutureTask<double[]>> cached = results.get(graph);
+                if (cached != null && cached.get(key) == task)
+                    cached.remove(key);
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Runs Brandes from every node of the snapshot.
+     * @param graph:    the snapshot to work on.
+     * @param type:     the relationship type to follow.
+     * @param weighted: true to use the "weight" of the relationships as length.
+     * @param parallelism: the number of workers, 1 runs in the calling thread.
+     */
+    public static double[] compute(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                   boolean weighted, int parallelism) {
+        int[] sources = new int[graph.size()];
+        for (int s = 0; s < sources.length; s++)
+            sources[s] = s;
+        return accumulate(graph, type, weighted, sources, 0.5, parallelism);
+    }
+    /**
+     * Estimates the betweenness of every node from k pivots drawn uniformly
+     * at random (with replacement), scaling their dependencies by n/k.
+     * @see (Brandes, U., Pich, C. (2007). Centrality Estimation in Large Networks)
+     * @param graph:    the snapshot to work on.
+     * @param type:     the relationship type to follow.
+     * @param weighted: true to use the "weight" of the relationships as length.
+     * @param samples:  the number of pivots k.
+     * @param parallelism: the number of workers, 1 runs in the calling thread.
+     * @param random:   the source of the pivots.
+     */
+    public static double[] sample(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                  boolean weighted, int samples, int parallelism,
+                                  Random random) {
+        int[] pivots = new int[samples];
+        for (int i = 0; i < samples; i++)
+            pivots[i] = random.nextInt(graph.size());
+        return accumulate(graph, type, weighted, pivots,
+                          graph.size() / (2.0 * samples), parallelism);
+    }
+    /**
+     * Number of pivots needed so that, with the given confidence, each estimate
+     * is within epsilon * n(n-2)/2 of the exact value (Hoeffding bound).
+     * @throws IllegalArgumentException unless epsilon > 0 and 0 < confidence < 1.
+     */
+    public static int samplesFor(double epsilon, double confidence) {
+        if (!(epsilon > 0))
+            throw new IllegalArgumentException("epsilon must be positive: " + epsilon);
+        checkConfidence(confidence);
+        return (int)Math.ceil(Math.log(2.0 / (1.0 - confidence)) / (2.0 * epsilon * epsilon));
+    }
+    /**
+     * @throws IllegalArgumentException unless 0 < confidence < 1.
+     */
+    public static void checkConfidence(double confidence) {
+        if (!(confidence > 0 && confidence < 1))
+            throw new IllegalArgumentException("confidence must be in (0, 1): " + confidence);
+    }
+    /**
+     * The absolute error of an estimate from k pivots that holds with the
+     * given confidence, for a single node (Hoeffding bound).
+     */
+    public static double errorBound(GraphSnapshot graph, int samples, double confidence) {
+        checkConfidence(confidence);
+        double epsilon = Math.sqrt(Math.log(2.0 / (1.0 - confidence)) / (2.0 * samples));
+        return epsilon * graph.size() * (graph.size() - 2.0) / 2.0;
+    }
+    /**
+     * Adds the dependencies of the given sources and scales the result.
+     * @param sources:  the source node indices (may repeat).
+     * @param scale:    the factor applied to the summed dependencies.
+     * @param parallelism: the number of workers, 1 runs in the calling thread.
+     */
+    private static double[] accumulate(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                       boolean weighted, int[] sources, double scale,
+                                       int parallelism) {
+        double[] cb;
+        parallelism = workers(parallelism);
+        if (parallelism <= 1) {
+            cb = new double[graph.size()];
+            Worker worker = new Worker(graph, type, weighted);
+            for (int s : sources)
+                worker.accumulate(s, cb);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                cb = pool.invoke(new AllSources(graph, type, weighted, sources, parallelism));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        for (int v = 0; v < cb.length; v++)
+            cb[v] = cb[v] * scale;
+        return cb;
+    }
+    /**
+     * The number of workers actually used, in [1, available processors]:
+     * every worker holds several node-sized arrays.
+     */
+    static int workers(int parallelism) {
+        return Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+    }
+    /**
+     * Length of an adjacency entry, relationships without a positive weight count as 1.
+     */
+    static double length(GraphSnapshot graph, int e, boolean weighted) {
+        if (!weighted)
+            return 1.0;
+        double w = graph.weight(e);
+        return (w > 0.0) ? w : 1.0;
+    }
+    
+    /**
+     * Forks one SourceBlocks task per worker and adds up their partial vectors.
+     */
+    private static final class AllSources extends RecursiveTask<double[]> {
+        private final GraphSnapshot graph;
+        private final GraphSnapshot.Rels type;
+        private final boolean weighted;
+        private final int[] sources;
+        private final int parallelism;
+        
+        AllSources(GraphSnapshot graph, GraphSnapshot.Rels type, boolean weighted,
+                   int[] sources, int parallelism) {
+            this.graph       = graph;
+            this.type        = type;
+            this.weighted    = weighted;
+            this.sources     = sources;
+            this.parallelism = parallelism;
+        }
+        @Override
+        protected double[] compute() {
+            AtomicInteger next = new AtomicInteger();
+            List<SourceBlocks> tasks = new ArrayList<SourceBlocks>();
+            for (int i = 0; i < this.parallelism; i++) {
+                SourceBlocks task = new SourceBlocks(this.graph, this.type, this.weighted,
+                                                     this.sources, next);
+                tasks.add(task);
+                task.fork();
+            }
+            double[] cb = new double[this.graph.size()];
+            for (SourceBlocks task : tasks) {
+                double[] partial = task.join();
+                for (int v = 0; v < cb.length; v++)
+                    cb[v] += partial[v];
+            }
+            return cb;
+        }
+    }
+    /**
+     * Takes blocks of sources from a shared counter until none is left,
+     * so a worker that hits cheap sources just takes more of them.
+     */
+    private static final class SourceBlocks extends RecursiveTask<double[]> {
+        private static final int BLOCK = 64;
+        private final GraphSnapshot graph;
+        private final GraphSnapshot.Rels type;
+        private final boolean weighted;
+        private final int[] sources;
+        private final AtomicInteger next;
+        
+        SourceBlocks(GraphSnapshot graph, GraphSnapshot.Rels type, boolean weighted,
+                     int[] sources, AtomicInteger next) {
+            this.graph    = graph;
+            this.type     = type;
+            this.weighted = weighted;
+            this.sources  = sources;
+            this.next     = next;
+        }
+        @Override
+        protected double[] compute() {
+            double[] cb = new double[this.graph.size()];
+            Worker worker = new Worker(this.graph, this.type, this.weighted);
+            int first;
+            while ((first = this.next.getAndAdd(BLOCK)) < this.sources.length) {
+                int last = Math.min(first + BLOCK, this.sources.length);
+                for (int i = first; i < last; i++)
+                    worker.accumulate(this.sources[i], cb);
+            }
+            return cb;
+        }
+    }
+    
+    /**
+     * The per-source state of Brandes, allocated once and reused for every source.
+     */
+    static final class Worker {
+        private final GraphSnapshot graph;
+        private final GraphSnapshot.Rels type;
+        private final boolean weighted;
+        private final double[] sigma;
+        private final double[] delta;
+        private final double[] dist;
+        private final int[]    stack;
+        private final int[]    queue;
+        private int[]    heapNodes;
+        private double[] heapKeys;
+        
+        Worker(GraphSnapshot graph, GraphSnapshot.Rels type, boolean weighted) {
+            int n = graph.size();
+            this.graph    = graph;
+            this.type     = type;
+            this.weighted = weighted;
+            this.sigma    = new double[n];
+            this.delta    = new double[n];
+            this.dist     = new double[n];
+            this.stack    = new int[n];
+            this.queue    = new int[n];
+            this.heapNodes = new int[16];
+            this.heapKeys  = new double[16];
+            Arrays.fill(this.dist, Double.POSITIVE_INFINITY);
+        }
+        /**
+         * Adds the dependencies of source s to cb.
+         * @param s:  the source node index.
+         * @param cb: the betweenness accumulator.
+         */
+        void accumulate(int s, double[] cb) {
+            int size = this.weighted ? this.dijkstra(s) : this.bfs(s);
+            // Accumulation, nodes in non-increasing distance from s...
+            for (int i = size - 1; i >= 0; i--) {
+                int w = this.stack[i];
+                double coefficient = (1.0 + this.delta[w]) / this.sigma[w];
+                for (int e = graph.begin(w, type); e < graph.end(w, type); e++) {
+                    int v = graph.target(e);
+                    if (this.dist[v] + length(graph, e, weighted) == this.dist[w])
+                        this.delta[v] += this.sigma[v] * coefficient;
+                }
+                if (w != s)
+                    cb[w] += this.delta[w];
+            }
+            // Reset only what this source touched...
+            for (int i = 0; i < size; i++) {
+                int v = this.stack[i];
+                this.sigma[v] = 0.0;
+                this.delta[v] = 0.0;
+                this.dist[v]  = Double.POSITIVE_INFINITY;
+            }
+        }
+        /**
+         * Single source shortest paths counting for unweighted graphs.
+         * @return int the number of nodes reached (stored in stack).
+         */
+        private int bfs(int s) {
+            int head = 0, tail = 0, size = 0;
+            this.sigma[s] = 1.0;
+            this.dist[s]  = 0.0;
+            this.queue[tail++] = s;
+            while (head < tail) {
+                int v = this.queue[head++];
+                this.stack[size++] = v;
+                for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+                    int w = graph.target(e);
+                    if (this.dist[w] == Double.POSITIVE_INFINITY) {
+                        this.dist[w] = this.dist[v] + 1.0;
+                        this.queue[tail++] = w;
+                    }
+                    if (this.dist[w] == this.dist[v] + 1.0)
+                        this.sigma[w] += this.sigma[v];
+                }
+            }
+            return size;
+        }
+        /**
+         * Single source shortest paths counting for weighted graphs,
+         * using a binary heap with lazy deletion.
+         * @return int the number of nodes settled (stored in stack).
+         */
+        private int dijkstra(int s) {
+            int heapSize = 0, size = 0;
+            this.sigma[s] = 1.0;
+            this.dist[s]  = 0.0;
+            heapSize = this.push(heapSize, s, 0.0);
+            while (heapSize > 0) {
+                int    v   = this.heapNodes[0];
+                double key = this.heapKeys[0];
+                heapSize = this.pop(heapSize);
+                if (key > this.dist[v] || this.delta[v] < 0.0)
+                    continue;
+                this.delta[v] = -1.0; // settled mark, cleared below
+                this.stack[size++] = v;
+                for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+                    int    w   = graph.target(e);
+                    double alt = this.dist[v] + length(graph, e, true);
+                    if (alt < this.dist[w]) {
+                        this.dist[w]  = alt;
+                        this.sigma[w] = this.sigma[v];
+                        heapSize = this.push(heapSize, w, alt);
+                    } else if (alt == this.dist[w]) {
+                        this.sigma[w] += this.sigma[v];
+                    }
+                }
+            }
+            for (int i = 0; i < size; i++)
+                this.delta[this.stack[i]] = 0.0;
+            return size;
+        }
+        private int push(int heapSize, int node, double key) {
+            if (heapSize == this.heapNodes.length) {
+                this.heapNodes = Arrays.copyOf(this.heapNodes, heapSize * 2);
+                this.heapKeys  = Arrays.copyOf(this.heapKeys,  heapSize * 2);
+            }
+            int i = heapSize;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (this.heapKeys[parent] <= key)
+                    break;
+                this.heapNodes[i] = this.heapNodes[parent];
+                this.heapKeys[i]  = this.heapKeys[parent];
+                i = parent;
+            }
+            this.heapNodes[i] = node;
+            this.heapKeys[i]  = key;
+            return heapSize + 1;
+        }
+        private int pop(int heapSize) {
+            heapSize--;
+            int    node = this.heapNodes[heapSize];
+            double key  = this.heapKeys[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize)
+                    break;
+                if (child + 1 < heapSize && this.heapKeys[child + 1] < this.heapKeys[child])
+                    child++;
+                if (this.heapKeys[child] >= key)
+                    break;
+                this.heapNodes[i] = this.heapNodes[child];
+                this.heapKeys[i]  = this.heapKeys[child];
+                i = child;
+            }
+            this.heapNodes[i] = node;
+            this.heapKeys[i]  = key;
+            return heapSize;
+        }
+    }
+}
@@ -24,26 +24,32 @@
 
 package org.neo4j.hintplugin.centrality;
 
-import java.nio.charset.Charset;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.Status;
-import static org.neo4j.graphalgo.GraphAlgoFactory.allPaths;
-import static org.neo4j.kernel.Traversal.expanderForAllTypes;
-import org.neo4j.graphdb.*;
-import org.neo4j.helpers.collection.IteratorUtil;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 
 /**
  * Closeness Class
- * Returns the Maximum flow value within a graph given a source and sink nodes.
+ * Returns the Closeness Centrality given a target node.
+ * The closeness of all the nodes is computed once over the KNOWS
+ * relationships of the GraphSnapshot, then every request is a lookup.
+ * The first request can set how many threads share that computation.
+ * For large graphs the value can be estimated from sampled pivots, and the
+ * k most central nodes are found exactly without searching every node.
+ * @see Closenesses
+ * @see TopCloseness
  * @author  Francisco Gutiérrez.
  * @version 0.1
  * @since 2014-05-01
@@ -53,64 +59,126 @@ import java.util.List;
 public class Closeness {
 
     private final GraphDatabaseService database;
-    private Node nSource;
-    private Node nSink;
-
-    enum MyRelationshipTypes implements RelationshipType
-    {
-        KNOWS, IS_SIMILAR
-    }
 
     public Closeness( @Context GraphDatabaseService database ) {
         this.database = database;
     }
     
+    /**
+     * RESTFUL Closeness Service
+     * Returns the k most central nodes (exact).
+     * @param top the number of nodes listed.
+     * @param variant "harmonic" (default), "standard" or "wassermanfaust". The
+     *                standard closeness only counts the reached nodes, so every
+     *                isolated pair scores 1.0 and would fill the list.
+     * @param weighted true to use the KNOWS "weight" as the relationship length.
+     * @param parallelism number of threads (defaults to, and at most, the available processors).
+     */
     @GET
-    @Produces( MediaType.TEXT_PLAIN )
-    @Path( "/{source}/{sink}" )
-    public Response maximumflow(@PathParam("source") long source, @PathParam("sink") long sink) {
-        String json = "{\"closeness\":" + this.getFlow(source, sink) + "}";
-        return Response.ok(json, MediaType.APPLICATION_JSON).build();
+    @Produces( MediaType.APPLICATION_JSON )
+    public Response topCloseness(@QueryParam("top") @DefaultValue("100") int top,
+                                 @QueryParam("variant") @DefaultValue("harmonic") String variant,
+                                 @QueryParam("weighted") @DefaultValue("false") boolean weighted,
+                                 @QueryParam("parallelism") @DefaultValue("0") int parallelism) {
+        if (parallelism <= 0)
+            parallelism = Runtime.getRuntime().availableProcessors();
+        parallelism = Brandes.workers(parallelism);
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            variant = Closenesses.variant(variant);
+            GraphSnapshot graph = GraphSnapshot.get(this.database);
+            TopCloseness ranking = TopCloseness.of(graph, GraphSnapshot.Rels.KNOWS, weighted,
+                                                   variant, Math.max(0, top), parallelism);
+            JsonArray nodes = new JsonArray();
+            for (int i = 0; i < ranking.size(); i++) {
+                JsonObject node = new JsonObject();
+                node.addProperty("node",      graph.nodeId(ranking.node(i)));
+                node.addProperty("closeness", ranking.score(i));
+                nodes.add(node);
+            }
+            obj.add("top",              nodes);
+            obj.addProperty("variant",  variant);
+            obj.addProperty("weighted", weighted);
+            obj.addProperty("searches", ranking.searches());
+            obj.addProperty("cut",      ranking.cut());
+            obj.addProperty("visited",  ranking.visited());
+        } catch (Exception ex) {
+            System.err.println("Centrality.Closeness " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
     }
-    
-    /*
-     * Calculates the MaximumFlow given a source and sink nodes.
-     *
-     * @param source    the source node id
-     * @param sink      the sink node id
-     * @return double   as the maximum flow value.
+    /**
+     * RESTFUL Closeness Service
+     * Exact by default, approximate when samples or epsilon are given.
+     * @param target the target node ID
+     * @param variant "standard", "harmonic" or "wassermanfaust".
+     * @param weighted true to use the KNOWS "weight" as the relationship length.
+     * @param parallelism number of threads (defaults to, and at most, the available processors).
+     * @param samples number of random pivots for the approximate mode.
+     * @param epsilon error (relative to the diameter) of the average distance
+     *                for the approximate mode, used to derive the number of
+     *                pivots when samples is not given.
+     * @param confidence probability that the error bound holds, in (0, 1);
+     *                   400 if it or epsilon is out of range.
+     * 400 for an unknown variant, 404 for a node that is not in the snapshot.
      */
-    
-    private double getFlow(long source, long sink){
-        int maxDepth = 10000;
-        int flow = 0;
-        int accumulator = 0;
-        
-        List<Integer> flows = new ArrayList<Integer>();
-        Transaction tx = database.beginTx();
+    @GET
+    @Produces( MediaType.APPLICATION_JSON )
+    @Path( "/{target}" )
+    public Response closeness(@PathParam("target") long targetNode,
+                              @QueryParam("variant") @DefaultValue("standard") String variant,
+                              @QueryParam("weighted") @DefaultValue("false") boolean weighted,
+                              @QueryParam("parallelism") @DefaultValue("0") int parallelism,
+                              @QueryParam("samples") @DefaultValue("0") int samples,
+                              @QueryParam("epsilon") @DefaultValue("0") double epsilon,
+                              @QueryParam("confidence") @DefaultValue("0.95") double confidence) {
+        if (parallelism <= 0)
+            parallelism = Runtime.getRuntime().availableProcessors();
+        parallelism = Brandes.workers(parallelism);
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
         try {
-            this.nSource = database.getNodeById(source);
-            this.nSink = database.getNodeById(sink);
-            
-            for(org.neo4j.graphdb.Path p : allPaths(expanderForAllTypes(Direction.BOTH),maxDepth).findAllPaths(this.nSource,this.nSink)) {
-                for (Relationship r : p.relationships()) {
-                    flows.add((Integer)r.getProperty("weight"));
-                }
-                flow = Collections.min(flows);
-                flows.clear();
-                accumulator = accumulator + flow;
-                for (Relationship r: p.relationships()){
-                    r.setProperty("weight",(Integer)r.getProperty("weight") - flow);
-                }
+            if (samples <= 0 && epsilon != 0)
+                samples = Brandes.samplesFor(epsilon, confidence);
+            if (samples > 0)
+                Brandes.checkConfidence(confidence);
+            variant = Closenesses.variant(variant);
+        } catch (IllegalArgumentException ex) {
+            obj.addProperty("error", ex.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST)
+                .entity(gson.toJson(obj)).type(MediaType.APPLICATION_JSON).build();
+        }
+        try{
+            GraphSnapshot graph = GraphSnapshot.get(this.database);
+            int target = graph.indexOf(targetNode);
+            if (target < 0) {
+                obj.addProperty("error", "Node " + targetNode + " is not in the snapshot");
+                return Response.status(Response.Status.NOT_FOUND)
+                    .entity(gson.toJson(obj)).type(MediaType.APPLICATION_JSON).build();
+            }
+            boolean approximate = samples > 0 && samples < graph.size();
+            Closenesses.Result result = approximate
+                ? Closenesses.estimate(graph, GraphSnapshot.Rels.KNOWS, weighted, samples, parallelism)
+                : Closenesses.of(graph, GraphSnapshot.Rels.KNOWS, weighted, parallelism);
+            obj.addProperty("closeness",      result.closeness(target, variant));
+            obj.addProperty("variant",        variant);
+            obj.addProperty("standard",       result.standard(target));
+            obj.addProperty("harmonic",       result.harmonic(target));
+            obj.addProperty("wassermanFaust", result.wassermanFaust(target));
+            obj.addProperty("farness",        result.farness(target));
+            obj.addProperty("reached",        result.reached(target));
+            obj.addProperty("targetNode",     targetNode);
+            obj.addProperty("weighted",       weighted);
+            obj.addProperty("approximate",    approximate);
+            if (approximate) {
+                obj.addProperty("samples",    samples);
+                obj.addProperty("errorBound", Closenesses.errorBound(result, samples, confidence));
+                obj.addProperty("confidence", confidence);
             }
-            System.out.println("*********         Accumulator: " + accumulator);
-            tx.success();
-        } catch (Exception e) {
-            System.out.println("********* Fail, This happened: " + e);
-            tx.failure();
-        } finally {
-             tx.close();
+        } catch (Exception ex) {
+            System.err.println("Centrality.Closeness " + ex);
         }
-        return accumulator;
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,624 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.centrality;
+
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closenesses Class
+ * Closeness Centrality for all the nodes of a GraphSnapshot in O(nm), with
+ * a BFS per node for unweighted graphs and Dijkstra for weighted ones, over
+ * the primitive adjacency of the snapshot (both directions).
+ * One search per node gives the sum of its distances (farness), the number
+ * of nodes it reaches and the sum of the inverse distances, from which
+ * every variant is derived:
+ *  - standard:        (r-1)/farness, within the component of the node,
+ *  - harmonic:        sum(1/d)/(n-1), disconnected pairs add 0,
+ *  - wassermanfaust:  (r-1)/(n-1) * (r-1)/farness, the standard closeness
+ *                     scaled by the share of the graph the node reaches.
+ * The nodes are split across a ForkJoinPool; each worker keeps its own
+ * search arrays and only writes the entries of the nodes it takes.
+ * For large graphs the closeness can be estimated from the searches of a
+ * random sample of pivots instead of every node (see TopCloseness for the
+ * exact top-k).
+ * @see (Wasserman, S., Faust, K. (1994). Social Network Analysis: Methods and Applications)
+ * @see (Boldi, P., Vigna, S. (2014). Axioms for Centrality)
+ * @see (Eppstein, D., Wang, J. (2004). Fast Approximation of Centrality)
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class Closenesses {
+    public static final String STANDARD        = "standard";
+    public static final String HARMONIC        = "harmonic";
+    public static final String WASSERMAN_FAUST = "wassermanfaust";
+    /**
+     * Computed (or running) results by snapshot, keyed by the mode they were computed with.
+     * Requests for a result being computed wait for it, others are not blocked.
+     */
+    private static final Map<GraphSnapshot, Map<String, FutureTask<Closenesses.Result>>> results =
+        new WeakHashMap<GraphSnapshot, Map<String, FutureTask<Closenesses.Result>>>();
+    
+    private Closenesses() {
+    }
+    
+    /**
+     * The distance sums of every node index.
+     */
+    public static final class Result {
+        final double[] farness;
+        final double[] harmonicSum;
+        final int[]    reached;
+        double maxDistance;
+        
+        Result(int n) {
+            this.farness     = new double[n];
+            this.harmonicSum = new double[n];
+            this.reached     = new int[n];
+        }
+        /**
+         * The largest distance found, from the pivots for an estimate.
+         */
+        public double maxDistance() {
+            return this.maxDistance;
+        }
+        /**
+         * Sum of the distances from a node to every node it reaches.
+         */
+        public double farness(int v) {
+            return this.farness[v];
+        }
+        /**
+         * Number of nodes a node reaches, itself included.
+         */
+        public int reached(int v) {
+            return this.reached[v];
+        }
+        public double standard(int v) {
+            return score(STANDARD, this.farness.length, this.reached[v], this.farness[v], 0.0);
+        }
+        public double harmonic(int v) {
+            return score(HARMONIC, this.farness.length, this.reached[v], 0.0, this.harmonicSum[v]);
+        }
+        public double wassermanFaust(int v) {
+            return score(WASSERMAN_FAUST, this.farness.length, this.reached[v], this.farness[v], 0.0);
+        }
+        /**
+         * The closeness of a node in the given variant.
+         */
+        public double closeness(int v, String variant) {
+            return score(variant, this.farness.length, this.reached[v], this.farness[v], this.harmonicSum[v]);
+        }
+    }
+    /**
+     * The closeness of a node in a variant, from its search sums.
+     * @param n:           the number of nodes of the graph.
+     * @param reached:     the nodes reached, itself included.
+     * @param farness:     the sum of the distances.
+     * @param harmonicSum: the sum of the inverse distances.
+     */
+    static double score(String variant, int n, int reached, double farness, double harmonicSum) {
+        if (HARMONIC.equals(variant))
+            return (n > 1) ? harmonicSum / (n - 1) : 0.0;
+        double standard = (reached > 1 && farness > 0.0) ? (reached - 1) / farness : 0.0;
+        if (WASSERMAN_FAUST.equals(variant))
+            return (n > 1) ? (reached - 1.0) / (n - 1) * standard : 0.0;
+        return standard;
+    }
+    /**
+     * Checks a variant name, null or empty meaning the standard closeness.
+     */
+    public static String variant(String name) {
+        if (name == null || name.isEmpty())
+            return STANDARD;
+        String variant = name.toLowerCase().replace("-", "").replace("_", "");
+        if (STANDARD.equals(variant) || HARMONIC.equals(variant) || WASSERMAN_FAUST.equals(variant))
+            return variant;
+        throw new IllegalArgumentException("Unknown closeness variant: " + name);
+    }
+    /**
+     * Returns the cached closeness of a snapshot, computing it if needed.
+     * @param graph:    the snapshot to work on.
+     * @param type:     the relationship type to follow.
+     * @param weighted: true to use the "weight" of the relationships as length.
+     * @param parallelism: the number of workers used if it has to be computed.
+     */
+    public static Result of(GraphSnapshot graph, GraphSnapshot.Rels type,
+                            boolean weighted, int parallelism) {
+        return cached(graph, type, weighted, 0, parallelism);
+    }
+    /**
+     * Returns the cached estimate of a snapshot computed from k random pivots,
+     * computing it if needed.
+     * @param graph:    the snapshot to work on.
+     * @param type:     the relationship type to follow.
+     * @param weighted: true to use the "weight" of the relationships as length.
+     * @param samples:  the number of pivots.
+     * @param parallelism: the number of workers used if it has to be computed.
+     */
+    public static Result estimate(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                  boolean weighted, int samples, int parallelism) {
+        return cached(graph, type, weighted, samples, parallelism);
+    }
+    private static Result cached(final GraphSnapshot graph, final GraphSnapshot.Rels type,
+                                 final boolean weighted, int samples, final int parallelism) {
+        final int pivots = (samples >= graph.size()) ? 0 : samples;
+        String key = type.name() + (weighted ? "-weighted" : "") + "-" + pivots;
+        FutureTask<Result> task;
+        boolean owner = false;
+        // The lock only guards the map, the search runs outside of it...
+        synchronized (results) {
+            Map<String, FutureTask<Result>> cached = results.get(graph);
+            if (cached == null) {
+                cached = new HashMap<String, FutureTask<Result>>();
+                results.put(graph, cached);
+            }
+            task = cached.get(key);
+            if (task == null) {
+                task = new FutureTask<Result>(new Callable<Result>() {
+                    public Result call() {
+                        return (pivots > 0)
+                            ? sample(graph, type, weighted, pivots, parallelism, new Random())
+                            : compute(graph, type, weighted, parallelism);
+                    }
+                });
+                cached.put(key, task);
+                owner = true;
+            }
+        }
+        if (owner)
+            task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // Not cached, the next request tries again...
+            synchronized (results) {
+                Map<String, FutureTask<Result>> cached = results.get(graph);
+                if (cached != null && cached.get(key) == task)
+                    cached.remove(key);
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Runs a search from every node of the snapshot.
+     * @param graph:    the snapshot to work on.
+     * @param type:     the relationship type to follow.
+     * @param weighted: true to use the "weight" of the relationships as length.
+     * @param parallelism: the number of workers (at most the available processors), 1 runs in the calling thread.
+     */
+    public static Result compute(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                 boolean weighted, int parallelism) {
+        Result result = new Result(graph.size());
+        AtomicInteger next = new AtomicInteger();
+        parallelism = Brandes.workers(parallelism);
+        if (parallelism <= 1) {
+            new SourceBlocks(graph, type, weighted, result, next).compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new AllSources(graph, type, weighted, result, next, parallelism));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return result;
+    }
+    /**
+     * Estimates the closeness of every node from k pivots drawn uniformly at
+     * random (with replacement). Distances are symmetric, so the search from a
+     * pivot p gives d(p,v) for every v: the farness of v is estimated as
+     * r/k_c * sum(d(p,v)) over the k_c pivots that fell in its component of r
+     * nodes, and its inverse distance sum as n/k * sum(1/d(p,v)). The number
+     * of nodes reached is exact, from a labelling of the components.
+     * @param graph:    the snapshot to work on.
+     * @param type:     the relationship type to follow.
+     * @param weighted: true to use the "weight" of the relationships as length.
+     * @param samples:  the number of pivots k.
+     * @param parallelism: the number of workers (at most the available processors), 1 runs in the calling thread.
+     * @param random:   the source of the pivots.
+     */
+    public static Result sample(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                boolean weighted, int samples, int parallelism,
+                                Random random) {
+        int n = graph.size();
+        Result result = new Result(n);
+        int[] component = new int[n];
+        int[] sizes     = components(graph, type, component);
+        int[] pivots    = new int[samples];
+        int[] hits      = new int[sizes.length];
+        for (int i = 0; i < samples; i++) {
+            pivots[i] = random.nextInt(n);
+            hits[component[pivots[i]]]++;
+        }
+        double[][] sums;
+        AtomicInteger next = new AtomicInteger();
+        parallelism = Brandes.workers(parallelism);
+        if (parallelism <= 1) {
+            sums = new PivotBlocks(graph, type, weighted, pivots, next).compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                sums = pool.invoke(new AllPivots(graph, type, weighted, pivots, next, parallelism));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            int c = component[v];
+            result.reached[v]     = sizes[c];
+            result.farness[v]     = (hits[c] > 0) ? sums[0][v] * sizes[c] / hits[c] : 0.0;
+            result.harmonicSum[v] = sums[1][v] * n / samples;
+        }
+        result.maxDistance = sums[2][0];
+        return result;
+    }
+    /**
+     * The error of an estimated average distance from k pivots that holds with
+     * the given confidence for a single node (Hoeffding bound), epsilon times
+     * the diameter, which is at most twice the largest distance from a pivot.
+     */
+    public static double errorBound(Result estimate, int samples, double confidence) {
+        Brandes.checkConfidence(confidence);
+        double epsilon = Math.sqrt(Math.log(2.0 / (1.0 - confidence)) / (2.0 * samples));
+        return epsilon * 2.0 * estimate.maxDistance;
+    }
+    /**
+     * Labels the connected components of a relationship type.
+     * @return int[] the size of every component.
+     */
+    static int[] components(GraphSnapshot graph, GraphSnapshot.Rels type, int[] component) {
+        int   n     = graph.size();
+        int[] queue = new int[n];
+        int[] sizes = new int[Math.max(1, n)];
+        int   count = 0;
+        Arrays.fill(component, -1);
+        for (int s = 0; s < n; s++) {
+            if (component[s] >= 0)
+                continue;
+            int head = 0, tail = 0;
+            component[s]  = count;
+            queue[tail++] = s;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+                    int w = graph.target(e);
+                    if (component[w] < 0) {
+                        component[w]  = count;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+            sizes[count++] = tail;
+        }
+        return Arrays.copyOf(sizes, count);
+    }
+    
+    /**
+     * Forks one SourceBlocks task per worker.
+     */
+    private static final class AllSources extends RecursiveAction {
+        private final GraphSnapshot graph;
+        private final GraphSnapshot.Rels type;
+        private final boolean weighted;
+        private final Result result;
+        private final AtomicInteger next;
+        private final int parallelism;
+        
+        AllSources(GraphSnapshot graph, GraphSnapshot.Rels type, boolean weighted,
+                   Result result, AtomicInteger next, int parallelism) {
+            this.graph       = graph;
+            this.type        = type;
+            this.weighted    = weighted;
+            this.result      = result;
+            this.next        = next;
+            this.parallelism = parallelism;
+        }
+        @Override
+        protected void compute() {
+            List<SourceBlocks> tasks = new ArrayList<SourceBlocks>();
+            for (int i = 0; i < this.parallelism; i++) {
+                SourceBlocks task = new SourceBlocks(this.graph, this.type, this.weighted,
+                                                     this.result, this.next);
+                tasks.add(task);
+                task.fork();
+            }
+            for (SourceBlocks task : tasks)
+                task.join();
+        }
+    }
+    /**
+     * Takes blocks of nodes from a shared counter until none is left.
+     */
+    private static final class SourceBlocks extends RecursiveAction {
+        private static final int BLOCK = 64;
+        private final GraphSnapshot graph;
+        private final GraphSnapshot.Rels type;
+        private final boolean weighted;
+        private final Result result;
+        private final AtomicInteger next;
+        
+        SourceBlocks(GraphSnapshot graph, GraphSnapshot.Rels type, boolean weighted,
+                     Result result, AtomicInteger next) {
+            this.graph    = graph;
+            this.type     = type;
+            this.weighted = weighted;
+            this.result   = result;
+            this.next     = next;
+        }
+        @Override
+        protected void compute() {
+            int n = this.graph.size();
+            Worker worker = new Worker(this.graph, this.type, this.weighted);
+            int first;
+            while ((first = this.next.getAndAdd(BLOCK)) < n) {
+                for (int s = first; s < Math.min(first + BLOCK, n); s++) {
+                    int size = worker.search(s);
+                    double farness = 0.0, harmonic = 0.0;
+                    for (int i = 1; i < size; i++) {
+                        double d = worker.distance(worker.node(i));
+                        farness  += d;
+                        harmonic += 1.0 / d;
+                    }
+                    this.result.farness[s]     = farness;
+                    this.result.harmonicSum[s] = harmonic;
+                    this.result.reached[s]     = size;
+                    worker.clear(size);
+                }
+            }
+        }
+    }
+    /**
+     * Forks one PivotBlocks task per worker and adds up their partial sums.
+     */
+    private static final class AllPivots extends RecursiveTask<double[][]> {
+        private final GraphSnapshot graph;
+        private final GraphSnapshot.Rels type;
+        private final boolean weighted;
+        private final int[] pivots;
+        private final AtomicInteger next;
+        private final int parallelism;
+        
+        AllPivots(GraphSnapshot graph, GraphSnapshot.Rels type, boolean weighted,
+                  int[] pivots, AtomicInteger next, int parallelism) {
+            this.graph       = graph;
+            this.type        = type;
+            this.weighted    = weighted;
+            this.pivots      = pivots;
+            this.next        = next;
+            this.parallelism = parallelism;
+        }
+        @Override
+        protected double[][] compute() {
+            List<PivotBlocks> tasks = new ArrayList<PivotBlocks>();
+            for (int i = 0; i < this.parallelism; i++) {
+                PivotBlocks task = new PivotBlocks(this.graph, this.type, this.weighted,
+                                                   this.pivots, this.next);
+                tasks.add(task);
+                task.fork();
+            }
+            int n = this.graph.size();
+            double[][] sums = new double[][] {new double[n], new double[n], new double[1]};
+            for (PivotBlocks task : tasks) {
+                double[][] partial = task.join();
+                for (int v = 0; v < n; v++) {
+                    sums[0][v] += partial[0][v];
+                    sums[1][v] += partial[1][v];
+                }
+                sums[2][0] = Math.max(sums[2][0], partial[2][0]);
+            }
+            return sums;
+        }
+    }
+    /**
+     * Takes blocks of pivots from a shared counter and adds, for every node,
+     * its distance and its inverse distance from each pivot.
+     * @return double[][] the distance sums, the inverse distance sums and the largest distance.
+     */
+    private static final class PivotBlocks extends RecursiveTask<double[][]> {
+        private static final int BLOCK = 16;
+        private final GraphSnapshot graph;
+        private final GraphSnapshot.Rels type;
+        private final boolean weighted;
+        private final int[] pivots;
+        private final AtomicInteger next;
+        
+        PivotBlocks(GraphSnapshot graph, GraphSnapshot.Rels type, boolean weighted,
+                    int[] pivots, AtomicInteger next) {
+            this.graph    = graph;
+            this.type     = type;
+            this.weighted = weighted;
+            this.pivots   = pivots;
+            this.next     = next;
+        }
+        @Override
+        protected double[][] compute() {
+            int n = this.graph.size();
+            double[] distances = new double[n];
+            double[] inverses  = new double[n];
+            double   max       = 0.0;
+            Worker worker = new Worker(this.graph, this.type, this.weighted);
+            int first;
+            while ((first = this.next.getAndAdd(BLOCK)) < this.pivots.length) {
+                for (int i = first; i < Math.min(first + BLOCK, this.pivots.length); i++) {
+                    int size = worker.search(this.pivots[i]);
+                    for (int j = 1; j < size; j++) {
+                        int    v = worker.node(j);
+                        double d = worker.distance(v);
+                        distances[v] += d;
+                        inverses[v]  += 1.0 / d;
+                    }
+                    if (size > 0)
+                        max = Math.max(max, worker.distance(worker.node(size - 1)));
+                    worker.clear(size);
+                }
+            }
+            return new double[][] {distances, inverses, new double[] {max}};
+        }
+    }    
+    /**
+     * Single source distances, the arrays are allocated once and reused for
+     * every source. After search(s), node(0..size-1) lists the reached nodes
+     * in non-decreasing distance (s first) and clear(size) resets them.
+     */
+    static final class Worker {
+        private final GraphSnapshot graph;
+        private final GraphSnapshot.Rels type;
+        private final boolean weighted;
+        private final double[]  dist;
+        private final boolean[] settled;
+        private final int[]     order;
+        private int[]    heapNodes;
+        private double[] heapKeys;
+        
+        Worker(GraphSnapshot graph, GraphSnapshot.Rels type, boolean weighted) {
+            int n = graph.size();
+            this.graph     = graph;
+            this.type      = type;
+            this.weighted  = weighted;
+            this.dist      = new double[n];
+            this.settled   = new boolean[n];
+            this.order     = new int[n];
+            this.heapNodes = new int[16];
+            this.heapKeys  = new double[16];
+            Arrays.fill(this.dist, Double.POSITIVE_INFINITY);
+        }
+        /**
+         * @return int the number of nodes reached from s.
+         */
+        int search(int s) {
+            return this.weighted ? this.dijkstra(s) : this.bfs(s);
+        }
+        int node(int i) {
+            return this.order[i];
+        }
+        double distance(int v) {
+            return this.dist[v];
+        }
+        void clear(int size) {
+            for (int i = 0; i < size; i++) {
+                this.dist[this.order[i]]    = Double.POSITIVE_INFINITY;
+                this.settled[this.order[i]] = false;
+            }
+        }
+        private int bfs(int s) {
+            int head = 0, tail = 0;
+            this.dist[s] = 0.0;
+            this.order[tail++] = s;
+            while (head < tail) {
+                int v = this.order[head++];
+                for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+                    int w = graph.target(e);
+                    if (this.dist[w] == Double.POSITIVE_INFINITY) {
+                        this.dist[w] = this.dist[v] + 1.0;
+                        this.order[tail++] = w;
+                    }
+                }
+            }
+            return tail;
+        }
+        /**
+         * Dijkstra with a binary heap and lazy deletion.
+         */
+        private int dijkstra(int s) {
+            int heapSize = 0, size = 0;
+            this.dist[s] = 0.0;
+            heapSize = this.push(heapSize, s, 0.0);
+            while (heapSize > 0) {
+                int    v   = this.heapNodes[0];
+                double key = this.heapKeys[0];
+                heapSize = this.pop(heapSize);
+                if (key > this.dist[v] || this.settled[v])
+                    continue;
+                this.settled[v] = true;
+                this.order[size++] = v;
+                for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+                    int    w   = graph.target(e);
+                    double alt = this.dist[v] + Brandes.length(graph, e, true);
+                    if (alt < this.dist[w]) {
+                        this.dist[w] = alt;
+                        heapSize = this.push(heapSize, w, alt);
+                    }
+                }
+            }
+            return size;
+        }
+        private int push(int heapSize, int node, double key) {
+            if (heapSize == this.heapNodes.length) {
+                this.heapNodes = Arrays.copyOf(this.heapNodes, heapSize * 2);
+                this.heapKeys  = Arrays.copyOf(this.heapKeys,  heapSize * 2);
+            }
+            int i = heapSize;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (this.heapKeys[parent] <= key)
+                    break;
+                this.heapNodes[i] = this.heapNodes[parent];
+                this.heapKeys[i]  = this.heapKeys[parent];
+                i = parent;
+            }
+            this.heapNodes[i] = node;
+            this.heapKeys[i]  = key;
+            return heapSize + 1;
+        }
+        private int pop(int heapSize) {
+            heapSize--;
+            int    node = this.heapNodes[heapSize];
+            double key  = this.heapKeys[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize)
+                    break;
+                if (child + 1 < heapSize && this.heapKeys[child + 1] < this.heapKeys[child])
+                    child++;
+                if (this.heapKeys[child] >= key)
+                    break;
+                this.heapNodes[i] = this.heapNodes[child];
+                this.heapKeys[i]  = this.heapKeys[child];
+                i = child;
+            }
+            this.heapNodes[i] = node;
+            this.heapKeys[i]  = key;
+            return heapSize;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.centrality;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+/**
+ * Eccentricities Class: the eccentricity of every node of the graph, plus
+ * its radius, diameter, center and periphery.
+ * Each connected component is solved with the bounding diameters method:
+ * every BFS tightens a lower and an upper bound of the eccentricity of all
+ * the nodes, and nodes whose bounds meet need no BFS of their own.
+ * On a disconnected graph the diameter is the largest eccentricity and the
+ * radius the smallest one among the nodes that have at least one neighbor.
+ * @see (Takes, F. W., Kosters, W. A. (2011). Determining the Diameter of Small World Networks)
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+@Path("/eccentricities")
+public class Eccentricities {
+    private static final Map<GraphSnapshot, Eccentricities.Result> results =
+        new WeakHashMap<GraphSnapshot, Eccentricities.Result>();
+    private final GraphDatabaseService database;
+    
+    /**
+     * The eccentricity of every node index and the number of BFS it took.
+     */
+    public static final class Result {
+        final int[] eccentricity;
+        final int   bfsRuns;
+        final int   radius;
+        final int   diameter;
+        Result(int[] eccentricity, int bfsRuns) {
+            int radius = Integer.MAX_VALUE, diameter = 0;
+            for (int ecc : eccentricity) {
+                diameter = Math.max(diameter, ecc);
+                if (ecc > 0)
+                    radius = Math.min(radius, ecc);
+            }
+            this.eccentricity = eccentricity;
+            this.bfsRuns      = bfsRuns;
+            this.radius       = (radius == Integer.MAX_VALUE) ? 0 : radius;
+            this.diameter     = diameter;
+        }
+        /**
+         * The eccentricity of a node index within its connected component.
+         */
+        public int eccentricity(int v) {
+            return this.eccentricity[v];
+        }
+        /**
+         * The number of BFS it took to bound every eccentricity.
+         */
+        public int bfsRuns() {
+            return this.bfsRuns;
+        }
+        /**
+         * The least positive eccentricity, 0 if there is none.
+         */
+        public int radius() {
+            return this.radius;
+        }
+        /**
+         * The largest eccentricity.
+         */
+        public int diameter() {
+            return this.diameter;
+        }
+    }
+    public Eccentricities( @Context GraphDatabaseService database ) {
+        this.database = database;
+    }
+    /*
+     * Eccentricities: RESTful Service...
+     * Returns radius, diameter, center and periphery of the graph.
+     * @param limit: the maximum number of center and periphery nodes listed.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response eccentricities(@QueryParam("limit") @DefaultValue("100") int limit) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            GraphSnapshot graph = GraphSnapshot.get(this.database);
+            this.describe(graph, of(graph), limit, obj);
+        } catch (Exception ex) {
+            System.err.println("centrality.Eccentricities Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj),MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Eccentricities: RESTful Service...
+     * Saves the "eccentricity" property of every node, batchSize nodes per transaction.
+     * @param batchSize: the number of nodes written per transaction.
+     * @param limit: the maximum number of center and periphery nodes listed.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response saveEccentricities(@QueryParam("batchSize") @DefaultValue("10000") int batchSize,
+                                       @QueryParam("limit") @DefaultValue("100") int limit) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            GraphSnapshot graph = GraphSnapshot.get(this.database);
+            Result result = of(graph);
+            this.save(graph, result, Math.max(1, batchSize));
+            this.describe(graph, result, limit, obj);
+        } catch (Exception ex) {
+            System.err.println("centrality.Eccentricities Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj),MediaType.APPLICATION_JSON).build();
+    }
+    /**
+     * Returns the cached eccentricities of a snapshot, computing them if needed.
+     */
+    static Result of(GraphSnapshot graph) {
+        synchronized (results) {
+            Result result = results.get(graph);
+            if (result == null) {
+                result = compute(graph);
+                results.put(graph, result);
+            }
+            return result;
+        }
+    }
+    /**
+     * Bounding diameters over every connected component.
+     * @param graph: the snapshot to work on.
+     */
+    public static Result compute(GraphSnapshot graph) {
+        int n = graph.size();
+        int[] ecc    = new int[n];
+        int[] lower  = new int[n];
+        int[] upper  = new int[n];
+        int[] dist   = new int[n];
+        int[] queue  = new int[n];
+        int[] candidates = new int[n];
+        boolean[] done = new boolean[n];
+        int bfsRuns = 0;
+        Arrays.fill(dist, -1);
+        for (int root = 0; root < n; root++) {
+            if (done[root])
+                continue;
+            //The component of root, every node is a candidate...
+            int size = Eccentricity.bfs(graph, root, dist, queue);
+            System.arraycopy(queue, 0, candidates, 0, size);
+            Eccentricity.clear(dist, queue, size);
+            for (int i = 0; i < size; i++) {
+                lower[candidates[i]] = 0;
+                upper[candidates[i]] = Integer.MAX_VALUE;
+            }
+            boolean pickUpper = true;
+            while (size > 0) {
+                int v = select(graph, candidates, size, lower, upper, pickUpper);
+                pickUpper = !pickUpper;
+                int reached = Eccentricity.bfs(graph, v, dist, queue);
+                bfsRuns++;
+                int eccV = dist[queue[reached - 1]];
+                ecc[v]   = eccV;
+                done[v]  = true;
+                //Tighten the bounds of the remaining candidates...
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    int w = candidates[i];
+                    if (w == v)
+                        continue;
+                    int d = dist[w];
+                    lower[w] = Math.max(lower[w], Math.max(eccV - d, d));
+                    upper[w] = Math.min(upper[w], eccV + d);
+                    if (lower[w] == upper[w]) {
+                        ecc[w]  = lower[w];
+                        done[w] = true;
+                    } else {
+                        candidates[kept++] = w;
+                    }
+                }
+                size = kept;
+                Eccentricity.clear(dist, queue, reached);
+            }
+        }
+        return new Result(ecc, bfsRuns);
+    }
+    /**
+     * Alternates between the candidate with the largest upper bound and the one
+     * with the smallest lower bound, preferring high degree nodes on ties.
+     */
+    private static int select(GraphSnapshot graph, int[] candidates, int size,
+                              int[] lower, int[] upper, boolean pickUpper) {
+        int best = candidates[0];
+        for (int i = 1; i < size; i++) {
+            int w = candidates[i];
+            int cmp = pickUpper ? Integer.compare(upper[w], upper[best])
+                                : Integer.compare(lower[best], lower[w]);
+            if (cmp > 0 || (cmp == 0 && graph.degree(w) > graph.degree(best)))
+                best = w;
+        }
+        return best;
+    }
+    private void save(GraphSnapshot graph, Result result, int batchSize) {
+        int v = 0;
+        while (v < graph.size()) {
+            Transaction tx = database.beginTx();
+            try {
+                for (int i = 0; i < batchSize && v < graph.size(); i++, v++)
+                    database.getNodeById(graph.nodeId(v)).setProperty("eccentricity", result.eccentricity[v]);
+                tx.success();
+            } catch (Exception e) {
+                System.err.println("Exception Error: Eccentricities Class: " + e);
+                tx.failure();
+            } finally {
+                tx.close();
+            }
+        }
+    }
+    private void describe(GraphSnapshot graph, Result result, int limit, JsonObject obj) {
+        JsonArray center    = new JsonArray();
+        JsonArray periphery = new JsonArray();
+        for (int v = 0; v < graph.size(); v++) {
+            int ecc = result.eccentricity[v];
+            if (ecc == result.radius && ecc > 0 && center.size() < limit)
+                center.add(new JsonPrimitive(graph.nodeId(v)));
+            if (ecc == result.diameter && periphery.size() < limit)
+                periphery.add(new JsonPrimitive(graph.nodeId(v)));
+        }
+        obj.addProperty("nodes",    graph.size());
+        obj.addProperty("radius",   result.radius);
+        obj.addProperty("diameter", result.diameter);
+        obj.addProperty("bfsRuns",  result.bfsRuns);
+        obj.add("center",    center);
+        obj.add("periphery", periphery);
+    }
+}
@@ -30,19 +30,9 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.Status;
-import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphalgo.GraphAlgoFactory;
-import org.neo4j.tooling.GlobalGraphOperations;
-import static org.neo4j.graphalgo.GraphAlgoFactory.shortestPath;
-import static org.neo4j.kernel.Traversal.expanderForAllTypes;
-import java.util.ArrayList;
-import java.util.List;
-import java.lang.Runnable;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import java.util.Arrays;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
@@ -50,14 +40,19 @@ import java.lang.Math;
 /**
  * Eccentricity Class: This can be used to calculate eccentricity of nodes.
  * Is defined as the maximum distance to any other node in the graph.
+ * It is found with a single BFS from the target over all the relationships
+ * of the GraphSnapshot (both directions), O(n+m) per node.
  * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
  * @version 0.1
  * @since 2014-05-01
  */
 @Path("/eccentricity")
 public class Eccentricity {
+    /**
+     * BFS arrays reused by every request served by the same thread.
+     */
+    private static final ThreadLocal<int[][]> buffers = new ThreadLocal<int[][]>();
     private final GraphDatabaseService database;
-    public int maxDepth = 10000;
     private int maxValue = 0;
     public Eccentricity( @Context GraphDatabaseService database ) {
         this.database = database;
@@ -86,26 +81,53 @@ public class Eccentricity {
      * @param targetNodeId: The target node to get the centrality.
      */
     public double getEccentricity(long targetNodeId){
-        this.maxValue = 0;
-        Transaction tx = database.beginTx();
-        try {
-            Node targetNode  = database.getNodeById(targetNodeId);
-            for (Node n : GlobalGraphOperations.at(database).getAllNodes()){
-                if(n.getId() != targetNodeId){
-                    for (org.neo4j.graphdb.Path p : shortestPath(expanderForAllTypes(Direction.BOTH),maxDepth).findAllPaths(targetNode,n)){
-                        if (p.length() > maxValue) {
-                            maxValue = p.length();
-                        }
-                    }
+        GraphSnapshot graph = GraphSnapshot.get(this.database);
+        int target = graph.indexOf(targetNodeId);
+        if (target < 0)
+            throw new IllegalArgumentException("Node " + targetNodeId + " is not in the snapshot");
+        int[][] buffer = buffers.get();
+        if (buffer == null || buffer[0].length < graph.size()) {
+            buffer = new int[2][graph.size()];
+            Arrays.fill(buffer[0], -1);
+            buffers.set(buffer);
+        }
+        int[] dist  = buffer[0];
+        int[] queue = buffer[1];
+        int reached = bfs(graph, target, dist, queue);
+        this.maxValue = dist[queue[reached - 1]];
+        clear(dist, queue, reached);
+        return Math.round((1.0/Math.abs(maxValue))*100.0)/100.0;
+    }
+    /**
+     * Breadth first search over all the relationships of the snapshot.
+     * dist must be -1 for every node on entry, call clear() afterwards.
+     * @param graph:  the snapshot to work on.
+     * @param source: the source node index.
+     * @param dist:   filled with the distance of every reached node.
+     * @param queue:  filled with the reached nodes in BFS order.
+     * @return int the number of reached nodes, the last one is the farthest.
+     */
+    static int bfs(GraphSnapshot graph, int source, int[] dist, int[] queue) {
+        int head = 0, tail = 0;
+        dist[source]  = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = graph.begin(v); e < graph.end(v); e++) {
+                int w = graph.target(e);
+                if (dist[w] < 0) {
+                    dist[w] = dist[v] + 1;
+                    queue[tail++] = w;
                 }
             }
-        }catch (Exception e) {
-            System.err.println("Exception Error: FlowBetweenness Class: " + e);
-            tx.failure();
-        } finally {
-            tx.success();
-            tx.close();
         }
-        return Math.round((1.0/Math.abs(maxValue))*100.0)/100.0;
+        return tail;
+    }
+    /**
+     * Sets back to -1 the distances written by the last bfs().
+     */
+    static void clear(int[] dist, int[] queue, int reached) {
+        for (int i = 0; i < reached; i++)
+            dist[queue[i]] = -1;
     }
-}
\ No newline at end of file
+}
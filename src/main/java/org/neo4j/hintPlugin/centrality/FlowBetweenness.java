@@ -31,28 +31,21 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.Status;
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphdb.RelationshipType;
-import org.neo4j.graphdb.DynamicLabel;
-import org.neo4j.graphdb.Label;
-import org.neo4j.graphdb.traversal.Evaluation;
-import org.neo4j.graphdb.traversal.Evaluators;
-import org.neo4j.graphdb.traversal.TraversalDescription;
-import org.neo4j.graphdb.traversal.Uniqueness;
-import org.neo4j.tooling.GlobalGraphOperations;
-import org.neo4j.hintplugin.utils.MaximumFlow;
-import java.util.ArrayList;
-import java.util.List;
-import java.lang.Runnable;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.hintplugin.utils.LabelCounts;
 import org.json.JSONObject;
 import java.lang.Math;
 
 /**
  * Flow Betweenness Class
+ * Freeman's flow betweenness: the flow through a node over the maximum flow
+ * of every pair of other nodes. The values come from FlowCentrality, which
+ * computes and writes the "flowbetweenness" of the whole graph at once, and
+ * are read from the node property.
+ * It is also reported over the (n-1)(n-2)/2 pairs of other nodes, n being the
+ * number of Poi and Term nodes of the maintained LabelCounts.
+ * @see FlowCentrality
  * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
  * @proyect Reaumobile (Universidad de las Américas Puebla Team)  http://ict.udlap.mx/
  * @version 0.1
@@ -62,12 +55,6 @@ import java.lang.Math;
 public class FlowBetweenness {
     private final GraphDatabaseService database;
     
-    /**
-     * The enum listing all the relationship types allowed in this class.
-     */
-    private enum Rels implements RelationshipType {
-        MAX_FLOW
-    }
     /**
      * The Public Constructor to get the Database Service
      */
@@ -84,54 +71,26 @@ public class FlowBetweenness {
     public Response flowBetweenness(@PathParam("target") long target) {
         JSONObject obj = new org.json.JSONObject();
         try{
-            obj.put("flowBetweenness", this.getFlowBetweenness(target));
-            obj.put("targetNode",      target);
+            double betweenness = this.getFlowBetweenness(target);
+            int    nodeCount   = LabelCounts.get(this.database).countAny(LabelCounts.POI, LabelCounts.TERM);
+            obj.put("flowBetweenness",           betweenness);
+            obj.put("normalizedFlowBetweenness", FlowCentrality.perPair(betweenness, nodeCount));
+            obj.put("targetNode",                target);
+            obj.put("nodeCount",                 nodeCount);
+        } catch (IllegalStateException ex) {
+            return FlowCentrality.notComputed(ex);
+        } catch (NotFoundException ex) {
+            return FlowCentrality.error(Response.Status.NOT_FOUND, "Node " + target + " not found");
         } catch (Exception ex) {
             System.err.println("centralities.FlowBetweenness Class: " + ex);
         }
         return Response.ok(obj.toString(), MediaType.APPLICATION_JSON).build();
     }
     /**
-     * Calculates the FlowBetweeness given a targetNode.
+     * Reads the "flowbetweenness" POST /flowcentrality wrote on a target.
      * @param target: The long id of the target node.
      */
-    public double getFlowBetweenness(long targetNodeId){
-        double maxFlowSum   = 0.0;
-        double flowSum      = 0.0;
-        double betweenness  = 0.0;
-        double nodeCount    = 0.0;
-        final Label poiLabel  = DynamicLabel.label("Poi");
-        final Label termLabel = DynamicLabel.label("Term");
-        Transaction tx = database.beginTx();
-        try {
-            Node targetNode = database.getNodeById(targetNodeId);
-            for(Node n : GlobalGraphOperations.at(database).getAllNodes()){
-                if (n.hasLabel(poiLabel) || n.hasLabel(termLabel)){
-                    nodeCount++;
-                }
-            }
-            for(Relationship rel : this.database.traversalDescription()
-                .breadthFirst()
-                .relationships(Rels.MAX_FLOW)
-                .evaluator(Evaluators.excludeStartPosition())
-                .traverse(targetNode)
-                .relationships()) {
-                if (rel.hasProperty("maxflow"))
-                    maxFlowSum = (Double)rel.getProperty("maxflow") + maxFlowSum;
-            }
-            if (targetNode.hasProperty("flow"))
-                flowSum = Double.parseDouble(targetNode.getProperty("flow").toString());
-            // Freeman's normalized Flow Betweenness...
-            betweenness = ((2 * flowSum/maxFlowSum)/(Math.pow(nodeCount,2)-(3*165)+2))*1000;
-            betweenness = Math.round(Math.abs(betweenness) * 100.0)/100.0;
-            targetNode.setProperty("flowbetweenness",betweenness);
-            tx.success();
-        }catch (Exception e) {
-            System.err.println("**flowBetweenness: " + e);
-            tx.failure();
-        } finally {
-            tx.close();
-        }
-        return betweenness;
+    public double getFlowBetweenness(long targetNodeId) throws Exception {
+        return Math.abs(FlowCentrality.stored(this.database, targetNodeId)[FlowCentrality.BETWEENNESS]);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,584 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G. (fsalvador23@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.centrality;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.hintplugin.utils.GomoryHuTree;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import org.neo4j.hintplugin.utils.LabelCounts;
+import org.neo4j.hintplugin.utils.ResidualGraph;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONObject;
+/**
+ * Flow Centrality Class
+ * Flow betweenness, flow closeness and flow eccentricity of every node,
+ * derived together from one table of pairwise maximum flows:
+ *  - the MAX_FLOW relationships of the snapshot when every pair of nodes has
+ *    one (as saved by /jobs/maxflow-all), the latest one of a pair counting
+ *    when there are several,
+ *  - otherwise the cached Gomory-Hu tree of the HAS_TERM graph, which holds
+ *    the maximum flow of every pair in n-1 edges.
+ * From the table only three numbers per node are needed: its row sum (the
+ * flow of every pair it is an end of), its row maximum and its component.
+ * They are gathered in a single parallel pass, together with the "flow"
+ * (throughput) of every node, as MaximumFlow and /jobs/maxflow-all?throughput=true
+ * add it up, and give:
+ *  - flowbetweenness: flow / (the maximum flow of every pair not containing
+ *    the node), Freeman's normalization,
+ *  - closeness:       flow / (the flow of its whole component),
+ *  - floweccentricity: the largest maximum flow from the node, reported as 1/max.
+ * POST /flowcentrality computes them, writes them in batched transactions
+ * and caches them per snapshot. A read returns the values written on the node,
+ * or the cached ones if there are none, and never computes them.
+ * @see (Freeman, L. C., Borgatti, S. P., White, D. R. (1991). Centrality in valued graphs: A measure of betweenness based on network flow)
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+@Path("/flowcentrality")
+public class FlowCentrality {
+    private static final Map<GraphSnapshot, FlowCentrality.Result> results =
+        new WeakHashMap<GraphSnapshot, FlowCentrality.Result>();
+    /**
+     * The snapshots whose centralities are being computed.
+     */
+    private static final Set<GraphSnapshot> running =
+        Collections.newSetFromMap(new WeakHashMap<GraphSnapshot, Boolean>());
+    private static final int BLOCK = 1024;
+    static final int FLOW         = 0;
+    static final int BETWEENNESS  = 1;
+    static final int CLOSENESS    = 2;
+    static final int ECCENTRICITY = 3;
+    private final GraphDatabaseService database;
+    
+    /**
+     * The three centralities of every node index.
+     */
+    static final class Result {
+        final double[] flow;
+        final double[] betweenness;
+        final double[] closeness;
+        final double[] eccentricity;
+        final int      components;
+        final double   totalFlow;
+        final String   table;
+        Result(double[] flow, double[] rowSum, double[] rowMax, int[] component,
+               int components, double totalFlow, String table) {
+            int n = flow.length;
+            double[] sums = new double[Math.max(1, components)];
+            for (int v = 0; v < n; v++)
+                sums[component[v]] += flow[v];
+            this.flow         = flow;
+            this.betweenness  = new double[n];
+            this.closeness    = new double[n];
+            this.eccentricity = rowMax;
+            for (int v = 0; v < n; v++) {
+                double others = totalFlow - rowSum[v];
+                double sum    = sums[component[v]];
+                this.betweenness[v] = (others > ResidualGraph.EPSILON) ? flow[v]/others : 0.0;
+                this.closeness[v]   = (sum > 0.0) ? flow[v]/sum : 0.0;
+            }
+            this.components = components;
+            this.totalFlow  = totalFlow;
+            this.table      = table;
+        }
+    }
+    /*
+     * The Public Constructor passing the database service...
+     */
+    public FlowCentrality( @Context GraphDatabaseService database ) {
+        this.database = database;
+    }
+    /*
+     * Flow Centrality: RESTful Service...
+     * Computes and writes the flow betweenness, closeness and eccentricity of every node.
+     * Use refresh=true after the MAX_FLOW relationships changed (e.g. after /jobs/maxflow-all),
+     * it also re-reads the label counts.
+     * @param batchSize:   the number of nodes written per transaction.
+     * @param parallelism: number of threads (defaults to the available processors).
+     * @param algorithm:   the maximum flow engine used if a Gomory-Hu tree has to be built.
+     * @param refresh:     true to rebuild the snapshot and the label counts first.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response computeFlowCentrality(@QueryParam("batchSize") @DefaultValue("10000") int batchSize,
+                                          @QueryParam("parallelism") @DefaultValue("0") int parallelism,
+                                          @QueryParam("algorithm") @DefaultValue("dinic") String algorithm,
+                                          @QueryParam("refresh") @DefaultValue("false") boolean refresh) {
+        JSONObject obj = new org.json.JSONObject();
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (parallelism <= 0 || parallelism > processors)
+            parallelism = processors;
+        GraphSnapshot graph = null;
+        boolean started = false;
+        try{
+            long startTime = System.currentTimeMillis();
+            graph = refresh ? GraphSnapshot.refresh(this.database)
+                            : GraphSnapshot.get(this.database);
+            if (refresh)
+                LabelCounts.get(this.database).refresh();
+            synchronized (results) {
+                started = running.add(graph);
+            }
+            if (!started) {
+                return error(Response.Status.CONFLICT,
+                             "The flow centralities of this snapshot are already being computed");
+            }
+            // Computed and written outside the lock, readers get 409 until it is cached...
+            Result result = compute(this.database, graph, parallelism, algorithm);
+            save(this.database, graph, result, Math.max(1, batchSize));
+            synchronized (results) {
+                results.put(graph, result);
+            }
+            obj.put("nodes",           graph.size());
+            obj.put("poiNodes",        LabelCounts.get(this.database).count(LabelCounts.POI));
+            obj.put("termNodes",       LabelCounts.get(this.database).count(LabelCounts.TERM));
+            obj.put("nodeCount",       LabelCounts.get(this.database).countAny(LabelCounts.POI, LabelCounts.TERM));
+            obj.put("table",           result.table);
+            obj.put("components",      result.components);
+            obj.put("totalMaxFlow",    result.totalFlow);
+            obj.put("computedSeconds", (System.currentTimeMillis() - startTime)/1000.0);
+        } catch (Exception ex) {
+            System.err.println("centralities.FlowCentrality Class: " + ex);
+            return error(Response.Status.INTERNAL_SERVER_ERROR, ex.toString());
+        } finally {
+            if (started) {
+                synchronized (results) {
+                    running.remove(graph);
+                }
+            }
+        }
+        return Response.ok(obj.toString(), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Flow Centrality: RESTful Service...
+     * Returns the three flow centralities of a node, as POST /flowcentrality wrote them.
+     * @param target: the ID of the target to get the centrality values.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{target}")
+    public Response flowCentrality(@PathParam("target") long target) {
+        JSONObject obj = new org.json.JSONObject();
+        try{
+            double[] values    = stored(this.database, target);
+            int      nodeCount = LabelCounts.get(this.database).countAny(LabelCounts.POI, LabelCounts.TERM);
+            obj.put("targetNode",       target);
+            obj.put("flow",             values[FLOW]);
+            obj.put("flowBetweenness",  values[BETWEENNESS]);
+            obj.put("normalizedFlowBetweenness", perPair(values[BETWEENNESS], nodeCount));
+            obj.put("nodeCount",        nodeCount);
+            obj.put("flowCloseness",    values[CLOSENESS]);
+            obj.put("flowEccentricity", inverse(values[ECCENTRICITY]));
+            obj.put("pathMaxLength",    values[ECCENTRICITY]);
+        } catch (IllegalStateException ex) {
+            return notComputed(ex);
+        } catch (NotFoundException ex) {
+            return error(Response.Status.NOT_FOUND, "Node " + target + " not found");
+        } catch (Exception ex) {
+            System.err.println("centralities.FlowCentrality Class: " + ex);
+        }
+        return Response.ok(obj.toString(), MediaType.APPLICATION_JSON).build();
+    }
+    /**
+     * The centralities of a node as save() wrote them, by the FLOW, BETWEENNESS,
+     * CLOSENESS and ECCENTRICITY (the largest maximum flow) indices. A node
+     * without them takes the values cached for the current snapshot.
+     * @throws NotFoundException if the node does not exist.
+     * @throws IllegalStateException if they were never computed.
+     */
+    static double[] stored(GraphDatabaseService database, long nodeId) {
+        double[] values = new double[4];
+        Transaction tx = database.beginTx();
+        try {
+            Node node = database.getNodeById(nodeId);
+            values[FLOW]         = GraphSnapshot.weightOf(node, "flow");
+            values[BETWEENNESS]  = GraphSnapshot.weightOf(node, "flowbetweenness");
+            values[CLOSENESS]    = GraphSnapshot.weightOf(node, "closeness");
+            values[ECCENTRICITY] = GraphSnapshot.weightOf(node, "floweccentricity");
+            tx.success();
+        } finally {
+            tx.close();
+        }
+        if (Double.isNaN(values[FLOW]))
+            values[FLOW] = 0.0;
+        if (!Double.isNaN(values[BETWEENNESS]) && !Double.isNaN(values[CLOSENESS])
+            && !Double.isNaN(values[ECCENTRICITY]))
+            return values;
+        GraphSnapshot graph  = GraphSnapshot.get(database);
+        Result        result = of(graph);
+        int           v      = indexOf(graph, nodeId);
+        values[FLOW]         = result.flow[v];
+        values[BETWEENNESS]  = result.betweenness[v];
+        values[CLOSENESS]    = result.closeness[v];
+        values[ECCENTRICITY] = result.eccentricity[v];
+        return values;
+    }
+    /**
+     * Returns the cached centralities of a snapshot. They are only computed
+     * by POST /flowcentrality, never by a read.
+     * @throws IllegalStateException if they were not computed for this snapshot.
+     */
+    static Result of(GraphSnapshot graph) {
+        synchronized (results) {
+            Result result = results.get(graph);
+            if (result == null)
+                throw new IllegalStateException("The flow centralities are not computed,"
+                                                + " POST /flowcentrality first");
+            return result;
+        }
+    }
+    /**
+     * The 409 answer of a read done before the centralities were computed.
+     */
+    static Response notComputed(IllegalStateException ex) {
+        return error(Response.Status.CONFLICT, ex.getMessage());
+    }
+    static Response error(Response.Status status, String message) {
+        JSONObject obj = new org.json.JSONObject();
+        try {
+            obj.put("error", message);
+        } catch (Exception e) {
+            System.err.println("centralities.FlowCentrality Class: " + e);
+        }
+        return Response.status(status).entity(obj.toString()).type(MediaType.APPLICATION_JSON).build();
+    }
+    /**
+     * The snapshot index of a node id, or IllegalArgumentException.
+     */
+    static int indexOf(GraphSnapshot graph, long nodeId) {
+        int v = graph.indexOf(nodeId);
+        if (v < 0)
+            throw new IllegalArgumentException("Node " + nodeId + " is not in the snapshot");
+        return v;
+    }
+    /**
+     * A flow betweenness over the (n-1)(n-2)/2 pairs of the other nodes, 0 under 3 nodes.
+     * @param betweenness: the betweenness of the node.
+     * @param nodes:       n, the number of Poi and Term nodes.
+     */
+    static double perPair(double betweenness, int nodes) {
+        return (nodes > 2) ? 2 * Math.abs(betweenness) / ((double)(nodes - 1) * (nodes - 2)) : 0.0;
+    }
+    /**
+     * 1/max, rounded, as FlowEccentricity always reported it (0 without flow).
+     */
+    static double inverse(double maxFlow) {
+        if (maxFlow <= ResidualGraph.EPSILON)
+            return 0.0;
+        return Math.round((1.0/maxFlow)*100.0)/100.0;
+    }
+    /**
+     * One pass over the pairwise maximum flow table of a snapshot.
+     * @param database:    the database the "flow" properties are read from.
+     * @param graph:       the snapshot to work on.
+     * @param parallelism: the number of threads.
+     * @param algorithm:   the maximum flow engine used if a Gomory-Hu tree has to be built.
+     */
+    static Result compute(final GraphDatabaseService database, final GraphSnapshot graph,
+                          int parallelism, String algorithm) throws Exception {
+        final int n = graph.size();
+        // A complete table has a relationship for each of the n(n-1)/2 pairs at least...
+        final boolean stored = n > 1
+            && graph.relationshipCount(GraphSnapshot.Rels.MAX_FLOW) >= (long)n * (n - 1) / 2;
+        final double[] flow   = new double[n];
+        final double[] rowSum = new double[n];
+        final double[] rowMax = new double[n];
+        final AtomicInteger next = new AtomicInteger();
+        double totalFlow = 0.0;
+        long   partners  = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            List<Future<double[]>> workers = new ArrayList<Future<double[]>>();
+            for (int i = 0; i < Math.max(1, parallelism); i++) {
+                workers.add(pool.submit(new Callable<double[]>() {
+                    public double[] call() {
+                        // The total of the pairs this worker starts, and the partners it found...
+                        double[] sums = new double[2];
+                        Row row = stored ? new Row(n) : null;
+                        Transaction tx = database.beginTx();
+                        try {
+                            int first;
+                            while ((first = next.getAndAdd(BLOCK)) < n) {
+                                for (int v = first; v < Math.min(first + BLOCK, n); v++) {
+                                    double value = GraphSnapshot.weightOf(database.getNodeById(graph.nodeId(v)), "flow");
+                                    flow[v] = Double.isNaN(value) ? 0.0 : value;
+                                    if (stored) {
+                                        sums[0] += row.read(graph, v, rowSum, rowMax);
+                                        sums[1] += row.size;
+                                    }
+                                }
+                            }
+                            tx.success();
+                        } finally {
+                            tx.close();
+                        }
+                        return sums;
+                    }
+                }));
+            }
+            for (Future<double[]> worker : workers) {
+                double[] sums = worker.get();
+                totalFlow += sums[0];
+                partners  += (long)sums[1];
+            }
+        } finally {
+            pool.shutdown();
+        }
+        int[] component = new int[n];
+        int   components;
+        if (stored && partners == (long)n * (n - 1)) {
+            components = components(graph, component);
+            return new Result(flow, rowSum, rowMax, component, components, totalFlow, "maxflow");
+        }
+        // Some pair has no stored flow, the table is not used...
+        Arrays.fill(rowSum, 0.0);
+        Arrays.fill(rowMax, 0.0);
+        GomoryHuTree tree = GomoryHuTree.cached(graph);
+        if (tree == null)
+            tree = GomoryHuTree.of(graph, algorithm);
+        totalFlow  = treeRows(tree, n, rowSum, rowMax);
+        components = treeComponents(tree, n, component);
+        return new Result(flow, rowSum, rowMax, component, components, totalFlow, "gomoryhu");
+    }
+    /**
+     * The MAX_FLOW row of a node with one value per partner: of several
+     * relationships between the same pair only the latest (highest id) counts.
+     * Each worker keeps one, its arrays are reused from row to row.
+     */
+    private static final class Row {
+        private final int[]    stamp;
+        private final long[]   latest;
+        private final double[] value;
+        private final int[]    partners;
+        private int            size;
+        
+        Row(int n) {
+            this.stamp    = new int[n];
+            this.latest   = new long[n];
+            this.value    = new double[n];
+            this.partners = new int[n];
+        }
+        /**
+         * Sums the row of v. Returns the flow of its pairs with a higher index,
+         * so that every pair is counted once in the total.
+         */
+        double read(GraphSnapshot graph, int v, double[] rowSum, double[] rowMax) {
+            this.size = 0;
+            for (int e = graph.begin(v, GraphSnapshot.Rels.MAX_FLOW); e < graph.end(v, GraphSnapshot.Rels.MAX_FLOW); e++) {
+                int    w = graph.target(e);
+                double f = graph.weight(e);
+                long   id = graph.relationshipId(graph.relationship(e));
+                if (w == v || Double.isNaN(f))
+                    continue;
+                if (this.stamp[w] != v + 1) {
+                    this.stamp[w] = v + 1;
+                    this.partners[this.size++] = w;
+                } else if (this.latest[w] > id) {
+                    continue;
+                }
+                this.latest[w] = id;
+                this.value[w]  = f;
+            }
+            double started = 0.0;
+            for (int i = 0; i < this.size; i++) {
+                int    w = this.partners[i];
+                double f = this.value[w];
+                rowSum[v] += f;
+                rowMax[v]  = Math.max(rowMax[v], f);
+                if (w > v)
+                    started += f;
+            }
+            return started;
+        }
+    }
+    /**
+     * Labels the connected components of the MAX_FLOW relationships with a positive flow.
+     */
+    private static int components(GraphSnapshot graph, int[] component) {
+        int   n          = graph.size();
+        int[] queue      = new int[n];
+        int   components = 0;
+        Arrays.fill(component, -1);
+        for (int s = 0; s < n; s++) {
+            if (component[s] >= 0)
+                continue;
+            int head = 0, tail = 0;
+            component[s]  = components;
+            queue[tail++] = s;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int e = graph.begin(v, GraphSnapshot.Rels.MAX_FLOW); e < graph.end(v, GraphSnapshot.Rels.MAX_FLOW); e++) {
+                    int w = graph.target(e);
+                    if (component[w] < 0 && graph.weight(e) > ResidualGraph.EPSILON) {
+                        component[w]  = components;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+            components++;
+        }
+        return components;
+    }
+    /**
+     * Row sums and row maxima of the Gomory-Hu table without expanding it.
+     * Tree edges are merged from the largest flow down: when the edge of flow w
+     * joins the groups A and B, every pair across them has maximum flow w, so
+     * w*|B| is added to each node of A and w*|A| to each node of B. The adds are
+     * kept on the nodes of the merge tree and pushed down to the leaves at the
+     * end. The largest flow from a node is its largest tree edge.
+     * Returns the sum of the whole table.
+     */
+    private static double treeRows(final GomoryHuTree tree, int n, double[] rowSum, double[] rowMax) {
+        Integer[] edges = new Integer[Math.max(0, n - 1)];
+        int m = 0;
+        for (int v = 0; v < n; v++) {
+            if (tree.parent(v) >= 0) {
+                edges[m++] = v;
+                rowMax[v]              = Math.max(rowMax[v], tree.parentFlow(v));
+                rowMax[tree.parent(v)] = Math.max(rowMax[tree.parent(v)], tree.parentFlow(v));
+            }
+        }
+        Arrays.sort(edges, 0, m, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(tree.parentFlow(b), tree.parentFlow(a));
+            }
+        });
+        int[]    set   = new int[n];
+        int[]    size  = new int[n];
+        int[]    top   = new int[n];
+        int[]    up    = new int[2*n];
+        double[] add   = new double[2*n];
+        double   total = 0.0;
+        for (int v = 0; v < n; v++) {
+            set[v]  = v;
+            size[v] = 1;
+            top[v]  = v;
+        }
+        Arrays.fill(up, -1);
+        int next = n;
+        for (int i = 0; i < m; i++) {
+            int    v = edges[i];
+            double w = tree.parentFlow(v);
+            int    a = find(set, v);
+            int    b = find(set, tree.parent(v));
+            add[top[a]] += w*size[b];
+            add[top[b]] += w*size[a];
+            total       += w*size[a]*(double)size[b];
+            up[top[a]] = next;
+            up[top[b]] = next;
+            if (size[a] < size[b]) {
+                int t = a; a = b; b = t;
+            }
+            set[b]   = a;
+            size[a] += size[b];
+            top[a]   = next++;
+        }
+        // Merge nodes always get a larger number than their children...
+        for (int x = next - 1; x >= 0; x--) {
+            if (up[x] >= 0)
+                add[x] += add[up[x]];
+        }
+        System.arraycopy(add, 0, rowSum, 0, n);
+        return total;
+    }
+    /**
+     * Labels the groups of nodes joined by tree edges with positive flow.
+     */
+    private static int treeComponents(GomoryHuTree tree, int n, int[] component) {
+        int[] set = new int[n];
+        for (int v = 0; v < n; v++)
+            set[v] = v;
+        for (int v = 0; v < n; v++) {
+            if (tree.parent(v) >= 0 && tree.parentFlow(v) > ResidualGraph.EPSILON)
+                set[find(set, v)] = find(set, tree.parent(v));
+        }
+        int components = 0;
+        Arrays.fill(component, -1);
+        for (int v = 0; v < n; v++) {
+            int root = find(set, v);
+            if (component[root] < 0)
+                component[root] = components++;
+            component[v] = component[root];
+        }
+        return components;
+    }
+    private static int find(int[] set, int v) {
+        while (set[v] != v) {
+            set[v] = set[set[v]];
+            v = set[v];
+        }
+        return v;
+    }
+    /**
+     * Writes "flowbetweenness", "closeness" and "floweccentricity", batchSize nodes per transaction.
+     * A failed batch is rethrown, so a partially written result is never cached.
+     */
+    static void save(GraphDatabaseService database, GraphSnapshot graph, Result result, int batchSize) {
+        int v = 0;
+        while (v < graph.size()) {
+            Transaction tx = database.beginTx();
+            try {
+                for (int i = 0; i < batchSize && v < graph.size(); i++, v++) {
+                    Node node = database.getNodeById(graph.nodeId(v));
+                    node.setProperty("flowbetweenness",  result.betweenness[v]);
+                    node.setProperty("closeness",        result.closeness[v]);
+                    node.setProperty("floweccentricity", result.eccentricity[v]);
+                }
+                tx.success();
+            } catch (RuntimeException e) {
+                System.err.println("Exception Error: FlowCentrality Class: " + e);
+                tx.failure();
+                throw e;
+            } finally {
+                tx.close();
+            }
+        }
+    }
+}
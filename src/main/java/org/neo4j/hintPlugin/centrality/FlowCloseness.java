@@ -23,30 +23,28 @@
  */
 package org.neo4j.hintplugin.centrality;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.Status;
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphdb.RelationshipType;
-import org.neo4j.graphdb.traversal.Evaluation;
-import org.neo4j.graphdb.traversal.Evaluators;
-import org.neo4j.graphdb.traversal.TraversalDescription;
-import org.neo4j.graphdb.traversal.Uniqueness;
-import org.neo4j.tooling.GlobalGraphOperations;
-import java.lang.Runnable;
+import org.neo4j.graphdb.NotFoundException;
 import org.json.JSONObject;
 import java.lang.Math;
 /**
  * Flow Closeness Class
- *
+ * The closeness of a node is its "flow" (the throughput left by the maximum
+ * flows) over the flow of its whole MAX_FLOW connected component.
+ * The values come from FlowCentrality, which computes and writes the
+ * "closeness" of the whole graph at once together with the flow betweenness
+ * and eccentricity, so /flowcloseness/{target} only reads the node property.
+ * @see FlowCentrality
  * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
  * @version 0.1
  * @since 2014-05-01
@@ -54,12 +52,6 @@ import java.lang.Math;
 @Path("/flowcloseness")
 public class FlowCloseness {
     private final GraphDatabaseService database;
-    /*
-     * The enum listing all the relationship types allowed in database.
-     */
-    private enum Rels implements RelationshipType {
-        KNOWS, HAS_TERM, MAX_FLOW
-    }
     /*
      * The Public Constructor passing the database service...
      */
@@ -68,11 +60,8 @@ public class FlowCloseness {
     }
     /*
      * Flow Closeness: RESTful Service...
-     * Calculates Flow Closeness Given a Database
-     * *** WARNING: Compute Process Overhead ***
-     * This method iterates all over the database to set the closeness value
-     * to all the nodes in the graph. Please consider this overhead when calling
-     * this service.
+     * Returns the closeness of a node, 409 until POST /flowcentrality
+     * (or POST /flowcloseness) computed it once.
      * @param target: the ID of the target to get the closeness value.
      */
     @GET
@@ -83,51 +72,36 @@ public class FlowCloseness {
         try{
             obj.put("targetNode",   target);
             obj.put("flowCloseness",this.getFlowCloseness(target));
+        } catch (IllegalStateException ex) {
+            return FlowCentrality.notComputed(ex);
+        } catch (NotFoundException ex) {
+            return FlowCentrality.error(Response.Status.NOT_FOUND, "Node " + target + " not found");
         } catch (Exception ex) {
             System.err.println("centralities.FlowCloseness Class: " + ex);
         }
         return Response.ok(obj.toString(), MediaType.APPLICATION_JSON).build();
     }
     /*
-     * Calculates the FlowCloseness given a target, using the Maximum Flow Class
+     * Flow Closeness: RESTful Service...
+     * Computes and writes the flow centralities of every node.
+     * Use refresh=true after the MAX_FLOW relationships changed (e.g. after /jobs/maxflow-all).
+     * @param batchSize:   the number of nodes written per transaction.
+     * @param parallelism: number of threads reading flows (defaults to the available processors).
+     * @param refresh:     true to rebuild the snapshot first.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response computeFlowCloseness(@QueryParam("batchSize") @DefaultValue("10000") int batchSize,
+                                         @QueryParam("parallelism") @DefaultValue("0") int parallelism,
+                                         @QueryParam("refresh") @DefaultValue("false") boolean refresh) {
+        return new FlowCentrality(this.database).computeFlowCentrality(batchSize, parallelism, "dinic", refresh);
+    }
+    /*
+     * Reads the "closeness" POST /flowcentrality wrote on a target.
      * @param target: The target node to get the centrality...
      */
-    public double getFlowCloseness(long targetNodeId){
-        double flowSum    = 0.0;
-        double closeness  = 0.0;
-        double targetCloseness = 0.0;
-        Transaction tx = database.beginTx();
-        try {
-            Node targetNode  = database.getNodeById(targetNodeId);
-            //Get the overall summatory of the flow though all nodes...
-            for(Node currentNode : this.database.traversalDescription()
-                .breadthFirst()
-                .relationships(Rels.MAX_FLOW)
-                .traverse(targetNode)
-                .nodes()) {
-                if (currentNode.hasProperty("flow"))
-                    flowSum = (Double)currentNode.getProperty("flow") + flowSum;
-            }
-            //Set closeness value for all nodes...
-            for(Node currentNode : this.database.traversalDescription()
-                .breadthFirst()
-                .relationships(Rels.MAX_FLOW)
-                .traverse(targetNode)
-                .nodes()) {
-                closeness = 0.0;
-                if (currentNode.hasProperty("flow"))
-                    closeness = (Double)currentNode.getProperty("flow")/flowSum;
-                if( currentNode.getId() == targetNodeId)
-                    targetCloseness = closeness;
-                currentNode.setProperty("closeness", closeness);
-            }
-            tx.success();
-        }catch (Exception e) {
-            System.err.println("Exception Error: FlowBetweenness Class: " + e);
-            tx.failure();
-        } finally {
-            tx.close();
-        }
+    public double getFlowCloseness(long targetNodeId) throws Exception {
+        double targetCloseness = FlowCentrality.stored(this.database, targetNodeId)[FlowCentrality.CLOSENESS];
         return Math.round(Math.abs(targetCloseness) * 100.0)/100.0;
     }
-}
\ No newline at end of file
+}
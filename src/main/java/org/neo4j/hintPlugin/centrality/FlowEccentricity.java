@@ -30,29 +30,20 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.Status;
-import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphalgo.GraphAlgoFactory;
-import org.neo4j.tooling.GlobalGraphOperations;
-import org.neo4j.hintplugin.utils.MaximumFlow;
-import static org.neo4j.graphalgo.GraphAlgoFactory.shortestPath;
-import static org.neo4j.kernel.Traversal.expanderForAllTypes;
-import java.util.ArrayList;
-import java.util.List;
-import java.lang.Math;
-import java.lang.Runnable;
+import org.neo4j.graphdb.NotFoundException;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 /**
  *
- * Eccentricity is defined as the maximum distance 
- * to any other node in the graph.
+ * Flow eccentricity is the inverse of the largest maximum
+ * flow from a node to any other node in the graph.
+ * The values come from FlowCentrality, which computes and writes the
+ * "floweccentricity" (the largest maximum flow) of the whole graph at once,
+ * and are read from the node property.
  *
+ * @see FlowCentrality
  * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
  * @version 0.1
  * @since 2014-05-01
@@ -60,7 +51,6 @@ import com.google.gson.JsonObject;
 @Path("/floweccentricity")
 public class FlowEccentricity {
     private final GraphDatabaseService database;
-    public int maxDepth = 10000;
     private double maxValue = 0;
     public FlowEccentricity( @Context GraphDatabaseService database ) {
         this.database = database;
@@ -75,41 +65,26 @@ public class FlowEccentricity {
     public Response eccentricity(@PathParam("targetNodeId") long targetNodeId) {
         Gson       gson = new GsonBuilder().create();
         JsonObject obj  = new JsonObject();
-        double flowEccentricity = this.getFlowEccentricity(targetNodeId);
         try{
+            double flowEccentricity = this.getFlowEccentricity(targetNodeId);
             obj.addProperty("flowEccentricity", flowEccentricity);
             obj.addProperty("targetNode", targetNodeId);
             obj.addProperty("pathMaxLength", maxValue);
+        } catch (IllegalStateException ex) {
+            return FlowCentrality.notComputed(ex);
+        } catch (NotFoundException ex) {
+            return FlowCentrality.error(Response.Status.NOT_FOUND, "Node " + targetNodeId + " not found");
         } catch (Exception ex) {
-            System.err.println("centrality.Eccentricity Class: " + ex);
+            System.err.println("centrality.FlowEccentricity Class: " + ex);
         }
         return Response.ok(gson.toJson(obj),MediaType.APPLICATION_JSON).build();
     }
     /*
-     * Calculates the Eccentricity given a target.
+     * Reads the "floweccentricity" POST /flowcentrality wrote on a target.
      * @param targetNodeId: The target node to get the centrality.
      */
-    public double getFlowEccentricity(long targetNodeId){
-        this.maxValue = 0;
-        Transaction tx = database.beginTx();
-        try {
-            Node targetNode  = database.getNodeById(targetNodeId);
-            /* Get all other nodes in Graph (ignoring targetNodeId) */
-            for (Relationship rel : targetNode.getRelationships()){
-                if(rel.hasProperty("maxflow")){
-                    if((Double)rel.getProperty("maxflow") > this.maxValue){
-                        this.maxValue = (Double)rel.getProperty("maxflow");
-                    }
-                }
-            }
-            targetNode.setProperty("floweccentricity",this.maxValue);
-        }catch (Exception e) {
-            System.err.println("Exception Error: FlowBetweenness Class: " + e);
-            tx.failure();
-        } finally {
-            tx.success();
-            tx.close();
-        }
-        return Math.round((1.0/Math.abs(maxValue))*100.0)/100.0;
+    public double getFlowEccentricity(long targetNodeId) throws Exception {
+        this.maxValue = FlowCentrality.stored(this.database, targetNodeId)[FlowCentrality.ECCENTRICITY];
+        return FlowCentrality.inverse(this.maxValue);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,386 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.centrality;
+
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Top Closeness Class
+ * The exact k nodes with the highest closeness, without a complete search
+ * from every node (BFSCut). Nodes are searched in decreasing degree order, so
+ * the k-th best score found so far rises quickly. Once a BFS has discovered
+ * every node up to distance d+1, the other nodes of the component are at
+ * least at d+2, and at most sum(degree - 1) of the nodes at d+1 can be at
+ * exactly d+2; this bounds the closeness the node can still reach, and the
+ * search stops as soon as that bound cannot beat the k-th best.
+ * Only unweighted searches can be cut by level; for weighted closeness the
+ * complete Closenesses result is computed and its top k selected.
+ * @see (Bergamini, E., Borassi, M., Crescenzi, P., Marino, A., Meyerhenke, H. (2016). Computing top-k Closeness Centrality Faster in Unweighted Graphs)
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class TopCloseness {
+    /**
+     * Computed (or running) rankings by snapshot, keyed by the mode they were computed with.
+     */
+    private static final Map<GraphSnapshot, Map<String, FutureTask<TopCloseness>>> results =
+        new WeakHashMap<GraphSnapshot, Map<String, FutureTask<TopCloseness>>>();
+    
+    private final int[]    nodes;
+    private final double[] scores;
+    private final long     searches;
+    private final long     cut;
+    private final long     visited;
+    
+    private TopCloseness(int[] nodes, double[] scores, long searches, long cut, long visited) {
+        this.nodes    = nodes;
+        this.scores   = scores;
+        this.searches = searches;
+        this.cut      = cut;
+        this.visited  = visited;
+    }
+    /**
+     * Returns the cached top k of a snapshot, computing it if needed.
+     * @param graph:    the snapshot to work on.
+     * @param type:     the relationship type to follow.
+     * @param weighted: true to use the "weight" of the relationships as length.
+     * @param variant:  the closeness variant (see Closenesses).
+     * @param k:        the number of nodes.
+     * @param parallelism: the number of workers used if it has to be computed.
+     */
+    public static TopCloseness of(final GraphSnapshot graph, final GraphSnapshot.Rels type,
+                                  final boolean weighted, final String variant, final int k,
+                                  final int parallelism) {
+        String key = type.name() + (weighted ? "-weighted" : "") + "-" + variant + "-" + k;
+        FutureTask<TopCloseness> task;
+        boolean owner = false;
+        // The lock only guards the map, the searches run outside of it...
+        synchronized (results) {
+            Map<String, FutureTask<TopCloseness>> cached = results.get(graph);
+            if (cached == null) {
+                cached = new HashMap<String, FutureTask<TopCloseness>>();
+                results.put(graph, cached);
+            }
+            task = cached.get(key);
+            if (task == null) {
+                task = new FutureTask<TopCloseness>(new Callable<TopCloseness>() {
+                    public TopCloseness call() {
+                        return weighted ? select(graph, Closenesses.of(graph, type, true, parallelism), variant, k)
+                                        : compute(graph, type, variant, k, parallelism);
+                    }
+                });
+                cached.put(key, task);
+                owner = true;
+            }
+        }
+        if (owner)
+            task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // Not cached, the next request tries again...
+            synchronized (results) {
+                Map<String, FutureTask<TopCloseness>> cached = results.get(graph);
+                if (cached != null && cached.get(key) == task)
+                    cached.remove(key);
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Number of nodes in the ranking (k, or fewer on a smaller graph).
+     */
+    public int size() {
+        return this.nodes.length;
+    }
+    /**
+     * Node index at a rank, the most central first.
+     */
+    public int node(int rank) {
+        return this.nodes[rank];
+    }
+    public double score(int rank) {
+        return this.scores[rank];
+    }
+    /**
+     * Number of searches started, one per node.
+     */
+    public long searches() {
+        return this.searches;
+    }
+    /**
+     * Number of searches stopped before they reached their whole component.
+     */
+    public long cut() {
+        return this.cut;
+    }
+    /**
+     * Number of nodes visited by all the searches.
+     */
+    public long visited() {
+        return this.visited;
+    }
+    /**
+     * The top k of a complete result.
+     */
+    static TopCloseness select(GraphSnapshot graph, Closenesses.Result result, String variant, int k) {
+        Ranking ranking = new Ranking(Math.min(k, graph.size()));
+        long visited = 0;
+        for (int v = 0; v < graph.size(); v++) {
+            ranking.offer(v, result.closeness(v, variant));
+            visited += result.reached(v);
+        }
+        return ranking.toTop(graph.size(), 0, visited);
+    }
+    /**
+     * BFSCut from every node, in decreasing degree order.
+     * @param parallelism: the number of workers (at most the available processors), 1 runs in the calling thread.
+     */
+    static TopCloseness compute(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                String variant, int k, int parallelism) {
+        int n = graph.size();
+        int[] component = new int[n];
+        int[] sizes     = Closenesses.components(graph, type, component);
+        // Decreasing degree, node index on ties...
+        long[] keys = new long[n];
+        for (int v = 0; v < n; v++)
+            keys[v] = ((long)(Integer.MAX_VALUE - graph.degree(v, type)) << 32) | v;
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = (int)keys[i];
+        Search search = new Search(graph, type, variant, order, component, sizes,
+                                   new Ranking(Math.min(k, n)));
+        parallelism = Brandes.workers(parallelism);
+        if (parallelism <= 1) {
+            new Searches(search).compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new AllSearches(search, parallelism));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return search.ranking.toTop(n, search.cut.get(), search.visited.get());
+    }
+    
+    /**
+     * The best k scores found so far, a min-heap on the score.
+     */
+    private static final class Ranking {
+        private final int k;
+        private final PriorityQueue<double[]> heap;
+        private volatile double threshold = -1.0;
+        
+        Ranking(int k) {
+            this.k    = k;
+            this.heap = new PriorityQueue<double[]>(Math.max(1, k), new Comparator<double[]>() {
+                public int compare(double[] a, double[] b) {
+                    int cmp = Double.compare(a[0], b[0]);
+                    return (cmp != 0) ? cmp : Double.compare(b[1], a[1]);
+                }
+            });
+        }
+        /**
+         * The score a node has to beat to enter the ranking, -1 while it is not full.
+         */
+        double threshold() {
+            return this.threshold;
+        }
+        synchronized void offer(int v, double score) {
+            if (this.k <= 0)
+                return;
+            if (this.heap.size() < this.k) {
+                this.heap.add(new double[] {score, v});
+            } else if (score > this.heap.peek()[0]) {
+                this.heap.poll();
+                this.heap.add(new double[] {score, v});
+            } else {
+                return;
+            }
+            if (this.heap.size() == this.k)
+                this.threshold = this.heap.peek()[0];
+        }
+        synchronized TopCloseness toTop(long searches, long cut, long visited) {
+            List<double[]> ranked = new ArrayList<double[]>(this.heap);
+            Collections.sort(ranked, Collections.reverseOrder(this.heap.comparator()));
+            int[]    nodes  = new int[ranked.size()];
+            double[] scores = new double[ranked.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i]  = (int)ranked.get(i)[1];
+                scores[i] = ranked.get(i)[0];
+            }
+            return new TopCloseness(nodes, scores, searches, cut, visited);
+        }
+    }
+    /**
+     * The state shared by every worker.
+     */
+    private static final class Search {
+        final GraphSnapshot graph;
+        final GraphSnapshot.Rels type;
+        final String  variant;
+        final int[]   order;
+        final int[]   component;
+        final int[]   sizes;
+        final Ranking ranking;
+        final AtomicInteger next    = new AtomicInteger();
+        final AtomicLong    cut     = new AtomicLong();
+        final AtomicLong    visited = new AtomicLong();
+        
+        Search(GraphSnapshot graph, GraphSnapshot.Rels type, String variant, int[] order,
+               int[] component, int[] sizes, Ranking ranking) {
+            this.graph     = graph;
+            this.type      = type;
+            this.variant   = variant;
+            this.order     = order;
+            this.component = component;
+            this.sizes     = sizes;
+            this.ranking   = ranking;
+        }
+    }
+    /**
+     * Forks one Searches task per worker.
+     */
+    private static final class AllSearches extends RecursiveAction {
+        private final Search search;
+        private final int parallelism;
+        
+        AllSearches(Search search, int parallelism) {
+            this.search      = search;
+            this.parallelism = parallelism;
+        }
+        @Override
+        protected void compute() {
+            List<Searches> tasks = new ArrayList<Searches>();
+            for (int i = 0; i < this.parallelism; i++) {
+                Searches task = new Searches(this.search);
+                tasks.add(task);
+                task.fork();
+            }
+            for (Searches task : tasks)
+                task.join();
+        }
+    }
+    /**
+     * Takes small blocks of the degree order, so the threshold is shared early.
+     */
+    private static final class Searches extends RecursiveAction {
+        private static final int BLOCK = 8;
+        private final Search search;
+        private final int[]  dist;
+        private final int[]  queue;
+        
+        Searches(Search search) {
+            this.search = search;
+            this.dist   = new int[search.graph.size()];
+            this.queue  = new int[search.graph.size()];
+            Arrays.fill(this.dist, -1);
+        }
+        @Override
+        protected void compute() {
+            int n = this.search.order.length;
+            int first;
+            while ((first = this.search.next.getAndAdd(BLOCK)) < n) {
+                for (int i = first; i < Math.min(first + BLOCK, n); i++)
+                    this.cutSearch(this.search.order[i]);
+            }
+        }
+        /**
+         * BFS from s level by level, stopped once its bound cannot enter the ranking.
+         */
+        private void cutSearch(int s) {
+            GraphSnapshot graph = this.search.graph;
+            GraphSnapshot.Rels type = this.search.type;
+            String variant  = this.search.variant;
+            int    n        = graph.size();
+            int    reached  = this.search.sizes[this.search.component[s]];
+            int    head = 0, tail = 0, level = 0;
+            double farness  = 0.0, harmonic = 0.0;
+            boolean stopped = false;
+            this.dist[s]  = 0;
+            this.queue[tail++] = s;
+            while (head < tail) {
+                // Expand every node at distance level...
+                int levelEnd = tail;
+                while (head < levelEnd) {
+                    int v = this.queue[head++];
+                    for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+                        int w = graph.target(e);
+                        if (this.dist[w] < 0) {
+                            this.dist[w] = level + 1;
+                            this.queue[tail++] = w;
+                            farness  += level + 1;
+                            harmonic += 1.0 / (level + 1);
+                        }
+                    }
+                }
+                level++;
+                int left = reached - tail;
+                if (head == tail || left <= 0)
+                    continue;
+                // The nodes left are at level+1 or more, at most gamma of them at level+1...
+                long gamma = 0;
+                for (int i = head; i < tail; i++)
+                    gamma += Math.max(0, graph.degree(this.queue[i], type) - 1);
+                long atNext = Math.min(gamma, left);
+                double bound = Closenesses.score(variant, n, reached,
+                    farness + (level + 1.0) * atNext + (level + 2.0) * (left - atNext),
+                    harmonic + atNext / (level + 1.0) + (left - atNext) / (level + 2.0));
+                if (bound <= this.search.ranking.threshold()) {
+                    stopped = true;
+                    break;
+                }
+            }
+            if (stopped)
+                this.search.cut.incrementAndGet();
+            else
+                this.search.ranking.offer(s, Closenesses.score(variant, n, reached, farness, harmonic));
+            this.search.visited.addAndGet(tail);
+            for (int i = 0; i < tail; i++)
+                this.dist[this.queue[i]] = -1;
+        }
+    }
+}
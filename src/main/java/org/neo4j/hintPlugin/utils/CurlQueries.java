@@ -47,6 +47,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * @deprecated use POST /jobs/maxflow-all, which computes all the pairs in
+ *             the server instead of printing one cURL query per pair.
+ */
+@Deprecated
 @Path("/curlquery")
 public class CurlQueries {
     
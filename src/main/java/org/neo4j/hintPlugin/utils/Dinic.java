@@ -0,0 +1,122 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import java.util.Arrays;
+
+/**
+ * Dinic Class
+ * Maximum flow by blocking flows over BFS level graphs, O(n²m).
+ * The search for augmenting paths is iterative and keeps a current-arc
+ * pointer per node, so every dead end is visited once per phase.
+ * @see (Dinic, E. A. (1970). Algorithm for solution of a problem of maximum flow in a network with power estimation)
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class Dinic {
+    
+    private Dinic() {
+    }
+    /**
+     * Computes the maximum flow between two nodes.
+     * @param residual  the residual graph, updated in place.
+     * @param source    the source node index
+     * @param sink      the sink node index
+     * @return double   as the maximum flow value.
+     */
+    public static double maxFlow(ResidualGraph residual, int source, int sink) {
+        GraphSnapshot graph = residual.graph();
+        GraphSnapshot.Rels type = residual.type();
+        int   n       = graph.size();
+        int[] level   = new int[n];
+        int[] current = new int[n];
+        int[] queue   = new int[n];
+        int[] pathEntries = new int[n];
+        int[] pathNodes   = new int[n + 1];
+        double accumulator = 0.0;
+        while (true) {
+            //Level graph...
+            Arrays.fill(level, -1);
+            int head = 0, tail = 0;
+            level[source] = 0;
+            queue[tail++] = source;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+                    int w = graph.target(e);
+                    if (level[w] < 0 && residual.residual(e) > ResidualGraph.EPSILON) {
+                        level[w] = level[v] + 1;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+            if (level[sink] < 0)
+                return accumulator;
+            for (int v = 0; v < n; v++)
+                current[v] = graph.begin(v, type);
+            //Blocking flow...
+            int top = 0;
+            pathNodes[0] = source;
+            while (true) {
+                int v = pathNodes[top];
+                if (v == sink) {
+                    double flow = Double.MAX_VALUE;
+                    for (int i = 0; i < top; i++)
+                        flow = Math.min(flow, residual.residual(pathEntries[i]));
+                    for (int i = 0; i < top; i++)
+                        residual.push(pathEntries[i], flow);
+                    accumulator = accumulator + flow;
+                    //Go back to the tail of the first saturated entry...
+                    for (int i = 0; i < top; i++) {
+                        if (residual.residual(pathEntries[i]) <= ResidualGraph.EPSILON) {
+                            top = i;
+                            break;
+                        }
+                    }
+                    continue;
+                }
+                int e = current[v];
+                while (e < graph.end(v, type)) {
+                    int w = graph.target(e);
+                    if (level[w] == level[v] + 1 && residual.residual(e) > ResidualGraph.EPSILON)
+                        break;
+                    e++;
+                }
+                current[v] = e;
+                if (e < graph.end(v, type)) {
+                    pathEntries[top] = e;
+                    pathNodes[++top] = graph.target(e);
+                } else {
+                    //Dead end, never come back to this node in this phase...
+                    level[v] = -1;
+                    if (top == 0)
+                        break;
+                    top--;
+                    current[pathNodes[top]]++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+/**
+ * Embedding Class
+ * "More like this" over POI embeddings: the approximate nearest neighbors of a POI
+ * by the cosine of its HAS_TERM weights, served from an HNSW index.
+ * The index is optional, it is built on the first request (or with POST /embedding).
+ * @see EmbeddingIndex
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+@Path("/embedding")
+public class Embedding {
+    
+    private final GraphDatabaseService database;
+    /*
+     * The Public constructor.
+     */
+    public Embedding(@Context GraphDatabaseService database) {
+        this.database = database;
+    }
+    /*
+     * Returns the size of the index (builds it if needed).
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response index() {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            this.describe(EmbeddingIndex.of(GraphSnapshot.get(this.database)), obj);
+        } catch (Exception ex) {
+            System.err.println("utils.Embedding Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * (Re)builds the index of the current snapshot.
+     * @param dimensions:     the size of the embeddings.
+     * @param m:              the links per node and layer.
+     * @param efConstruction: the search width used to find the links.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response build(@QueryParam("dimensions") @DefaultValue("128") int dimensions,
+                          @QueryParam("m") @DefaultValue("16") int m,
+                          @QueryParam("efConstruction") @DefaultValue("100") int efConstruction) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            long startTime = System.currentTimeMillis();
+            this.describe(EmbeddingIndex.build(GraphSnapshot.get(this.database),
+                                               dimensions, m, efConstruction), obj);
+            obj.addProperty("computedSeconds", (System.currentTimeMillis() - startTime)/1000.0);
+        } catch (Exception ex) {
+            System.err.println("utils.Embedding Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * The approximate k nearest POIs of a POI.
+     * @param node: the POI to compare against.
+     * @param k:    the number of POIs to return.
+     * @param ef:   the search width, higher is slower and more accurate.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{node}/nearest")
+    public Response nearest(@PathParam("node") long node,
+                            @QueryParam("k") @DefaultValue("10") int k,
+                            @QueryParam("ef") @DefaultValue("50") int ef) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            GraphSnapshot graph = GraphSnapshot.get(this.database);
+            int v = graph.indexOf(node);
+            if (v < 0)
+                throw new IllegalArgumentException("Node " + node + " is not in the snapshot");
+            double[][] nearest = EmbeddingIndex.of(graph).nearest(v, Math.max(1, k), ef);
+            JsonArray  similar = new JsonArray();
+            for (int i = 0; i < nearest[0].length; i++) {
+                JsonObject entry = new JsonObject();
+                entry.addProperty("node",       graph.nodeId((int)nearest[0][i]));
+                entry.addProperty("similarity", nearest[1][i]);
+                similar.add(entry);
+            }
+            obj.addProperty("node", node);
+            obj.addProperty("k",    k);
+            obj.addProperty("ef",   ef);
+            obj.add("similar",      similar);
+        } catch (Exception ex) {
+            System.err.println("utils.Embedding Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Adds the index parameters to a JSON object.
+     */
+    private void describe(EmbeddingIndex index, JsonObject obj) {
+        obj.addProperty("nodes",      index.size());
+        obj.addProperty("dimensions", index.dimensions());
+        obj.addProperty("m",          index.m());
+        obj.addProperty("layers",     index.layers());
+    }
+}
@@ -0,0 +1,448 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+
+/**
+ * Embedding Index Class
+ * Fixed-dimension embeddings of the POIs with an HNSW index for approximate
+ * nearest neighbors (Malkov and Yashunin, 2016).
+ *
+ * The embedding of a node is a random projection of the "weight" of its outgoing
+ * HAS_TERM relationships (a relationship without weight counts as 1): every term
+ * adds ±weight to each dimension, with the sign taken from a hash of the term and
+ * the dimension, so no projection matrix is stored and the same term always
+ * projects the same way. Embeddings are normalized, the dot product of two of them
+ * estimates the cosine of the term vectors. They are held in direct (off-heap)
+ * float buffers of up to 1 GB each.
+ *
+ * The graph is a stack of layers with at most m links per node (2m in the bottom
+ * layer) picked with the neighbor selection heuristic; searches go greedily down
+ * the layers and run a best-first search of width ef in the bottom one.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class EmbeddingIndex {
+    public static final int DIMENSIONS      = 128;
+    public static final int M               = 16;
+    public static final int EF_CONSTRUCTION = 100;
+    
+    private static final Map<GraphSnapshot, EmbeddingIndex> indexes =
+        new WeakHashMap<GraphSnapshot, EmbeddingIndex>();
+    /**
+     * Visited marks reused by every search served by the same thread.
+     */
+    private static final ThreadLocal<int[]> marks = new ThreadLocal<int[]>();
+    
+    private final GraphSnapshot graph;
+    private final int dimensions;
+    private final int m;
+    private final int efConstruction;
+    private final FloatBuffer[] vectors;
+    private final int     chunk;
+    private final int[]   nodes;
+    private final int[]   points;
+    private final int[][] links;
+    private int entry = -1;
+    private int top   = -1;
+    
+    private EmbeddingIndex(GraphSnapshot graph, int dimensions, int m, int efConstruction) {
+        this.graph          = graph;
+        this.dimensions     = dimensions;
+        this.m              = m;
+        this.efConstruction = efConstruction;
+        int slot = GraphSnapshot.Rels.HAS_TERM.ordinal();
+        // The nodes with outgoing HAS_TERM relationships...
+        int[] nodes = new int[graph.size()];
+        int   count = 0;
+        this.points = new int[graph.size()];
+        Arrays.fill(this.points, -1);
+        for (int v = 0; v < graph.size(); v++) {
+            for (int e = graph.begin(v, slot); e < graph.end(v, slot); e++) {
+                if (graph.isOutgoing(e)) {
+                    this.points[v] = count;
+                    nodes[count++] = v;
+                    break;
+                }
+            }
+        }
+        this.nodes   = Arrays.copyOf(nodes, count);
+        this.chunk   = Math.max(1, (1 << 28) / dimensions);
+        this.vectors = new FloatBuffer[(count + this.chunk - 1) / this.chunk];
+        for (int i = 0; i < this.vectors.length; i++) {
+            int points = Math.min(this.chunk, count - i * this.chunk);
+            this.vectors[i] = ByteBuffer.allocateDirect(points * dimensions * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        float[] vector = new float[dimensions];
+        for (int p = 0; p < count; p++) {
+            this.project(this.nodes[p], slot, vector);
+            this.vectors[p / this.chunk].position((p % this.chunk) * dimensions);
+            this.vectors[p / this.chunk].put(vector);
+        }
+        // Insert every point...
+        this.links  = new int[count][];
+        Random random      = new Random(count);
+        double levelFactor = 1.0 / Math.log(Math.max(2, m));
+        for (int p = 0; p < count; p++)
+            this.insert(p, (int)(-Math.log(1.0 - random.nextDouble()) * levelFactor));
+    }
+    /**
+     * Returns the cached index of a snapshot, building it with the defaults if needed.
+     */
+    public static EmbeddingIndex of(GraphSnapshot graph) {
+        synchronized (indexes) {
+            EmbeddingIndex index = indexes.get(graph);
+            if (index == null) {
+                index = new EmbeddingIndex(graph, DIMENSIONS, M, EF_CONSTRUCTION);
+                indexes.put(graph, index);
+            }
+            return index;
+        }
+    }
+    /**
+     * Builds and caches the index of a snapshot.
+     * @param graph:          the snapshot to read.
+     * @param dimensions:     the size of the embeddings.
+     * @param m:              the links per node and layer.
+     * @param efConstruction: the search width used to find the links.
+     */
+    public static EmbeddingIndex build(GraphSnapshot graph, int dimensions, int m, int efConstruction) {
+        if (dimensions < 1 || m < 2 || efConstruction < 1)
+            throw new IllegalArgumentException("dimensions >= 1, m >= 2 and efConstruction >= 1 are required");
+        EmbeddingIndex index = new EmbeddingIndex(graph, dimensions, m, efConstruction);
+        synchronized (indexes) {
+            indexes.put(graph, index);
+        }
+        return index;
+    }
+    /**
+     * Number of embedded nodes.
+     */
+    public int size() {
+        return this.nodes.length;
+    }
+    public int dimensions() {
+        return this.dimensions;
+    }
+    public int m() {
+        return this.m;
+    }
+    /**
+     * Number of layers.
+     */
+    public int layers() {
+        return this.top + 1;
+    }
+    /**
+     * Whether a node has an embedding.
+     */
+    public boolean contains(int v) {
+        return this.points[v] >= 0;
+    }
+    /**
+     * Dot product of the embeddings of two nodes, the estimated cosine.
+     */
+    public double similarity(int a, int b) {
+        return 1.0 - this.distance(this.point(a), this.point(b));
+    }
+    /**
+     * The approximate k nearest nodes of a node, closest first.
+     * @param v:  the node index.
+     * @param k:  the number of nodes to return.
+     * @param ef: the search width, at least k.
+     * @return the node indices in [0] and the similarities in [1].
+     */
+    public double[][] nearest(int v, int k, int ef) {
+        int q = this.point(v);
+        int[] entries = {this.entry};
+        for (int level = this.top; level > 0; level--)
+            entries[0] = this.search(q, entries, 1, level).values[0];
+        Heap results = this.search(q, entries, Math.max(ef, k + 1), 0);
+        // Pop the farthest first...
+        int[]    found     = new int[results.size];
+        double[] distances = new double[results.size];
+        for (int i = results.size - 1; i >= 0; i--) {
+            distances[i] = results.keys[0];
+            found[i]     = results.pop();
+        }
+        int count = 0;
+        double[][] nearest = new double[2][Math.min(k, found.length)];
+        for (int i = 0; i < found.length && count < nearest[0].length; i++) {
+            if (found[i] == q)
+                continue;
+            nearest[0][count] = this.nodes[found[i]];
+            nearest[1][count] = 1.0 - distances[i];
+            count++;
+        }
+        nearest[0] = Arrays.copyOf(nearest[0], count);
+        nearest[1] = Arrays.copyOf(nearest[1], count);
+        return nearest;
+    }
+    /*
+     * Random projection of the HAS_TERM weights of v, normalized.
+     */
+    private void project(int v, int slot, float[] vector) {
+        Arrays.fill(vector, 0.0f);
+        for (int e = this.graph.begin(v, slot); e < this.graph.end(v, slot); e++) {
+            if (!this.graph.isOutgoing(e))
+                continue;
+            double weight = this.graph.weight(e);
+            if (Double.isNaN(weight))
+                weight = 1.0;
+            long term = MinHashIndex.mix(this.graph.nodeId(this.graph.target(e)));
+            long signs = 0;
+            for (int d = 0; d < this.dimensions; d++) {
+                if ((d & 63) == 0)
+                    signs = MinHashIndex.mix(term + d);
+                vector[d] += ((signs >>> (d & 63)) & 1L) == 0 ? weight : -weight;
+            }
+        }
+        double norm = 0.0;
+        for (float x : vector)
+            norm += x * x;
+        if (norm > 0.0) {
+            norm = Math.sqrt(norm);
+            for (int d = 0; d < this.dimensions; d++)
+                vector[d] = (float)(vector[d] / norm);
+        }
+    }
+    private int point(int v) {
+        if (this.points[v] < 0)
+            throw new IllegalArgumentException("Node " + this.graph.nodeId(v) + " has no HAS_TERM embedding");
+        return this.points[v];
+    }
+    /*
+     * 1 - cosine of two points.
+     */
+    private double distance(int p, int q) {
+        FloatBuffer x = this.vectors[p / this.chunk], y = this.vectors[q / this.chunk];
+        int a = (p % this.chunk) * this.dimensions, b = (q % this.chunk) * this.dimensions;
+        double dot = 0.0;
+        for (int d = 0; d < this.dimensions; d++)
+            dot += x.get(a + d) * y.get(b + d);
+        return 1.0 - dot;
+    }
+    /*
+     * Links of a point in one layer: the count, then the neighbors.
+     */
+    private int offset(int level) {
+        return level == 0 ? 0 : (2 * this.m + 1) + (level - 1) * (this.m + 1);
+    }
+    private int capacity(int level) {
+        return level == 0 ? 2 * this.m : this.m;
+    }
+    /*
+     * Adds a point to the layers 0..level.
+     */
+    private void insert(int q, int level) {
+        this.links[q] = new int[this.offset(level + 1)];
+        if (this.entry < 0) {
+            this.entry = q;
+            this.top   = level;
+            return;
+        }
+        int[] entries = {this.entry};
+        for (int l = this.top; l > level; l--)
+            entries[0] = this.search(q, entries, 1, l).values[0];
+        for (int l = Math.min(this.top, level); l >= 0; l--) {
+            Heap found = this.search(q, entries, this.efConstruction, l);
+            entries = Arrays.copyOf(found.values, found.size);
+            int[] candidates = this.sorted(found);
+            int[] neighbors  = this.select(q, candidates, candidates.length, this.m);
+            int   base       = this.offset(l);
+            this.links[q][base] = neighbors.length;
+            System.arraycopy(neighbors, 0, this.links[q], base + 1, neighbors.length);
+            for (int n : neighbors)
+                this.connect(n, q, l);
+        }
+        if (level > this.top) {
+            this.entry = q;
+            this.top   = level;
+        }
+    }
+    /*
+     * Links n to q in a layer, pruning the links of n when they overflow.
+     */
+    private void connect(int n, int q, int level) {
+        int[] links = this.links[n];
+        int   base  = this.offset(level);
+        int   count = links[base];
+        if (count < this.capacity(level)) {
+            links[base + 1 + count] = q;
+            links[base]             = count + 1;
+            return;
+        }
+        Heap heap = new Heap(count + 1);
+        for (int i = 0; i < count; i++)
+            heap.push(this.distance(n, links[base + 1 + i]), links[base + 1 + i]);
+        heap.push(this.distance(n, q), q);
+        int[] neighbors = this.select(n, this.sorted(heap), count + 1, this.capacity(level));
+        links[base] = neighbors.length;
+        System.arraycopy(neighbors, 0, links, base + 1, neighbors.length);
+    }
+    /*
+     * The points of a max-heap, closest first (empties the heap).
+     */
+    private int[] sorted(Heap heap) {
+        int[] sorted = new int[heap.size];
+        for (int i = heap.size - 1; i >= 0; i--)
+            sorted[i] = heap.pop();
+        return sorted;
+    }
+    /*
+     * Neighbor selection heuristic: keeps a candidate only if it is closer to the
+     * base than to every neighbor kept so far, then fills up with the rest.
+     */
+    private int[] select(int base, int[] candidates, int count, int capacity) {
+        int[]     selected = new int[Math.min(capacity, count)];
+        boolean[] taken    = new boolean[count];
+        int       size     = 0;
+        for (int i = 0; i < count && size < selected.length; i++) {
+            double  distance = this.distance(base, candidates[i]);
+            boolean keep     = true;
+            for (int j = 0; j < size && keep; j++)
+                keep = this.distance(candidates[i], selected[j]) >= distance;
+            if (keep) {
+                selected[size++] = candidates[i];
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < count && size < selected.length; i++) {
+            if (!taken[i])
+                selected[size++] = candidates[i];
+        }
+        return selected;
+    }
+    /*
+     * Best-first search of width ef in one layer, returns a max-heap of the closest points.
+     */
+    private Heap search(int q, int[] entries, int ef, int level) {
+        int[] visited = marks.get();
+        if (visited == null || visited.length < this.nodes.length + 1) {
+            visited = new int[this.nodes.length + 1];
+            marks.set(visited);
+        }
+        // The last slot holds the current stamp...
+        int stamp = ++visited[visited.length - 1];
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            stamp = visited[visited.length - 1] = 1;
+        }
+        Heap candidates = new Heap(ef + 1);
+        Heap results    = new Heap(ef + 1);
+        for (int e : entries) {
+            if (visited[e] == stamp)
+                continue;
+            visited[e] = stamp;
+            double distance = this.distance(q, e);
+            candidates.push(-distance, e);
+            results.push(distance, e);
+            if (results.size > ef)
+                results.pop();
+        }
+        while (candidates.size > 0) {
+            double distance = -candidates.keys[0];
+            if (results.size >= ef && distance > results.keys[0])
+                break;
+            int   c     = candidates.pop();
+            int[] links = this.links[c];
+            int   base  = this.offset(level);
+            for (int i = 0; i < links[base]; i++) {
+                int n = links[base + 1 + i];
+                if (visited[n] == stamp)
+                    continue;
+                visited[n] = stamp;
+                double d = this.distance(q, n);
+                if (results.size < ef || d < results.keys[0]) {
+                    candidates.push(-d, n);
+                    results.push(d, n);
+                    if (results.size > ef)
+                        results.pop();
+                }
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Binary max-heap of points by key, growing as needed.
+     */
+    private static final class Heap {
+        private double[] keys;
+        private int[]    values;
+        private int      size;
+        
+        Heap(int capacity) {
+            this.keys   = new double[Math.max(1, capacity)];
+            this.values = new int[Math.max(1, capacity)];
+        }
+        void push(double key, int value) {
+            if (this.size == this.keys.length) {
+                this.keys   = Arrays.copyOf(this.keys, 2 * this.size);
+                this.values = Arrays.copyOf(this.values, 2 * this.size);
+            }
+            int i = this.size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (this.keys[parent] >= key)
+                    break;
+                this.keys[i]   = this.keys[parent];
+                this.values[i] = this.values[parent];
+                i = parent;
+            }
+            this.keys[i]   = key;
+            this.values[i] = value;
+        }
+        int pop() {
+            int    top   = this.values[0];
+            double key   = this.keys[--this.size];
+            int    value = this.values[this.size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= this.size)
+                    break;
+                if (child + 1 < this.size && this.keys[child + 1] > this.keys[child])
+                    child++;
+                if (this.keys[child] <= key)
+                    break;
+                this.keys[i]   = this.keys[child];
+                this.values[i] = this.values[child];
+                i = child;
+            }
+            this.keys[i]   = key;
+            this.values[i] = value;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Gomory Hu Tree Class
+ * All-pairs maximum flow of an undirected graph with only n-1 maximum flow
+ * runs (Gusfield's method, no contraction needed). The tree is stored as a
+ * parent array: the maximum flow between two nodes is the minimum parentFlow
+ * on the tree path between them, found in O(depth).
+ * One tree is cached per snapshot, whatever engine built it: every engine
+ * finds the same maximum flows. It is built outside the cache lock, and the
+ * requests asking for it meanwhile wait for that build.
+ * @see (Gusfield, D. (1990). Very simple methods for all pairs network flow analysis)
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class GomoryHuTree {
+    private static final Map<GraphSnapshot, FutureTask<GomoryHuTree>> trees =
+        new WeakHashMap<GraphSnapshot, FutureTask<GomoryHuTree>>();
+    
+    private final GraphSnapshot graph;
+    private final int[]    parent;
+    private final double[] parentFlow;
+    private final int[]    depth;
+    // The tree as adjacency lists, each edge holding the flow of its child...
+    private final int[]    begin;
+    private final int[]    neighbor;
+    private final double[] capacity;
+    
+    private GomoryHuTree(GraphSnapshot graph, int[] parent, double[] parentFlow) {
+        this.graph      = graph;
+        this.parent     = parent;
+        this.parentFlow = parentFlow;
+        this.depth      = new int[parent.length];
+        Arrays.fill(this.depth, -1);
+        for (int v = 0; v < parent.length; v++) {
+            if (parent[v] < 0)
+                this.depth[v] = 0;
+        }
+        int n = parent.length;
+        this.begin = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            if (parent[v] >= 0) {
+                this.begin[v + 1]++;
+                this.begin[parent[v] + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++)
+            this.begin[v + 1] += this.begin[v];
+        int[] next    = this.begin.clone();
+        this.neighbor = new int[this.begin[n]];
+        this.capacity = new double[this.begin[n]];
+        for (int v = 0; v < n; v++) {
+            int u = parent[v];
+            if (u < 0)
+                continue;
+            this.neighbor[next[v]]   = u;
+            this.capacity[next[v]++] = parentFlow[v];
+            this.neighbor[next[u]]   = v;
+            this.capacity[next[u]++] = parentFlow[v];
+        }
+        // Walk up to the first node with a known depth, then fill the way back...
+        for (int v = 0; v < parent.length; v++) {
+            int u = v, steps = 0;
+            while (this.depth[u] < 0) {
+                u = parent[u];
+                steps++;
+            }
+            int d = this.depth[u] + steps;
+            for (u = v; this.depth[u] < 0; u = parent[u])
+                this.depth[u] = d--;
+        }
+    }
+    /**
+     * Returns the cached HAS_TERM tree of a snapshot, building it if needed.
+     * @param graph:     the snapshot to work on.
+     * @param algorithm: the maximum flow engine used for the n-1 runs.
+     * @throws IllegalArgumentException if the algorithm is unknown.
+     */
+    public static GomoryHuTree of(final GraphSnapshot graph, final String algorithm) {
+        // Checked even when the tree is cached...
+        MaximumFlow.checkAlgorithm(algorithm);
+        FutureTask<GomoryHuTree> task;
+        boolean owner = false;
+        synchronized (trees) {
+            task = trees.get(graph);
+            if (task == null) {
+                task = new FutureTask<GomoryHuTree>(new Callable<GomoryHuTree>() {
+                    public GomoryHuTree call() {
+                        return build(graph, GraphSnapshot.Rels.HAS_TERM, algorithm);
+                    }
+                });
+                trees.put(graph, task);
+                owner = true;
+            }
+        }
+        if (owner)
+            task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // Not cached, the next request tries again...
+            synchronized (trees) {
+                if (trees.get(graph) == task)
+                    trees.remove(graph);
+            }
+            if (e.getCause() instanceof IllegalArgumentException)
+                throw (IllegalArgumentException)e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Returns the cached HAS_TERM tree of a snapshot, or null if none was built.
+     */
+    public static GomoryHuTree cached(GraphSnapshot graph) {
+        FutureTask<GomoryHuTree> task;
+        synchronized (trees) {
+            task = trees.get(graph);
+        }
+        if (task == null || !task.isDone())
+            return null;
+        try {
+            return task.get();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    /**
+     * Builds the tree with Gusfield's algorithm.
+     * @param graph:     the snapshot to work on.
+     * @param type:      the relationship type carrying the capacities.
+     * @param algorithm: the maximum flow engine used for the n-1 runs.
+     */
+    public static GomoryHuTree build(GraphSnapshot graph, GraphSnapshot.Rels type,
+                                     String algorithm) {
+        int n = graph.size();
+        int[]    parent     = new int[n];
+        double[] parentFlow = new double[n];
+        ResidualGraph residual = new ResidualGraph(graph, type);
+        for (int s = 1; s < n; s++) {
+            int t = parent[s];
+            residual.reset();
+            double flow = MaximumFlow.maxFlow(residual, s, t, algorithm);
+            boolean[] sourceSide = residual.sourceSide(s);
+            parentFlow[s] = flow;
+            for (int i = s + 1; i < n; i++) {
+                if (sourceSide[i] && parent[i] == t)
+                    parent[i] = s;
+            }
+            if (sourceSide[parent[t]]) {
+                parent[s] = parent[t];
+                parent[t] = s;
+                parentFlow[s] = parentFlow[t];
+                parentFlow[t] = flow;
+            }
+        }
+        // Node 0 is the root, Gusfield never moves it...
+        if (n > 0) {
+            parent[0]     = -1;
+            parentFlow[0] = 0.0;
+        }
+        return new GomoryHuTree(graph, parent, parentFlow);
+    }
+    /**
+     * Maximum flow between two node indices, the minimum capacity on their tree path.
+     */
+    public double maxFlow(int u, int v) {
+        if (u == v)
+            return Double.POSITIVE_INFINITY;
+        double min = Double.POSITIVE_INFINITY;
+        while (u != v) {
+            if (this.depth[u] >= this.depth[v]) {
+                min = Math.min(min, this.parentFlow[u]);
+                u = this.parent[u];
+            } else {
+                min = Math.min(min, this.parentFlow[v]);
+                v = this.parent[v];
+            }
+        }
+        return min;
+    }
+    /**
+     * Maximum flow from a node index to every other one, in one walk of the tree
+     * (infinite to itself, NaN to the nodes of another tree).
+     * @param s:     the source node index.
+     * @param flows: filled with the flow to every node index.
+     */
+    public void row(int s, double[] flows) {
+        int[] stack = new int[this.parent.length];
+        int   top   = 0;
+        Arrays.fill(flows, 0, this.parent.length, Double.NaN);
+        flows[s]     = Double.POSITIVE_INFINITY;
+        stack[top++] = s;
+        while (top > 0) {
+            int u = stack[--top];
+            for (int e = this.begin[u]; e < this.begin[u + 1]; e++) {
+                int w = this.neighbor[e];
+                if (!Double.isNaN(flows[w]))
+                    continue;
+                flows[w]     = Math.min(flows[u], this.capacity[e]);
+                stack[top++] = w;
+            }
+        }
+    }
+    public GraphSnapshot graph() {
+        return this.graph;
+    }
+    /**
+     * Tree parent of a node index (-1 for the root).
+     */
+    public int parent(int v) {
+        return this.parent[v];
+    }
+    /**
+     * Maximum flow between a node index and its tree parent.
+     */
+    public double parentFlow(int v) {
+        return this.parentFlow[v];
+    }
+}
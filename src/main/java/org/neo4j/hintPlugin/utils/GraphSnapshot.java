@@ -0,0 +1,559 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.tooling.GlobalGraphOperations;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Graph Snapshot Class
+ * A compact, read-only projection of the whole graph held in primitive arrays.
+ * Nodes are renumbered to dense int indices and the relationships of each node
+ * are stored in CSR form (offsets/targets/weights), grouped by relationship
+ * type so that every type is a contiguous slice of the node adjacency.
+ * Every relationship appears once at each of its endpoints.
+ *
+ * The snapshot is built once per database and shared by all the endpoints.
+ * A transaction event handler counts the commits that change the content graph
+ * (nodes, relationships or their "weight", not node properties). Once such a
+ * commit happened, get() keeps serving the current snapshot while a new one is
+ * built in the background, and results cached per snapshot are dropped when
+ * it replaces the old one. Only the first get() waits for a build.
+ * The derived IS_SIMILAR and MAX_FLOW layers the plugin writes itself are not
+ * counted as changes: their slices are as of the last build, refresh() reads
+ * them again.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class GraphSnapshot {
+    /**
+     * The relationship types projected in their own slice.
+     * Any other type falls into the OTHER slice.
+     */
+    public enum Rels implements RelationshipType {
+        HAS_TERM, LIKES_TERM, KNOWS, MAX_FLOW, IS_SIMILAR
+    }
+    public static final int OTHER = Rels.values().length;
+    public static final int TYPES = OTHER + 1;
+    
+    private static final Map<GraphDatabaseService, GraphSnapshot.Shared> snapshots =
+        new WeakHashMap<GraphDatabaseService, GraphSnapshot.Shared>();
+    private static final Map<GraphDatabaseService, GraphSnapshot.Changes> changes =
+        new WeakHashMap<GraphDatabaseService, GraphSnapshot.Changes>();
+    
+    private final int    nodeCount;
+    private final int    relationshipCount;
+    private final long[] nodeIds;
+    private final int[]  nodeIndex;
+    private final long[] relationshipIds;
+    private final int[]  typeCounts;
+    private final int[]  offsets;
+    private final int[]  targets;
+    private final int[]  rels;
+    private final double[]  weights;
+    private final boolean[] outgoing;
+    private final long   builtAt;
+    /**
+     * The number of graph changing commits seen before the build started.
+     */
+    private long version = -1;
+    
+    /**
+     * Builds the CSR arrays from a plain relationship list.
+     * @param nodeIds:  the neo4j id of every node, by node index.
+     * @param nodeCount: the number of nodes used in nodeIds.
+     * @param relationshipIds: the neo4j id of every relationship.
+     * @param start:    the start node index of every relationship.
+     * @param end:      the end node index of every relationship.
+     * @param type:     the type slice of every relationship.
+     * @param weight:   the weight of every relationship (NaN if none).
+     * @param relationshipCount: the number of relationships used in the arrays.
+     */
+    GraphSnapshot(long[] nodeIds, int nodeCount, long[] relationshipIds,
+                  int[] start, int[] end, int[] type, double[] weight,
+                  int relationshipCount) {
+        this.nodeCount         = nodeCount;
+        this.relationshipCount = relationshipCount;
+        this.nodeIds           = Arrays.copyOf(nodeIds, nodeCount);
+        this.relationshipIds   = Arrays.copyOf(relationshipIds, relationshipCount);
+        this.builtAt           = System.currentTimeMillis();
+        long maxId = -1;
+        for (int v = 0; v < nodeCount; v++)
+            maxId = Math.max(maxId, nodeIds[v]);
+        this.nodeIndex = new int[(int)(maxId + 1)];
+        Arrays.fill(this.nodeIndex, -1);
+        for (int v = 0; v < nodeCount; v++)
+            this.nodeIndex[(int)nodeIds[v]] = v;
+        //Count the entries of every (node, type) slice...
+        this.typeCounts = new int[TYPES];
+        this.offsets    = new int[nodeCount * TYPES + 1];
+        for (int r = 0; r < relationshipCount; r++) {
+            this.typeCounts[type[r]]++;
+            this.offsets[start[r] * TYPES + type[r] + 1]++;
+            if (start[r] != end[r])
+                this.offsets[end[r] * TYPES + type[r] + 1]++;
+        }
+        for (int i = 0; i < nodeCount * TYPES; i++)
+            this.offsets[i + 1] += this.offsets[i];
+        //Fill the slices...
+        int entries   = this.offsets[nodeCount * TYPES];
+        this.targets  = new int[entries];
+        this.rels     = new int[entries];
+        this.weights  = new double[entries];
+        this.outgoing = new boolean[entries];
+        int[] cursor  = Arrays.copyOf(this.offsets, nodeCount * TYPES);
+        for (int r = 0; r < relationshipCount; r++) {
+            int e = cursor[start[r] * TYPES + type[r]]++;
+            this.targets[e]  = end[r];
+            this.rels[e]     = r;
+            this.weights[e]  = weight[r];
+            this.outgoing[e] = true;
+            if (start[r] != end[r]) {
+                e = cursor[end[r] * TYPES + type[r]]++;
+                this.targets[e]  = start[r];
+                this.rels[e]     = r;
+                this.weights[e]  = weight[r];
+                this.outgoing[e] = false;
+            }
+        }
+    }
+    /**
+     * Builds a detached snapshot from a plain relationship list, the relationship
+     * ids being their positions in the arrays (used to test the engines).
+     * @param nodeIds: the neo4j id of every node, by node index.
+     * @param start:   the start node index of every relationship.
+     * @param end:     the end node index of every relationship.
+     * @param type:    the type slice of every relationship (see slotOf).
+     * @param weight:  the weight of every relationship (NaN if none).
+     */
+    public static GraphSnapshot of(long[] nodeIds, int[] start, int[] end, int[] type, double[] weight) {
+        long[] relationshipIds = new long[start.length];
+        for (int r = 0; r < relationshipIds.length; r++)
+            relationshipIds[r] = r;
+        return new GraphSnapshot(nodeIds, nodeIds.length, relationshipIds,
+                                 start, end, type, weight, start.length);
+    }
+    /**
+     * Returns the shared snapshot of the database, building it on first use.
+     * If the graph changed since the current one was read, a new one is built
+     * in the background and the current one is returned meanwhile.
+     * @param database: The GraphDatabaseService to project.
+     */
+    public static GraphSnapshot get(final GraphDatabaseService database) {
+        FutureTask<GraphSnapshot> task;
+        synchronized (snapshots) {
+            long version = changesOf(database).count();
+            Shared shared = sharedOf(database);
+            GraphSnapshot snapshot = shared.current;
+            if (snapshot != null && (snapshot.version == version || shared.building != null))
+                return snapshot;
+            if (shared.building == null)
+                shared.building = rebuild(database, shared);
+            task = shared.building;
+            if (snapshot != null) {
+                Thread thread = new Thread(task, "hintplugin-snapshot");
+                thread.setDaemon(true);
+                thread.start();
+                return snapshot;
+            }
+        }
+        // First build: every caller runs or waits for the same task...
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    /**
+     * Rebuilds the shared snapshot of the database and waits for it,
+     * the derived layers included.
+     * Requests already running keep the snapshot they started with.
+     * @param database: The GraphDatabaseService to project.
+     */
+    public static GraphSnapshot refresh(GraphDatabaseService database) {
+        synchronized (snapshots) {
+            changesOf(database);
+        }
+        GraphSnapshot snapshot = build(database);
+        synchronized (snapshots) {
+            Shared shared = sharedOf(database);
+            if (shared.current == null || shared.current.version <= snapshot.version)
+                shared.current = snapshot;
+        }
+        return snapshot;
+    }
+    /**
+     * Drops the shared snapshot, the next get() will build a new one.
+     * @param database: The GraphDatabaseService of the snapshot.
+     */
+    public static void invalidate(GraphDatabaseService database) {
+        synchronized (snapshots) {
+            sharedOf(database).current = null;
+        }
+    }
+    /**
+     * A build that replaces the current snapshot when it is done.
+     * A failed build keeps the current one, the next get() tries again.
+     */
+    private static FutureTask<GraphSnapshot> rebuild(final GraphDatabaseService database,
+                                                     final Shared shared) {
+        return new FutureTask<GraphSnapshot>(new Callable<GraphSnapshot>() {
+            @Override
+            public GraphSnapshot call() {
+                GraphSnapshot snapshot = null;
+                try {
+                    snapshot = build(database);
+                    return snapshot;
+                } finally {
+                    synchronized (snapshots) {
+                        if (snapshot != null
+                            && (shared.current == null || shared.current.version <= snapshot.version))
+                            shared.current = snapshot;
+                        shared.building = null;
+                    }
+                }
+            }
+        });
+    }
+    /**
+     * The shared state of a database, callers hold the snapshots lock.
+     */
+    private static Shared sharedOf(GraphDatabaseService database) {
+        Shared shared = snapshots.get(database);
+        if (shared == null) {
+            shared = new Shared();
+            snapshots.put(database, shared);
+        }
+        return shared;
+    }
+    /**
+     * Reads all the nodes and relationships of the database in one transaction.
+     * A failed read is rethrown, so get() and refresh() keep what they had.
+     * @param database: The GraphDatabaseService to project.
+     */
+    private static GraphSnapshot build(GraphDatabaseService database) {
+        long[]   nodeIds  = new long[1024];
+        long[]   relIds   = new long[1024];
+        int[]    start    = new int[1024];
+        int[]    end      = new int[1024];
+        int[]    type     = new int[1024];
+        double[] weight   = new double[1024];
+        int      n = 0;
+        int      m = 0;
+        Changes  listener;
+        synchronized (snapshots) {
+            listener = changes.get(database);
+        }
+        // Read before the scan: a commit during it makes the result stale at once...
+        long version = (listener == null) ? -1 : listener.count();
+        Transaction tx = database.beginTx();
+        try {
+            GlobalGraphOperations operations = GlobalGraphOperations.at(database);
+            long maxId = -1;
+            for (Node node : operations.getAllNodes()) {
+                if (n == nodeIds.length)
+                    nodeIds = Arrays.copyOf(nodeIds, n * 2);
+                nodeIds[n++] = node.getId();
+                maxId = Math.max(maxId, node.getId());
+            }
+            int[] index = new int[(int)(maxId + 1)];
+            for (int v = 0; v < n; v++)
+                index[(int)nodeIds[v]] = v;
+            for (Relationship r : operations.getAllRelationships()) {
+                if (m == relIds.length) {
+                    relIds = Arrays.copyOf(relIds, m * 2);
+                    start  = Arrays.copyOf(start,  m * 2);
+                    end    = Arrays.copyOf(end,    m * 2);
+                    type   = Arrays.copyOf(type,   m * 2);
+                    weight = Arrays.copyOf(weight, m * 2);
+                }
+                int slot  = slotOf(r.getType());
+                relIds[m] = r.getId();
+                start[m]  = index[(int)r.getStartNode().getId()];
+                end[m]    = index[(int)r.getEndNode().getId()];
+                type[m]   = slot;
+                weight[m] = weightOf(r, weightKeyOf(slot));
+                m++;
+            }
+            tx.success();
+        } catch (RuntimeException e) {
+            // Never hand out (or cache) a partial graph...
+            System.err.println("hintplugin.utils.GraphSnapshot.build: " + e);
+            tx.failure();
+            throw e;
+        } finally {
+            tx.close();
+        }
+        GraphSnapshot snapshot = new GraphSnapshot(nodeIds, n, relIds, start, end, type, weight, m);
+        snapshot.version = version;
+        return snapshot;
+    }
+    /**
+     * The change counter of a database, registered on first use.
+     * Callers hold the snapshots lock.
+     */
+    private static Changes changesOf(GraphDatabaseService database) {
+        Changes listener = changes.get(database);
+        if (listener == null) {
+            listener = new Changes();
+            database.registerTransactionEventHandler(listener);
+            changes.put(database, listener);
+        }
+        return listener;
+    }
+    /**
+     * Returns the slice a relationship type is projected into.
+     */
+    public static int slotOf(RelationshipType relationshipType) {
+        for (Rels rel : Rels.values()) {
+            if (rel.name().equals(relationshipType.name()))
+                return rel.ordinal();
+        }
+        return OTHER;
+    }
+    /**
+     * Returns the property used as weight for a slice:
+     * "maxflow" for MAX_FLOW, "similarity" for IS_SIMILAR and "weight" otherwise.
+     */
+    static String weightKeyOf(int slot) {
+        if (slot == Rels.MAX_FLOW.ordinal())
+            return "maxflow";
+        if (slot == Rels.IS_SIMILAR.ordinal())
+            return "similarity";
+        return "weight";
+    }
+    /**
+     * Parses a numeric property that may be stored either as a number or a string.
+     * @return the value, or NaN if the property is missing or not a number.
+     */
+    public static double weightOf(PropertyContainer container, String key) {
+        Object value = container.getProperty(key, null);
+        if (value == null)
+            return Double.NaN;
+        if (value instanceof Number)
+            return ((Number)value).doubleValue();
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+    
+    /**
+     * Number of nodes in the snapshot.
+     */
+    public int size() {
+        return this.nodeCount;
+    }
+    /**
+     * Number of relationships in the snapshot.
+     */
+    public int relationshipCount() {
+        return this.relationshipCount;
+    }
+    /**
+     * Number of relationships of a given type in the snapshot.
+     */
+    public int relationshipCount(Rels type) {
+        return this.typeCounts[type.ordinal()];
+    }
+    /**
+     * Returns the dense index of a node, or -1 if it is not in the snapshot.
+     * @param nodeId: the neo4j id of the node.
+     */
+    public int indexOf(long nodeId) {
+        if (nodeId < 0 || nodeId >= this.nodeIndex.length)
+            return -1;
+        return this.nodeIndex[(int)nodeId];
+    }
+    /**
+     * Returns the neo4j id of a node index.
+     */
+    public long nodeId(int v) {
+        return this.nodeIds[v];
+    }
+    /**
+     * Returns the neo4j id of a relationship index.
+     */
+    public long relationshipId(int r) {
+        return this.relationshipIds[r];
+    }
+    /**
+     * First adjacency entry of a node (all types).
+     */
+    public int begin(int v) {
+        return this.offsets[v * TYPES];
+    }
+    /**
+     * One past the last adjacency entry of a node (all types).
+     */
+    public int end(int v) {
+        return this.offsets[(v + 1) * TYPES];
+    }
+    /**
+     * First adjacency entry of a node for one relationship type.
+     */
+    public int begin(int v, Rels type) {
+        return this.offsets[v * TYPES + type.ordinal()];
+    }
+    /**
+     * One past the last adjacency entry of a node for one relationship type.
+     */
+    public int end(int v, Rels type) {
+        return this.offsets[v * TYPES + type.ordinal() + 1];
+    }
+    /**
+     * First adjacency entry of a node for one slice (a Rels ordinal or OTHER).
+     */
+    public int begin(int v, int slot) {
+        return this.offsets[v * TYPES + slot];
+    }
+    /**
+     * One past the last adjacency entry of a node for one slice (a Rels ordinal or OTHER).
+     */
+    public int end(int v, int slot) {
+        return this.offsets[v * TYPES + slot + 1];
+    }
+    /**
+     * Number of relationships of a node (all types).
+     */
+    public int degree(int v) {
+        return end(v) - begin(v);
+    }
+    /**
+     * Number of relationships of a node for one relationship type.
+     */
+    public int degree(int v, Rels type) {
+        return end(v, type) - begin(v, type);
+    }
+    /**
+     * The node index at the other side of an adjacency entry.
+     */
+    public int target(int e) {
+        return this.targets[e];
+    }
+    /**
+     * The relationship index of an adjacency entry.
+     */
+    public int relationship(int e) {
+        return this.rels[e];
+    }
+    /**
+     * The weight of an adjacency entry, NaN if the relationship has none.
+     */
+    public double weight(int e) {
+        return this.weights[e];
+    }
+    /**
+     * True if the relationship of the entry starts at the node owning the entry.
+     */
+    public boolean isOutgoing(int e) {
+        return this.outgoing[e];
+    }
+    /**
+     * Time (millis) at which this snapshot was built.
+     */
+    public long builtAt() {
+        return this.builtAt;
+    }
+    
+    /**
+     * The snapshot served for a database and the build that will replace it.
+     */
+    private static final class Shared {
+        private GraphSnapshot             current;
+        private FutureTask<GraphSnapshot> building;
+    }
+    /**
+     * Counts the commits that change the content graph a snapshot projects,
+     * the derived IS_SIMILAR and MAX_FLOW layers left out.
+     */
+    private static final class Changes extends TransactionEventHandler.Adapter<Boolean> {
+        private final AtomicLong commits = new AtomicLong();
+        
+        long count() {
+            return this.commits.get();
+        }
+        @Override
+        public Boolean beforeCommit(TransactionData data) throws Exception {
+            if (data.createdNodes().iterator().hasNext() || data.deletedNodes().iterator().hasNext())
+                return Boolean.TRUE;
+            for (Relationship r : data.createdRelationships()) {
+                if (!isDerived(r))
+                    return Boolean.TRUE;
+            }
+            for (Relationship r : data.deletedRelationships()) {
+                if (!isDerived(r))
+                    return Boolean.TRUE;
+            }
+            for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties()) {
+                if ("weight".equals(entry.key()) && !isDerived(entry.entity()))
+                    return Boolean.TRUE;
+            }
+            for (PropertyEntry<Relationship> entry : data.removedRelationshipProperties()) {
+                if ("weight".equals(entry.key()) && !isDerived(entry.entity()))
+                    return Boolean.TRUE;
+            }
+            return null;
+        }
+        @Override
+        public void afterCommit(TransactionData data, Boolean changed) {
+            if (changed != null)
+                this.commits.incrementAndGet();
+        }
+        /*
+         * A relationship that can no longer be read counts as a change.
+         */
+        private static boolean isDerived(Relationship r) {
+            try {
+                return r.isType(Rels.IS_SIMILAR) || r.isType(Rels.MAX_FLOW);
+            } catch (NotFoundException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Jobs Class
+ * Long running batch jobs that run in the server, so clients do not have
+ * to drive them with one HTTP request per pair (see CurlQueries).
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+@Path("/jobs")
+public class Jobs {
+    private static final Map<String, MaxFlowJob> jobs = new ConcurrentHashMap<String, MaxFlowJob>();
+    private static final AtomicLong nextId = new AtomicLong();
+    /**
+     * The jobs in the order they started, the oldest finished ones beyond KEPT are forgotten.
+     */
+    private static final List<String> started = new ArrayList<String>();
+    private static final int KEPT = 16;
+    
+    private final GraphDatabaseService database;
+    /*
+     * The Public constructor.
+     */
+    public Jobs(@Context GraphDatabaseService database) {
+        this.database = database;
+    }
+    /*
+     * Starts the all-pairs maximum flow job.
+     * @param algorithm: the maximum flow engine ("dinic", "pushrelabel", "edmondskarp").
+     * @param workers:   the number of threads computing flows.
+     * @param batchSize: the number of MAX_FLOW relationships per transaction.
+     * @param skipZero:  true to not save pairs without flow.
+     * @param throughput: true to run every pair and add the "flow" through every node,
+     *                    instead of reading the pairs off the n-1 flows of a Gomory-Hu tree.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/maxflow-all")
+    public Response maxflowAll(@QueryParam("algorithm") @DefaultValue("dinic") String algorithm,
+                                            @QueryParam("workers") @DefaultValue("0") int workers,
+                                            @QueryParam("batchSize") @DefaultValue("1000") int batchSize,
+                                            @QueryParam("skipZero") @DefaultValue("false") boolean skipZero,
+                                            @QueryParam("throughput") @DefaultValue("false") boolean throughput) {
+        Gson gson = new GsonBuilder().create();
+        if (workers <= 0)
+            workers = Runtime.getRuntime().availableProcessors();
+        synchronized (jobs) {
+            for (MaxFlowJob job : jobs.values()) {
+                if (job.getState() == MaxFlowJob.State.QUEUED || job.getState() == MaxFlowJob.State.RUNNING) {
+                    JsonObject obj = this.describe(job);
+                    obj.addProperty("error", "A maxflow-all job is already running");
+                    return Response.status(Response.Status.CONFLICT)
+                    .entity(gson.toJson(obj)).type(MediaType.APPLICATION_JSON).build();
+                }
+            }
+            String id = "maxflow-all-" + nextId.incrementAndGet();
+            MaxFlowJob job = new MaxFlowJob(id, this.database, algorithm, workers, batchSize,
+                                            skipZero, throughput);
+            jobs.put(id, job);
+            started.add(id);
+            forgetFinished();
+            Thread thread = new Thread(job, "hintplugin-" + id);
+            thread.setDaemon(true);
+            thread.start();
+            return Response.status(Response.Status.ACCEPTED)
+            .entity(gson.toJson(this.describe(job))).type(MediaType.APPLICATION_JSON).build();
+        }
+    }
+    /*
+     * Starts keeping IS_SIMILAR current as HAS_TERM/LIKES_TERM relationships change,
+     * 409 if it already runs with another threshold or batchSize.
+     * @param threshold: the minimum similarity of an IS_SIMILAR relationship.
+     * @param batchSize: the number of nodes recomputed per transaction.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/similarity-updater")
+    public Response startSimilarityUpdater(@QueryParam("threshold") @DefaultValue("0.5") double threshold,
+                                           @QueryParam("batchSize") @DefaultValue("100") int batchSize) {
+        Gson gson = new GsonBuilder().create();
+        SimilarityUpdater updater;
+        try {
+            updater = SimilarityUpdater.start(this.database, threshold, batchSize);
+        } catch (IllegalStateException ex) {
+            SimilarityUpdater running = SimilarityUpdater.get(this.database);
+            JsonObject obj = running == null ? new JsonObject() : this.describe(running);
+            obj.addProperty("error", ex.getMessage());
+            return Response.status(Response.Status.CONFLICT)
+            .entity(gson.toJson(obj)).type(MediaType.APPLICATION_JSON).build();
+        }
+        return Response.status(Response.Status.ACCEPTED)
+        .entity(gson.toJson(this.describe(updater))).type(MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Returns the progress of the similarity updater.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/similarity-updater")
+    public Response similarityUpdater() {
+        Gson gson = new GsonBuilder().create();
+        SimilarityUpdater updater = SimilarityUpdater.get(this.database);
+        if (updater == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        return Response.ok(gson.toJson(this.describe(updater)), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Stops the similarity updater, the nodes still queued are dropped.
+     */
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/similarity-updater")
+    public Response stopSimilarityUpdater() {
+        Gson gson = new GsonBuilder().create();
+        SimilarityUpdater updater = SimilarityUpdater.stop(this.database);
+        if (updater == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        return Response.ok(gson.toJson(this.describe(updater)), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Lists every job and its progress.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response list() {
+        Gson      gson = new GsonBuilder().create();
+        JsonArray list = new JsonArray();
+        for (MaxFlowJob job : jobs.values())
+            list.add(this.describe(job));
+        return Response.ok(gson.toJson(list), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Returns the progress of a job.
+     * @param id: the job id.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{id}")
+    public Response status(@PathParam("id") String id) {
+        Gson gson = new GsonBuilder().create();
+        MaxFlowJob job = jobs.get(id);
+        if (job == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        return Response.ok(gson.toJson(this.describe(job)), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Cancels a job, what was already committed stays in the database.
+     * @param id: the job id.
+     */
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{id}")
+    public Response cancel(@PathParam("id") String id) {
+        Gson gson = new GsonBuilder().create();
+        MaxFlowJob job = jobs.get(id);
+        if (job == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        job.cancel();
+        return Response.ok(gson.toJson(this.describe(job)), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Drops the oldest finished jobs until at most KEPT are left, must hold the jobs lock.
+     */
+    private static void forgetFinished() {
+        int finished = 0;
+        for (String id : started) {
+            if (jobs.get(id).isFinished())
+                finished++;
+        }
+        for (Iterator<String> it = started.iterator(); it.hasNext() && finished > KEPT; ) {
+            String id = it.next();
+            if (jobs.get(id).isFinished()) {
+                it.remove();
+                jobs.remove(id);
+                finished--;
+            }
+        }
+    }
+    private JsonObject describe(MaxFlowJob job) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("id",                   job.getId());
+        obj.addProperty("state",                job.getState().name());
+        obj.addProperty("throughput",           job.isThroughput());
+        obj.addProperty("pairsTotal",           job.getPairsTotal());
+        obj.addProperty("pairsDone",            job.getPairsDone());
+        obj.addProperty("relationshipsWritten", job.getRelationshipsWritten());
+        obj.addProperty("computedSeconds",      job.getComputedSeconds());
+        if (job.getError() != null)
+            obj.addProperty("error",            job.getError());
+        return obj;
+    }
+    private JsonObject describe(SimilarityUpdater updater) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("id",                   "similarity-updater");
+        obj.addProperty("threshold",            updater.getThreshold());
+        obj.addProperty("batchSize",            updater.getBatchSize());
+        obj.addProperty("queued",               updater.getQueued());
+        obj.addProperty("nodesUpdated",         updater.getNodesUpdated());
+        obj.addProperty("relationshipsWritten", updater.getRelationshipsWritten());
+        obj.addProperty("relationshipsDeleted", updater.getRelationshipsDeleted());
+        obj.addProperty("nodesDropped",         updater.getNodesDropped());
+        if (updater.getError() != null)
+            obj.addProperty("error",            updater.getError());
+        return obj;
+    }
+}
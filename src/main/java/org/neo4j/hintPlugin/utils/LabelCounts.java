@@ -0,0 +1,245 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.tooling.GlobalGraphOperations;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Label Counts Class
+ * The number of nodes carrying every label, for normalization constants.
+ * The members of each label are kept in a bit set indexed by node id, built
+ * from the label scan store on first use (getAllNodesWithLabel, no full node
+ * scan), and kept current by a transaction event handler, so count() is O(1).
+ * countAny() ORs the bit sets the first time a set of labels is asked for, and
+ * from then on keeps that count current as well.
+ * The transaction events of this Neo4j version do not report label changes,
+ * so the handler re-reads the labels of every node a transaction creates,
+ * deletes or touches (properties or relationships). A label added to or
+ * removed from a node with no other change goes unnoticed until refresh(),
+ * which POST /flowcentrality?refresh=true calls.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class LabelCounts {
+    public static final String POI  = "Poi";
+    public static final String TERM = "Term";
+    private static final String[] NONE = new String[0];
+    
+    private static final Map<GraphDatabaseService, LabelCounts> counts =
+        new WeakHashMap<GraphDatabaseService, LabelCounts>();
+    
+    private final GraphDatabaseService database;
+    private final Map<String, BitSet> members = new HashMap<String, BitSet>();
+    private final Map<String, int[]>  sizes   = new HashMap<String, int[]>();
+    private final Map<Set<String>, int[]> unions = new HashMap<Set<String>, int[]>();
+    
+    private LabelCounts(GraphDatabaseService database) {
+        this.database = database;
+    }
+    /**
+     * Returns the label counts of a database, building them on first use.
+     * @param database: the graph database.
+     */
+    public static LabelCounts get(GraphDatabaseService database) {
+        synchronized (counts) {
+            LabelCounts labels = counts.get(database);
+            if (labels == null) {
+                labels = new LabelCounts(database);
+                // Listen before the scan, so no commit is lost in between...
+                database.registerTransactionEventHandler(labels.new Updater());
+                labels.refresh();
+                counts.put(database, labels);
+            }
+            return labels;
+        }
+    }
+    /**
+     * Number of nodes with a label.
+     */
+    public synchronized int count(String label) {
+        int[] size = this.sizes.get(label);
+        return (size == null) ? 0 : size[0];
+    }
+    /**
+     * Number of nodes with at least one of the labels.
+     */
+    public synchronized int countAny(String... labels) {
+        if (labels.length == 1)
+            return this.count(labels[0]);
+        Set<String> key  = new HashSet<String>(Arrays.asList(labels));
+        int[]       size = this.unions.get(key);
+        if (size == null) {
+            BitSet any = new BitSet();
+            for (String label : labels) {
+                BitSet nodes = this.members.get(label);
+                if (nodes != null)
+                    any.or(nodes);
+            }
+            size = new int[] {any.cardinality()};
+            this.unions.put(key, size);
+        }
+        return size[0];
+    }
+    /**
+     * Every label with its number of nodes.
+     */
+    public synchronized Map<String, Integer> counts() {
+        Map<String, Integer> all = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<String, int[]> entry : this.sizes.entrySet())
+            all.put(entry.getKey(), entry.getValue()[0]);
+        return all;
+    }
+    /**
+     * Rebuilds every label from the label scan store.
+     */
+    public synchronized void refresh() {
+        this.members.clear();
+        this.sizes.clear();
+        this.unions.clear();
+        Transaction tx = this.database.beginTx();
+        try {
+            GlobalGraphOperations operations = GlobalGraphOperations.at(this.database);
+            for (Label label : operations.getAllLabels()) {
+                for (Node node : operations.getAllNodesWithLabel(label))
+                    this.add(label.name(), node.getId());
+            }
+            tx.success();
+        } finally {
+            tx.close();
+        }
+    }
+    private void add(String label, long node) {
+        BitSet nodes = this.members.get(label);
+        if (nodes == null) {
+            nodes = new BitSet();
+            this.members.put(label, nodes);
+            this.sizes.put(label, new int[1]);
+        }
+        if (!nodes.get((int)node)) {
+            nodes.set((int)node);
+            this.sizes.get(label)[0]++;
+        }
+    }
+    /*
+     * Makes a node a member of exactly the given labels (none if it was deleted).
+     */
+    private void set(long node, String[] labels) {
+        for (Map.Entry<Set<String>, int[]> union : this.unions.entrySet()) {
+            boolean before = false, after = false;
+            for (String label : union.getKey()) {
+                BitSet nodes = this.members.get(label);
+                before |= nodes != null && nodes.get((int)node);
+                after  |= contains(labels, label);
+            }
+            if (before != after)
+                union.getValue()[0] += after ? 1 : -1;
+        }
+        for (Map.Entry<String, BitSet> entry : this.members.entrySet()) {
+            if (entry.getValue().get((int)node) && !contains(labels, entry.getKey())) {
+                entry.getValue().clear((int)node);
+                this.sizes.get(entry.getKey())[0]--;
+            }
+        }
+        for (String label : labels)
+            this.add(label, node);
+    }
+    private static boolean contains(String[] labels, String label) {
+        for (String l : labels) {
+            if (l.equals(label))
+                return true;
+        }
+        return false;
+    }
+    /**
+     * The labels of a node once a transaction commits.
+     */
+    private static final class Change {
+        private final long     node;
+        private final String[] labels;
+        
+        Change(long node, String[] labels) {
+            this.node   = node;
+            this.labels = labels;
+        }
+    }
+    /*
+     * Reads the labels of the nodes of every transaction before it commits,
+     * and applies them once it has committed.
+     */
+    private final class Updater extends TransactionEventHandler.Adapter<Change[]> {
+        @Override
+        public Change[] beforeCommit(TransactionData data) throws Exception {
+            Map<Long, Change> changes = new HashMap<Long, Change>();
+            for (Node node : data.deletedNodes())
+                changes.put(node.getId(), new Change(node.getId(), NONE));
+            for (Node node : data.createdNodes())
+                this.read(data, node, changes);
+            for (PropertyEntry<Node> entry : data.assignedNodeProperties())
+                this.read(data, entry.entity(), changes);
+            for (PropertyEntry<Node> entry : data.removedNodeProperties())
+                this.read(data, entry.entity(), changes);
+            for (Relationship r : data.createdRelationships()) {
+                this.read(data, r.getStartNode(), changes);
+                this.read(data, r.getEndNode(),   changes);
+            }
+            return changes.isEmpty() ? null : changes.values().toArray(new Change[changes.size()]);
+        }
+        private void read(TransactionData data, Node node, Map<Long, Change> changes) {
+            if (changes.containsKey(node.getId()) || data.isDeleted(node))
+                return;
+            List<String> labels = new ArrayList<String>();
+            for (Label label : node.getLabels())
+                labels.add(label.name());
+            changes.put(node.getId(), new Change(node.getId(), labels.toArray(new String[labels.size()])));
+        }
+        @Override
+        public void afterCommit(TransactionData data, Change[] changes) {
+            if (changes == null)
+                return;
+            synchronized (LabelCounts.this) {
+                for (Change change : changes)
+                    LabelCounts.this.set(change.node, change.labels);
+            }
+        }
+    }
+}
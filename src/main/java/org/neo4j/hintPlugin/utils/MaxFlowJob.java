@@ -0,0 +1,320 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Max Flow Job Class
+ * Saves the maximum flow of every pair of nodes of the snapshot the same way
+ * MaximumFlow does (a MAX_FLOW relationship per pair), committing batchSize
+ * writes per transaction. The values come from the Gomory-Hu tree of the
+ * snapshot, n-1 maximum flows, and workers read whole rows (a source and every
+ * later sink) off the tree.
+ * The "flow" through every node is not in the tree: with throughput=true every
+ * pair is run instead, n(n-1)/2 maximum flows, and it is added to the nodes at
+ * the end. Workers then keep their ResidualGraph for all the pairs they compute.
+ * Only the job thread writes. A cancel that arrives once every pair is written
+ * has no effect.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class MaxFlowJob implements Runnable {
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+    private enum Rels implements RelationshipType {
+        HAS_TERM, MAX_FLOW
+    }
+    /**
+     * One computed pair on its way to the writer.
+     */
+    private static final class Result {
+        final int source;
+        final int sink;
+        final double flow;
+        Result(int source, int sink, double flow) {
+            this.source = source;
+            this.sink   = sink;
+            this.flow   = flow;
+        }
+    }
+    private static final Result END = new Result(-1, -1, 0.0);
+    
+    private final String id;
+    private final GraphDatabaseService database;
+    private final String algorithm;
+    private final int workers;
+    private final int batchSize;
+    private final boolean skipZero;
+    private final boolean throughput;
+    private final AtomicLong pairsDone = new AtomicLong();
+    private final AtomicLong written   = new AtomicLong();
+    private volatile State  state = State.QUEUED;
+    private volatile String error;
+    private volatile long   pairsTotal;
+    private volatile long   startedAt;
+    private volatile long   finishedAt;
+    private volatile boolean cancelled;
+    
+    /**
+     * @param id:        the job id.
+     * @param database:  the database to read and write.
+     * @param algorithm: the maximum flow engine ("dinic", "pushrelabel", "edmondskarp").
+     * @param workers:   the number of threads computing flows.
+     * @param batchSize: the number of pairs committed per transaction.
+     * @param skipZero:  true to not create MAX_FLOW relationships for pairs without flow.
+     * @param throughput: true to run every pair and add the "flow" through every node.
+     */
+    public MaxFlowJob(String id, GraphDatabaseService database, String algorithm,
+                      int workers, int batchSize, boolean skipZero, boolean throughput) {
+        this.id         = id;
+        this.database   = database;
+        this.algorithm  = algorithm;
+        this.workers    = Math.max(1, workers);
+        this.batchSize  = Math.max(1, batchSize);
+        this.skipZero   = skipZero;
+        this.throughput = throughput;
+    }
+    
+    @Override
+    public void run() {
+        this.startedAt = System.currentTimeMillis();
+        this.state     = State.RUNNING;
+        ExecutorService pool = Executors.newFixedThreadPool(this.workers);
+        try {
+            final GraphSnapshot graph = GraphSnapshot.get(this.database);
+            final int n = graph.size();
+            this.pairsTotal = (long)n * (n - 1) / 2;
+            final GomoryHuTree tree = this.throughput ? null : GomoryHuTree.of(graph, this.algorithm);
+            final BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(4 * this.batchSize);
+            final AtomicInteger nextRow  = new AtomicInteger();
+            final AtomicInteger finished = new AtomicInteger();
+            final List<double[]> throughputs = new ArrayList<double[]>();
+            for (int w = 0; w < this.workers; w++) {
+                final double[] throughput = new double[n];
+                throughputs.add(throughput);
+                pool.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            if (tree == null)
+                                computeRows(graph, nextRow, results, throughput);
+                            else
+                                treeRows(tree, nextRow, results);
+                        } catch (Exception e) {
+                            error = e.toString();
+                            cancelled = true;
+                        } finally {
+                            if (finished.incrementAndGet() == workers)
+                                putQuietly(results, END);
+                        }
+                    }
+                });
+            }
+            boolean complete = this.writeResults(graph, results);
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            // Cancelled only if some pair was left out, not once all are written...
+            if (this.error != null || !complete || this.pairsDone.get() < this.pairsTotal) {
+                this.state = (this.error != null) ? State.FAILED : State.CANCELLED;
+                return;
+            }
+            if (tree == null)
+                this.writeThroughputs(graph, throughputs);
+            this.state = State.DONE;
+        } catch (Exception e) {
+            System.err.println("hintplugin.utils.MaxFlowJob.run: " + e);
+            this.error = e.toString();
+            this.state = State.FAILED;
+        } finally {
+            pool.shutdownNow();
+            this.finishedAt = System.currentTimeMillis();
+        }
+    }
+    /**
+     * Worker loop: takes rows until none is left or the job is cancelled.
+     */
+    private void computeRows(GraphSnapshot graph, AtomicInteger nextRow,
+                             BlockingQueue<Result> results, double[] throughput)
+        throws InterruptedException {
+        ResidualGraph residual = new ResidualGraph(graph, GraphSnapshot.Rels.HAS_TERM);
+        int s;
+        while (!this.cancelled && (s = nextRow.getAndIncrement()) < graph.size()) {
+            for (int t = s + 1; t < graph.size() && !this.cancelled; t++) {
+                residual.reset();
+                double flow = MaximumFlow.maxFlow(residual, s, t, this.algorithm);
+                for (int v = 0; v < graph.size(); v++) {
+                    if (v != s && v != t)
+                        throughput[v] += Math.round(residual.throughput(v)*100.0)/100.0;
+                }
+                results.put(new Result(s, t, flow));
+                this.pairsDone.incrementAndGet();
+            }
+        }
+    }
+    /**
+     * Worker loop over the Gomory-Hu tree: the flow of a pair is the least
+     * capacity on its tree path, so one walk of the tree gives a whole row.
+     */
+    private void treeRows(GomoryHuTree tree, AtomicInteger nextRow, BlockingQueue<Result> results)
+        throws InterruptedException {
+        int      n     = tree.graph().size();
+        double[] flows = new double[n];
+        int s;
+        while (!this.cancelled && (s = nextRow.getAndIncrement()) < n) {
+            tree.row(s, flows);
+            for (int t = s + 1; t < n && !this.cancelled; t++) {
+                results.put(new Result(s, t, Double.isNaN(flows[t]) ? 0.0 : flows[t]));
+                this.pairsDone.incrementAndGet();
+            }
+        }
+    }
+    /**
+     * Writer loop: one MAX_FLOW relationship per pair, batchSize per transaction.
+     * Returns whether every pair it was given was committed.
+     */
+    private boolean writeResults(GraphSnapshot graph, BlockingQueue<Result> results)
+        throws InterruptedException {
+        List<Result> batch = new ArrayList<Result>(this.batchSize);
+        boolean complete = true;
+        while (true) {
+            Result result = results.take();
+            if (result != END && !(this.skipZero && result.flow <= ResidualGraph.EPSILON))
+                batch.add(result);
+            if (result == END || batch.size() >= this.batchSize) {
+                if (!this.cancelled)
+                    this.commit(graph, batch);
+                else if (!batch.isEmpty())
+                    complete = false;
+                batch.clear();
+            }
+            if (result == END)
+                return complete;
+        }
+    }
+    private void commit(GraphSnapshot graph, List<Result> batch) {
+        if (batch.isEmpty())
+            return;
+        Transaction tx = this.database.beginTx();
+        try {
+            for (Result result : batch) {
+                Node source = this.database.getNodeById(graph.nodeId(result.source));
+                Node sink   = this.database.getNodeById(graph.nodeId(result.sink));
+                source.createRelationshipTo(sink, Rels.MAX_FLOW).setProperty("maxflow", result.flow);
+            }
+            tx.success();
+        } finally {
+            tx.close();
+        }
+        this.written.addAndGet(batch.size());
+    }
+    /**
+     * Adds the flow that went through every node to its "flow" property.
+     */
+    private void writeThroughputs(GraphSnapshot graph, List<double[]> throughputs) {
+        int v = 0;
+        while (v < graph.size()) {
+            Transaction tx = this.database.beginTx();
+            try {
+                for (int i = 0; i < this.batchSize && v < graph.size(); i++, v++) {
+                    double through = 0.0;
+                    for (double[] throughput : throughputs)
+                        through += throughput[v];
+                    if (through <= 0.0)
+                        continue;
+                    Node   n    = this.database.getNodeById(graph.nodeId(v));
+                    double flow = GraphSnapshot.weightOf(n, "flow");
+                    n.setProperty("flow", Double.isNaN(flow) ? through : flow + through);
+                }
+                tx.success();
+            } finally {
+                tx.close();
+            }
+        }
+    }
+    private static void putQuietly(BlockingQueue<Result> results, Result result) {
+        try {
+            results.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Asks the workers to stop, pairs already committed are kept.
+     * Once every pair is written the job still ends DONE.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+    public String getId() {
+        return this.id;
+    }
+    public State getState() {
+        return this.state;
+    }
+    /**
+     * Whether the job ended, one way or another.
+     */
+    public boolean isFinished() {
+        State state = this.state;
+        return state == State.DONE || state == State.FAILED || state == State.CANCELLED;
+    }
+    public boolean isThroughput() {
+        return this.throughput;
+    }
+    public String getError() {
+        return this.error;
+    }
+    public long getPairsTotal() {
+        return this.pairsTotal;
+    }
+    public long getPairsDone() {
+        return this.pairsDone.get();
+    }
+    public long getRelationshipsWritten() {
+        return this.written.get();
+    }
+    /**
+     * Seconds since the job started (until it finished, if it did).
+     */
+    public double getComputedSeconds() {
+        if (this.startedAt == 0)
+            return 0.0;
+        long end = (this.finishedAt > 0) ? this.finishedAt : System.currentTimeMillis();
+        return (end - this.startedAt)/1000.0;
+    }
+}
@@ -23,40 +23,34 @@
  */
 package org.neo4j.hintplugin.utils;
 
-import java.nio.charset.Charset;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.Status;
-import static org.neo4j.kernel.Traversal.expanderForAllTypes;
-import org.neo4j.graphalgo.PathFinder;
-import org.neo4j.graphdb.Expander;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.RelationshipType;
-import org.neo4j.graphdb.traversal.Evaluation;
-import org.neo4j.graphdb.traversal.Evaluators;
-import org.neo4j.graphdb.traversal.TraversalDescription;
-import org.neo4j.graphdb.traversal.Uniqueness;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphdb.Direction;
-import org.neo4j.helpers.collection.IteratorUtil;
-import org.neo4j.tooling.GlobalGraphOperations;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.UUID;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import java.lang.Math;
+import java.util.Arrays;
 
 /**
  * Maximum Flow Class
  * Returns the Maximum flow value within a graph given a source and sink nodes.
+ * The flow is computed over the HAS_TERM relationships of the GraphSnapshot,
+ * with the residual capacities held in memory (ResidualGraph), so the store
+ * is only written once the flow is known.
+ * The engine is chosen per request: Dinic (default), highest-label
+ * push-relabel or Edmonds-Karp augmenting paths.
+ * All-pairs queries are answered from a Gomory-Hu tree under /tree.
  * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
  * @proyect Reaumobile (Universidad de las Américas Puebla Team)  http://ict.udlap.mx/
  * @version 0.1
@@ -67,9 +61,8 @@ import java.lang.Math;
 public class MaximumFlow {
     private final GraphDatabaseService database;
     private double targetNodeFlow;
-    private Node nSource;
-    private Node nSink;
-    private UUID uuid;
+    private JSONArray minCut;
+    private double minCutCapacity;
     
     /** 
      *  The relationship types that are allowed for this class...
@@ -89,143 +82,233 @@ public class MaximumFlow {
      * Maximum Flow: RESTful Service...
      * @param source: the id of the source node.
      * @param   sink: the id of the sink node.
+     * @param algorithm: "dinic", "pushrelabel" or "edmondskarp".
+     * @param minCut: true to return the relationships of a minimum cut.
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path( "/{source}/{sink}" )
     public Response maximumflow(@PathParam("source") long source,
-                                @PathParam("sink")   long sink) {
+                                @PathParam("sink")   long sink,
+                                @QueryParam("algorithm") @DefaultValue("dinic") String algorithm,
+                                @QueryParam("mincut") @DefaultValue("false") boolean minCut) {
         JSONObject obj = new org.json.JSONObject();
         obj.put("source-id",source);
         obj.put("sink-id",  sink);
-        obj.put("maxflow",  this.getMaxFlow(source,sink));
+        obj.put("algorithm",algorithm);
+        try {
+            obj.put("maxflow",  this.getMaxFlow(source,sink,algorithm,minCut));
+        } catch (IllegalArgumentException ex) {
+            obj.put("error", ex.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST)
+            .entity(obj.toString()).type(MediaType.APPLICATION_JSON).build();
+        }
+        if (minCut && this.minCut != null) {
+            obj.put("mincut",         this.minCut);
+            obj.put("mincutCapacity", this.minCutCapacity);
+        }
         return Response.ok(obj.toString(), MediaType.APPLICATION_JSON)
         .header("X-Stream", "true") //Enables large and huge operations in server to avoid crashing.
         .build();
     }
     /**
-     * Iterates over all the found paths and ASSINGS them an unique temp property
-     * to calculate the maxflow.
-     * @param uuid the UUID to get the unique property from.
+     * Gomory-Hu Tree: RESTful Service...
+     * Builds the all-pairs maximum flow tree of the current snapshot (n-1 runs),
+     * once per snapshot: a cached tree is returned whatever the algorithm.
+     * @param algorithm: the maximum flow engine used if it has to be built.
      */
-    private void assingTempProperty(UUID uuid){
-        TraversalDescription tempTraversal  = this.database.traversalDescription()
-        .depthFirst()
-        .uniqueness(Uniqueness.RELATIONSHIP_GLOBAL);
-        String uuidString = "flw-"+uuid.toString();
-        Transaction tx = database.beginTx();
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path( "/tree" )
+    public Response gomoryHuTree(@QueryParam("algorithm") @DefaultValue("dinic") String algorithm) {
+        JSONObject obj = new org.json.JSONObject();
         try {
-            for(Relationship r : tempTraversal.traverse(this.nSource)
-                .relationships()){
-                if (r.hasProperty("weight"))
-                    r.setProperty(uuidString,Double.parseDouble((String)r.getProperty("weight")) * 1.0);
-            }
-            tx.success();
-        } catch (Exception e) {
-            System.err.println("MaximumFlow.assingTempProperty: " + e);
-            tx.failure();
-        } finally {
-            tx.close();
+            long startTime = System.currentTimeMillis();
+            GraphSnapshot graph  = GraphSnapshot.get(this.database);
+            boolean       cached = GomoryHuTree.cached(graph) != null;
+            GomoryHuTree  tree   = GomoryHuTree.of(graph, algorithm);
+            obj.put("nodes",           tree.graph().size());
+            obj.put("cached",          cached);
+            obj.put("computedSeconds", (System.currentTimeMillis() - startTime)/1000.0);
+        } catch (IllegalArgumentException ex) {
+            obj.put("error", ex.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST)
+            .entity(obj.toString()).type(MediaType.APPLICATION_JSON).build();
         }
+        return Response.ok(obj.toString(), MediaType.APPLICATION_JSON).build();
     }
     /**
-     * Iterates over all the found paths and REMOVES the unique temp property
-     * used to calculate the maxflow.
-     * @param uuid the UUID to get the unique property from.
+     * Maximum Flow from the Gomory-Hu tree: RESTful Service...
+     * Nothing is written to the database. The tree is built on the first
+     * request of a snapshot and cached, later ones only walk it.
+     * @param source: the id of the source node.
+     * @param   sink: the id of the sink node.
+     * @param algorithm: the maximum flow engine used if the tree has to be built.
      */
-    private void removeTempProperty(final UUID uuid){
-        TraversalDescription tempTraversal  = this.database.traversalDescription()
-        .depthFirst()
-        .uniqueness(Uniqueness.RELATIONSHIP_GLOBAL);
-        String uuidString = "flw-"+uuid.toString();
-        Transaction tx = database.beginTx();
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path( "/tree/{source}/{sink}" )
+    public Response treeMaximumflow(@PathParam("source") long source,
+                                    @PathParam("sink")   long sink,
+                                    @QueryParam("algorithm") @DefaultValue("dinic") String algorithm) {
+        JSONObject obj = new org.json.JSONObject();
+        obj.put("source-id",source);
+        obj.put("sink-id",  sink);
+        obj.put("algorithm",algorithm);
         try {
-            for(Relationship r : tempTraversal.traverse(this.nSource)
-                .relationships()){
-                if (r.hasProperty("weight"))
-                    r.removeProperty(uuidString);
+            GomoryHuTree tree = GomoryHuTree.of(GraphSnapshot.get(this.database), algorithm);
+            int s = tree.graph().indexOf(source);
+            int t = tree.graph().indexOf(sink);
+            double flow = (s < 0 || t < 0 || s == t) ? 0.0 : tree.maxFlow(s, t);
+            obj.put("maxflow", Math.round(flow*100.0)/100.0);
+        } catch (IllegalArgumentException ex) {
+            obj.put("error", ex.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST)
+            .entity(obj.toString()).type(MediaType.APPLICATION_JSON).build();
+        } catch (Exception ex) {
+            System.err.println("hintplugin.utils.MaximumFlow.treeMaximumflow: " + ex);
+        }
+        return Response.ok(obj.toString(), MediaType.APPLICATION_JSON).build();
+    }
+    /**
+     * Finds shortest augmenting paths (BFS over the entries that still have
+     * residual capacity) and pushes their bottleneck until none is left.
+     * @param residual  the residual graph, updated in place.
+     * @param source    the source node index
+     * @param sink      the sink node index
+     * @return double   as the maximum flow value.
+     */
+    static double augment(ResidualGraph residual, int source, int sink) {
+        GraphSnapshot graph = residual.graph();
+        GraphSnapshot.Rels type = residual.type();
+        int[] parentEntry = new int[graph.size()];
+        int[] parentNode  = new int[graph.size()];
+        int[] queue       = new int[graph.size()];
+        double accumulator = 0.0;
+        while (true) {
+            Arrays.fill(parentEntry, -1);
+            int head = 0, tail = 0;
+            queue[tail++] = source;
+            while (head < tail && parentEntry[sink] < 0) {
+                int v = queue[head++];
+                for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+                    int w = graph.target(e);
+                    if (w != source && parentEntry[w] < 0 && residual.residual(e) > ResidualGraph.EPSILON) {
+                        parentEntry[w] = e;
+                        parentNode[w]  = v;
+                        queue[tail++]  = w;
+                    }
+                }
             }
-            tx.success();
-        } catch (Exception e) {
-            System.err.println("MaximumFlow.removeTempProperty: " + e);
-            tx.failure();
-        } finally {
-            tx.close();
+            if (parentEntry[sink] < 0)
+                return accumulator;
+            //Getting the min value from the path...
+            double flow = Double.MAX_VALUE;
+            for (int w = sink; w != source; w = parentNode[w])
+                flow = Math.min(flow, residual.residual(parentEntry[w]));
+            //Setting up the residual values for the next round...
+            for (int w = sink; w != source; w = parentNode[w])
+                residual.push(parentEntry[w], flow);
+            accumulator = accumulator + flow;
         }
     }
     /**
-     * Calculates the MaximumFlow given a source and a sink.
-     * ** Please note that in order to avoid infinite Augmenting Path search
-     *    we have defined a max depth through the path.
-     *    This means, the more depth, the more accurate, but more the expensive ***
+     * Runs the chosen maximum flow engine on a residual graph.
+     * @param algorithm "dinic", "pushrelabel" or "edmondskarp".
+     */
+    public static double maxFlow(ResidualGraph residual, int source, int sink, String algorithm) {
+        if ("pushrelabel".equalsIgnoreCase(checkAlgorithm(algorithm)))
+            return PushRelabel.maxFlow(residual, source, sink);
+        if ("edmondskarp".equalsIgnoreCase(algorithm))
+            return augment(residual, source, sink);
+        return Dinic.maxFlow(residual, source, sink);
+    }
+    /**
+     * Returns the algorithm if it is a known engine, IllegalArgumentException otherwise.
+     */
+    static String checkAlgorithm(String algorithm) {
+        if ("pushrelabel".equalsIgnoreCase(algorithm) || "edmondskarp".equalsIgnoreCase(algorithm)
+            || "dinic".equalsIgnoreCase(algorithm))
+            return algorithm;
+        throw new IllegalArgumentException("Unknown maximum flow algorithm: " + algorithm);
+    }
+    /**
+     * Calculates the MaximumFlow given a source and a sink with Dinic.
      * @param source    the source node id
      * @param sink      the sink node id
      * @return double   as the maximum flow value.
      */
     public double getMaxFlow(long source, long sink){
-        double flow = 0.0;
+        return this.getMaxFlow(source, sink, "dinic", false);
+    }
+    /**
+     * Calculates the MaximumFlow given a source and a sink.
+     * Saves the maximum flow in the MAX_FLOW relationship between source and
+     * sink, updating the one already there (the latest, older duplicates are
+     * deleted). The flow through every node is added to its "flow" property
+     * only the first time a pair is saved, so asking again does not count it twice.
+     * @param source    the source node id
+     * @param sink      the sink node id
+     * @param algorithm "dinic", "pushrelabel" or "edmondskarp".
+     * @param minCut    true to keep the relationships of a minimum cut.
+     * @return double   as the maximum flow value.
+     */
+    public double getMaxFlow(long source, long sink, String algorithm, boolean minCut){
         double accumulator = 0.0;
-        double min = Double.MAX_VALUE;
-        this.uuid  = UUID.randomUUID(); // Process uniqueness...
-        String flowUUID = "flw-" + this.uuid.toString();
+        GraphSnapshot graph = GraphSnapshot.get(this.database);
+        int s = graph.indexOf(source);
+        int t = graph.indexOf(sink);
+        if (s < 0 || t < 0 || s == t)
+            return accumulator;
+        ResidualGraph residual = new ResidualGraph(graph, GraphSnapshot.Rels.HAS_TERM);
+        accumulator = maxFlow(residual, s, t, algorithm);
+        if (minCut) {
+            boolean[] sourceSide = residual.sourceSide(s);
+            this.minCut = new JSONArray();
+            this.minCutCapacity = 0.0;
+            for (int v = 0; v < graph.size(); v++) {
+                if (!sourceSide[v])
+                    continue;
+                for (int e = graph.begin(v, GraphSnapshot.Rels.HAS_TERM); e < graph.end(v, GraphSnapshot.Rels.HAS_TERM); e++) {
+                    if (!sourceSide[graph.target(e)]) {
+                        this.minCut.put(graph.relationshipId(graph.relationship(e)));
+                        this.minCutCapacity += residual.capacity(e);
+                    }
+                }
+            }
+        }
         Transaction tx = database.beginTx();
         try {
-            this.nSink   = database.getNodeById(sink);
-            this.nSource = database.getNodeById(source);
-            //Assing an unique temp property to relationships...
-            this.assingTempProperty(this.uuid);
-            //Search for the maximum flow between a source and sink...
-            for(org.neo4j.graphdb.Path p : this.database.traversalDescription()
-                .depthFirst()
-                .evaluator(Evaluators.endNodeIs(Evaluation.INCLUDE_AND_CONTINUE,
-                                                Evaluation.EXCLUDE_AND_CONTINUE,
-                                                this.nSink))
-                .relationships(Rels.HAS_TERM)
-                /** The next line is what makes the proccess expensive,
-                 *  because it searches for "Unique Augmenting Paths".
-                 *  :::Theory:::
-                 *  If you have a sparsely connected graph, and apply
-                 *  relationship-uniqueness, you have to explore very very long
-                 *  paths to really find all the unique relationships in your
-                 *  graph, so you have to meander back and forth until you find
-                 *  the last globally unique relationship.
-                 *  Thanks @Michael Hunger (Neo4j Team).
-                 *
-                 *  The solution is to write a custom Uniqueness overriding
-                 *  the method.
-                 *  For a future version and more info,
-                 *  please check: http://goo.gl/f8EP4U
-                 */
-                .uniqueness(Uniqueness.NODE_PATH)
-                .evaluator(Evaluators.toDepth(5))
-                .traverse(this.nSource)) {
-                //Getting the min value from each path...
-                for (Relationship r : p.relationships()) {
-                    if (r.hasProperty(flowUUID) && (Double)r.getProperty(flowUUID) < min)
-                        flow = (Double)r.getProperty(flowUUID) * 1.0;
+            Node sourceNode = database.getNodeById(source);
+            Node sinkNode   = database.getNodeById(sink);
+            // The latest MAX_FLOW of the pair, in either direction...
+            Relationship saved = null;
+            for (Relationship r : sourceNode.getRelationships(Rels.MAX_FLOW)) {
+                if (r.getOtherNode(sourceNode).getId() != sink)
+                    continue;
+                if (saved == null || r.getId() > saved.getId()) {
+                    if (saved != null)
+                        saved.delete();
+                    saved = r;
+                } else {
+                    r.delete();
                 }
-                accumulator = accumulator + flow;
-                // Setting up the flow values for the next round...
-                for (Relationship r: p.relationships()){
-                    if (r.hasProperty(flowUUID))
-                        r.setProperty(flowUUID,(Double)r.getProperty(flowUUID)-flow);
-                }
-                // Save the flow in the node...
-                for(Node n : p.nodes()){
-                    if((n!= p.startNode()) && (n!=p.endNode())){
-                        if(n.hasProperty("flow")) {
-                            n.setProperty("flow",(Double)n.getProperty("flow")+ Math.round(Math.abs(flow)*100.0)/100.0);
-                        } else {
-                            n.setProperty("flow", Math.round(Math.abs(flow)*100.0)/100.0);
-                        }
-                    }
+            }
+            if (saved == null) {
+                // Save the flow in the nodes, once per pair...
+                for (int v = 0; v < graph.size(); v++) {
+                    double through = residual.throughput(v);
+                    if (v == s || v == t || through <= 0.0)
+                        continue;
+                    Node   n    = database.getNodeById(graph.nodeId(v));
+                    double flow = GraphSnapshot.weightOf(n, "flow");
+                    through = Math.round(through*100.0)/100.0;
+                    n.setProperty("flow", Double.isNaN(flow) ? through : flow + through);
                 }
+                saved = sourceNode.createRelationshipTo(sinkNode, Rels.MAX_FLOW);
             }
-            //Remove the temp property...
-            this.removeTempProperty(this.uuid);
             //Save the maxflow between these nodes.
-            nSource.createRelationshipTo(nSink,Rels.MAX_FLOW)
-            .setProperty("maxflow", accumulator);
+            saved.setProperty("maxflow", accumulator);
             tx.success();
         } catch (Exception e) {
             System.err.println("hintplugin.utils.MaximumFlow.getMaxFlow: " + e);
@@ -241,4 +324,4 @@ public class MaximumFlow {
     public double getTargetNodeFlow(){
         return this.targetNodeFlow;
     }
-}
\ No newline at end of file
+}
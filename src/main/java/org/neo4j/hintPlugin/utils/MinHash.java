@@ -0,0 +1,284 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+/**
+ * MinHash Class
+ * Approximate Jaccard similarity of term sets from MinHash signatures,
+ * with banded LSH to find the similar pairs without comparing all of them.
+ * With weighted=true every endpoint uses the ICWS sketches of the term
+ * weights, which estimate the weighted Jaccard index Σ min / Σ max of the
+ * weight vectors. That is not the measure of WSimilarity, which divides the
+ * common weights Σ (a + b) by the total ΣA + ΣB, so the two are not comparable.
+ * @see MinHashIndex
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+@Path("/minhash")
+public class MinHash {
+    
+    static final String SOURCE = "source";
+    
+    private final GraphDatabaseService database;
+    /*
+     * The Public constructor.
+     */
+    public MinHash(@Context GraphDatabaseService database) {
+        this.database = database;
+    }
+    /*
+     * Returns the size of the index (builds it if needed).
+     * @param weighted: true for the weighted index.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response index(@QueryParam("weighted") @DefaultValue("false") boolean weighted) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            obj.addProperty("nodes",    MinHashIndex.get(this.database, weighted).size());
+            obj.addProperty("weighted", weighted);
+            obj.addProperty("hashes", MinHashIndex.HASHES);
+            obj.addProperty("bands",  MinHashIndex.BANDS);
+            obj.addProperty("rows",   MinHashIndex.ROWS);
+        } catch (Exception ex) {
+            System.err.println("utils.MinHash Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * The estimated Jaccard index between the term sets of two nodes.
+     * @param node_a:
+     * @param node_b:
+     * @param weighted: true for the weighted Jaccard index Σ min / Σ max.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{node_a}/{node_b}")
+    public Response similarity(@PathParam("node_a") long node_a, @PathParam("node_b") long node_b,
+                               @QueryParam("weighted") @DefaultValue("false") boolean weighted) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            obj.addProperty("similarity", MinHashIndex.get(this.database, weighted).estimate(node_a, node_b));
+            obj.addProperty("node-start", node_a);
+            obj.addProperty("node-end",   node_b);
+            obj.addProperty("weighted",   weighted);
+        } catch (Exception ex) {
+            System.err.println("utils.MinHash Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * The LSH candidates of one node above the threshold, nothing is written.
+     * @param node:      the node to compare against.
+     * @param threshold: the minimum estimated Jaccard index.
+     * @param weighted:  true for the weighted Jaccard index.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{node}/similar")
+    public Response similar(@PathParam("node") long node,
+                            @QueryParam("threshold") @DefaultValue("0.5") double threshold,
+                            @QueryParam("weighted") @DefaultValue("false") boolean weighted) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            MinHashIndex.Pairs pairs   = MinHashIndex.get(this.database, weighted).similar(node, threshold);
+            JsonArray          similar = new JsonArray();
+            for (int i = 0; i < pairs.size(); i++) {
+                JsonObject entry = new JsonObject();
+                entry.addProperty("node",       pairs.second(i));
+                entry.addProperty("similarity", pairs.similarity(i));
+                similar.add(entry);
+            }
+            obj.addProperty("node",       node);
+            obj.addProperty("threshold",  threshold);
+            obj.addProperty("candidates", pairs.candidates());
+            obj.add("similar",            similar);
+        } catch (Exception ex) {
+            System.err.println("utils.MinHash Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Creates (or updates) an IS_SIMILAR relationship for every LSH pair
+     * above the threshold, batchSize pairs per transaction, and deletes the
+     * ones an earlier call wrote that are no longer above it. Unweighted pairs get
+     * a "similarity" on the scale of Similarity, weighted pairs a "weightedJaccard"
+     * (Σ min / Σ max, with no exact endpoint to compare it with); the threshold is
+     * on the scale of the value written. The relationships are tagged with a
+     * "source" of "minhash" or "minhash-weighted", and only those are ever updated
+     * or deleted here.
+     * @param threshold: the minimum value written.
+     * @param batchSize: the number of pairs written per transaction.
+     * @param weighted:  true for the weighted Jaccard index.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/similar")
+    public Response saveSimilar(@QueryParam("threshold") @DefaultValue("0.25") double threshold,
+                                @QueryParam("batchSize") @DefaultValue("1000") int batchSize,
+                                @QueryParam("weighted") @DefaultValue("false") boolean weighted) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            long startTime = System.currentTimeMillis();
+            // Similarity is J / (1 + J), so s >= t is J >= t / (1 - t): only J = 1 for t = 0.5...
+            double jaccard = weighted ? threshold
+                                      : threshold < 1.0 ? threshold / (1.0 - threshold) : Double.POSITIVE_INFINITY;
+            MinHashIndex.Pairs pairs   = MinHashIndex.get(this.database, weighted).similar(jaccard);
+            Set<Long>          written = new HashSet<Long>();
+            boolean            saved   = this.save(pairs, Math.max(1, batchSize), weighted, written);
+            obj.addProperty("threshold",       threshold);
+            obj.addProperty("jaccard",         jaccard);
+            obj.addProperty("weighted",        weighted);
+            obj.addProperty("candidates",      pairs.candidates());
+            obj.addProperty("pairs",           written.size());
+            // A failed batch leaves pairs unwritten, keep the old ones then...
+            obj.addProperty("removed",         saved ? this.removeStale(written, Math.max(1, batchSize), weighted) : 0);
+            obj.addProperty("computedSeconds", (System.currentTimeMillis() - startTime)/1000.0);
+        } catch (Exception ex) {
+            System.err.println("utils.MinHash Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * The "source" of the IS_SIMILAR relationships this class writes.
+     */
+    static String sourceOf(boolean weighted) {
+        return weighted ? "minhash-weighted" : "minhash";
+    }
+    /*
+     * Writes the pairs as IS_SIMILAR relationships from the lower to the higher node id.
+     * The unweighted estimate is stored on the scale of Similarity,
+     * |A ∩ B| / (|A| + |B|) = J / (1 + J), as "similarity"; the weighted one has no
+     * counterpart and is stored as is, as "weightedJaccard".
+     * Returns whether every batch committed, the ids written are added to written.
+     */
+    private boolean save(MinHashIndex.Pairs pairs, int batchSize, boolean weighted, Set<Long> written) {
+        String  source = sourceOf(weighted);
+        boolean saved  = true;
+        for (int start = 0; start < pairs.size(); start += batchSize) {
+            Transaction tx = this.database.beginTx();
+            try {
+                List<Long> batch = new ArrayList<Long>();
+                for (int i = start; i < Math.min(pairs.size(), start + batchSize); i++) {
+                    Node a = this.database.getNodeById(Math.min(pairs.first(i), pairs.second(i)));
+                    Node b = this.database.getNodeById(Math.max(pairs.first(i), pairs.second(i)));
+                    Relationship similar = null;
+                    for (Relationship r : a.getRelationships(Direction.OUTGOING, GraphSnapshot.Rels.IS_SIMILAR)) {
+                        if (r.getEndNode().getId() == b.getId() && source.equals(r.getProperty(SOURCE, null))) {
+                            similar = r;
+                            break;
+                        }
+                    }
+                    if (similar == null) {
+                        similar = a.createRelationshipTo(b, GraphSnapshot.Rels.IS_SIMILAR);
+                        similar.setProperty(SOURCE, source);
+                    }
+                    double jaccard = pairs.similarity(i);
+                    if (weighted)
+                        similar.setProperty("weightedJaccard", jaccard);
+                    else
+                        similar.setProperty("similarity", jaccard / (1.0 + jaccard));
+                    batch.add(similar.getId());
+                }
+                tx.success();
+                written.addAll(batch);
+            } catch (Exception ex) {
+                tx.failure();
+                saved = false;
+                System.err.println("utils.MinHash Class: " + ex);
+            } finally {
+                tx.close();
+            }
+        }
+        return saved;
+    }
+    /*
+     * Deletes the IS_SIMILAR relationships of this source that were not written
+     * by the last save, batchSize per transaction. Returns how many were deleted.
+     */
+    private int removeStale(Set<Long> written, int batchSize, boolean weighted) {
+        String     source = sourceOf(weighted);
+        List<Long> stale  = new ArrayList<Long>();
+        Transaction tx = this.database.beginTx();
+        try {
+            for (Relationship r : GlobalGraphOperations.at(this.database).getAllRelationships()) {
+                if (r.isType(GraphSnapshot.Rels.IS_SIMILAR) && source.equals(r.getProperty(SOURCE, null))
+                    && !written.contains(r.getId()))
+                    stale.add(r.getId());
+            }
+            tx.success();
+        } finally {
+            tx.close();
+        }
+        int removed = 0;
+        for (int start = 0; start < stale.size(); start += batchSize) {
+            tx = this.database.beginTx();
+            try {
+                for (long id : stale.subList(start, Math.min(stale.size(), start + batchSize)))
+                    this.database.getRelationshipById(id).delete();
+                tx.success();
+                removed += Math.min(stale.size(), start + batchSize) - start;
+            } catch (Exception ex) {
+                tx.failure();
+                System.err.println("utils.MinHash Class: " + ex);
+            } finally {
+                tx.close();
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,539 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.tooling.GlobalGraphOperations;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * MinHash Index Class
+ * MinHash signatures of the term set of every node, held in memory per database.
+ * The term set of a node is the end node of its outgoing HAS_TERM and LIKES_TERM
+ * relationships (Poi -> Term, Person -> Term); nodes without terms are not indexed.
+ * The fraction of equal minimums of two signatures estimates the Jaccard index
+ * |A ∩ B| / |A ∪ B| of the two term sets.
+ *
+ * Signatures are split in BANDS bands of ROWS rows (banded LSH): two nodes are
+ * candidates when a band is equal, which happens with probability 1-(1-J^ROWS)^BANDS,
+ * about 0.64 for J = 0.5. The buckets of every band are kept with the signatures,
+ * so the candidates of one node are looked up rather than scanned for.
+ *
+ * The weighted index sketches the "weight" of the term relationships instead with
+ * Improved Consistent Weighted Sampling (Ioffe, 2010): a node keeps, per hash, the
+ * term and quantized weight with the least sample, and the fraction of equal
+ * samples estimates the weighted Jaccard index Σ min(a,b) / Σ max(a,b). This is
+ * not the measure of WSimilarity, Σ_common (a + b) / (ΣA + ΣB), and the two do not
+ * convert into each other. Unweighted or non-positive relationships are left out,
+ * as in WSimilarity, and several relationships to the same term add up.
+ *
+ * The indexes are built on first use and kept current by a transaction event handler:
+ * a new term lowers the signature in place, any other change recomputes the node.
+ * @see MinHash
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class MinHashIndex {
+    public static final int HASHES = 64;
+    public static final int BANDS  = 16;
+    public static final int ROWS   = HASHES / BANDS;
+    
+    private static final long[] multipliers = new long[HASHES];
+    private static final long[] increments  = new long[HASHES];
+    static {
+        Random random = new Random(0x5eedL);
+        for (int i = 0; i < HASHES; i++) {
+            multipliers[i] = random.nextLong() | 1L;
+            increments[i]  = random.nextLong();
+        }
+    }
+    private static final Map<GraphDatabaseService, MinHashIndex> indexes =
+        new WeakHashMap<GraphDatabaseService, MinHashIndex>();
+    private static final Map<GraphDatabaseService, MinHashIndex> weightedIndexes =
+        new WeakHashMap<GraphDatabaseService, MinHashIndex>();
+    
+    private final GraphDatabaseService database;
+    private final boolean weighted;
+    private final Map<Long, Integer>   positions = new HashMap<Long, Integer>();
+    private final List<Map<Long, Set<Long>>> buckets = new ArrayList<Map<Long, Set<Long>>>(BANDS);
+    private long[] ids        = new long[16];
+    private int[]  signatures = new int[16 * HASHES];
+    private long[] bandKeys   = new long[16 * BANDS];
+    private int    size;
+    
+    private MinHashIndex(GraphDatabaseService database, boolean weighted) {
+        this.database = database;
+        this.weighted = weighted;
+        for (int band = 0; band < BANDS; band++)
+            this.buckets.add(new HashMap<Long, Set<Long>>());
+    }
+    /**
+     * Returns the index of a database, building it on first use.
+     * @param database: the graph database.
+     */
+    public static MinHashIndex get(GraphDatabaseService database) {
+        return get(database, false);
+    }
+    /**
+     * Returns the weighted or unweighted index of a database, building it on first use.
+     * @param database: the graph database.
+     * @param weighted: true for the ICWS sketches of the term weights.
+     */
+    public static MinHashIndex get(GraphDatabaseService database, boolean weighted) {
+        Map<GraphDatabaseService, MinHashIndex> indexes = weighted ? weightedIndexes : MinHashIndex.indexes;
+        synchronized (indexes) {
+            MinHashIndex index = indexes.get(database);
+            if (index == null) {
+                index = new MinHashIndex(database, weighted);
+                // Listen before the scan, so no commit is lost in between...
+                database.registerTransactionEventHandler(index.new Updater());
+                index.build();
+                indexes.put(database, index);
+            }
+            return index;
+        }
+    }
+    /**
+     * Number of indexed nodes.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+    /**
+     * Whether the signatures sketch the term weights.
+     */
+    public boolean isWeighted() {
+        return this.weighted;
+    }
+    /**
+     * Whether a node has a signature.
+     */
+    public synchronized boolean contains(long node) {
+        return this.positions.containsKey(node);
+    }
+    /**
+     * Estimated Jaccard index of the term sets of two nodes, or Σ min / Σ max of
+     * their term weights when weighted.
+     */
+    public synchronized double estimate(long node_a, long node_b) {
+        return agreement(this.signatures, this.position(node_a), this.signatures, this.position(node_b));
+    }
+    /**
+     * The LSH candidates of a node whose estimated Jaccard index is at least threshold.
+     * @param node:      the node to compare against.
+     * @param threshold: the minimum estimated Jaccard index.
+     */
+    public synchronized Pairs similar(long node, double threshold) {
+        int       a     = this.position(node);
+        Pairs     pairs = new Pairs();
+        Set<Long> seen  = new HashSet<Long>();
+        for (int band = 0; band < BANDS; band++) {
+            for (long other : this.buckets.get(band).get(this.bandKeys[a * BANDS + band])) {
+                if (other == node || !seen.add(other))
+                    continue;
+                pairs.candidates++;
+                double similarity = agreement(this.signatures, a, this.signatures, this.positions.get(other));
+                if (similarity >= threshold)
+                    pairs.add(node, other, similarity);
+            }
+        }
+        return pairs;
+    }
+    /**
+     * All the LSH candidate pairs whose estimated Jaccard index is at least threshold,
+     * every pair of nodes sharing a bucket.
+     * @param threshold: the minimum estimated Jaccard index.
+     */
+    public synchronized Pairs similar(double threshold) {
+        Pairs     pairs = new Pairs();
+        Set<Long> seen  = new HashSet<Long>();
+        for (int band = 0; band < BANDS; band++) {
+            for (Set<Long> bucket : this.buckets.get(band).values()) {
+                if (bucket.size() < 2)
+                    continue;
+                int[] members = new int[bucket.size()];
+                int   m       = 0;
+                for (long node : bucket)
+                    members[m++] = this.positions.get(node);
+                for (int i = 0; i < members.length; i++) {
+                    for (int j = i + 1; j < members.length; j++) {
+                        int a = Math.min(members[i], members[j]), b = Math.max(members[i], members[j]);
+                        if (!seen.add(((long)a << 32) | b))
+                            continue;
+                        pairs.candidates++;
+                        double similarity = agreement(this.signatures, a, this.signatures, b);
+                        if (similarity >= threshold)
+                            pairs.add(this.ids[a], this.ids[b], similarity);
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+    /**
+     * MinHash signature of a term set.
+     * @param terms: the neo4j ids of the terms.
+     */
+    public static int[] signature(long[] terms) {
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (long term : terms)
+            add(signature, 0, term);
+        return signature;
+    }
+    /**
+     * ICWS signature of a weighted term set.
+     * @param terms:   the neo4j ids of the terms, without repetitions.
+     * @param weights: the positive weight of every term.
+     */
+    public static int[] weightedSignature(long[] terms, double[] weights) {
+        int[]    signature = new int[HASHES];
+        double[] least     = new double[HASHES];
+        Arrays.fill(least, Double.POSITIVE_INFINITY);
+        for (int j = 0; j < terms.length; j++) {
+            double logWeight = Math.log(weights[j]);
+            for (int i = 0; i < HASHES; i++) {
+                // Gamma(2,1), Gamma(2,1) and Uniform(0,1) draws fixed by (hash, term)...
+                long   state = mix(terms[j] * HASHES + i + increments[i]);
+                double r     = -Math.log(uniform(state) * uniform(state = mix(state)));
+                double c     = -Math.log(uniform(state = mix(state)) * uniform(state = mix(state)));
+                double beta  = uniform(mix(state));
+                double t     = Math.floor(logWeight / r + beta);
+                double a     = c / Math.exp(r * (t - beta) + r);
+                if (a < least[i]) {
+                    least[i]     = a;
+                    signature[i] = (int)(mix(mix(terms[j]) + (long)t) >>> 33);
+                }
+            }
+        }
+        return signature;
+    }
+    /**
+     * Fraction of equal minimums of two signatures.
+     */
+    static double agreement(int[] a, int offsetA, int[] b, int offsetB) {
+        int equal = 0;
+        offsetA *= HASHES;
+        offsetB *= HASHES;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[offsetA + i] == b[offsetB + i])
+                equal++;
+        }
+        return (double)equal / HASHES;
+    }
+    /*
+     * Lowers a signature with one more term.
+     */
+    private static void add(int[] signatures, int offset, long term) {
+        long hash = mix(term);
+        for (int i = 0; i < HASHES; i++) {
+            int value = (int)((hash * multipliers[i] + increments[i]) >>> 33);
+            if (value < signatures[offset + i])
+                signatures[offset + i] = value;
+        }
+    }
+    /*
+     * A double in (0,1) from the upper 53 bits of a hash.
+     */
+    private static double uniform(long hash) {
+        return ((hash >>> 11) + 0.5) / (1L << 53);
+    }
+    /*
+     * Hash of the ROWS minimums of a band.
+     */
+    private static long bandKey(int[] signatures, int position, int band) {
+        long hash = band;
+        int  base = position * HASHES + band * ROWS;
+        for (int i = 0; i < ROWS; i++)
+            hash = mix(hash * 31 + signatures[base + i]);
+        return hash;
+    }
+    /*
+     * 64 bit finalizer of SplitMix64.
+     */
+    static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+    /*
+     * Position of a node in the signature arrays.
+     */
+    private int position(long node) {
+        Integer position = this.positions.get(node);
+        if (position == null)
+            throw new IllegalArgumentException("Node " + node + " has no terms in the MinHash index");
+        return position;
+    }
+    /*
+     * Computes the signature of every node with terms.
+     */
+    private synchronized void build() {
+        Transaction tx = this.database.beginTx();
+        try {
+            for (Node node : GlobalGraphOperations.at(this.database).getAllNodes())
+                this.recompute(node);
+            tx.success();
+        } finally {
+            tx.close();
+        }
+    }
+    /*
+     * Replaces the signature of a node from its current terms, must run in a transaction.
+     */
+    private void recompute(Node node) {
+        Map<Long, Double> terms = new HashMap<Long, Double>();
+        for (Relationship r : node.getRelationships(Direction.OUTGOING,
+                                                    GraphSnapshot.Rels.HAS_TERM,
+                                                    GraphSnapshot.Rels.LIKES_TERM)) {
+            double weight = this.weighted ? GraphSnapshot.weightOf(r, "weight") : 1.0;
+            if (!(weight > 0))
+                continue;
+            Double sum = terms.get(r.getEndNode().getId());
+            terms.put(r.getEndNode().getId(), sum == null ? weight : sum + weight);
+        }
+        if (terms.isEmpty()) {
+            this.remove(node.getId());
+            return;
+        }
+        long[]   ids     = new long[terms.size()];
+        double[] weights = new double[terms.size()];
+        int      i       = 0;
+        for (Map.Entry<Long, Double> term : terms.entrySet()) {
+            ids[i]     = term.getKey();
+            weights[i] = term.getValue();
+            i++;
+        }
+        this.put(node.getId(), this.weighted ? weightedSignature(ids, weights) : signature(ids));
+    }
+    private void put(long node, int[] signature) {
+        Integer position = this.positions.get(node);
+        if (position == null) {
+            if (this.size == this.ids.length) {
+                this.ids        = Arrays.copyOf(this.ids, this.size * 2);
+                this.signatures = Arrays.copyOf(this.signatures, this.size * 2 * HASHES);
+                this.bandKeys   = Arrays.copyOf(this.bandKeys, this.size * 2 * BANDS);
+            }
+            position = this.size++;
+            this.positions.put(node, position);
+            this.ids[position] = node;
+        } else {
+            this.unbucket(position);
+        }
+        System.arraycopy(signature, 0, this.signatures, position * HASHES, HASHES);
+        this.bucket(position);
+    }
+    private void remove(long node) {
+        Integer position = this.positions.get(node);
+        if (position == null)
+            return;
+        this.unbucket(position);
+        this.positions.remove(node);
+        // Move the last node into the hole...
+        int last = --this.size;
+        if (position != last) {
+            this.ids[position] = this.ids[last];
+            System.arraycopy(this.signatures, last * HASHES, this.signatures, position * HASHES, HASHES);
+            System.arraycopy(this.bandKeys, last * BANDS, this.bandKeys, position * BANDS, BANDS);
+            this.positions.put(this.ids[position], position);
+        }
+    }
+    /*
+     * Puts a node in the bucket of each of its bands.
+     */
+    private void bucket(int position) {
+        for (int band = 0; band < BANDS; band++) {
+            long      key     = bandKey(this.signatures, position, band);
+            Set<Long> members = this.buckets.get(band).get(key);
+            if (members == null) {
+                members = new HashSet<Long>();
+                this.buckets.get(band).put(key, members);
+            }
+            members.add(this.ids[position]);
+            this.bandKeys[position * BANDS + band] = key;
+        }
+    }
+    /*
+     * Takes a node out of its buckets, before its signature changes.
+     */
+    private void unbucket(int position) {
+        for (int band = 0; band < BANDS; band++) {
+            long      key     = this.bandKeys[position * BANDS + band];
+            Set<Long> members = this.buckets.get(band).get(key);
+            members.remove(this.ids[position]);
+            if (members.isEmpty())
+                this.buckets.get(band).remove(key);
+        }
+    }
+    /*
+     * Applies the term changes of a committed transaction.
+     */
+    private synchronized void apply(Changes changes) {
+        for (long node : changes.deleted)
+            this.remove(node);
+        for (Map.Entry<Long, Set<Long>> added : changes.added.entrySet()) {
+            Integer position = this.positions.get(added.getKey());
+            if (this.weighted || position == null || changes.stale.contains(added.getKey())) {
+                changes.stale.add(added.getKey());
+                continue;
+            }
+            this.unbucket(position);
+            for (long term : added.getValue())
+                add(this.signatures, position * HASHES, term);
+            this.bucket(position);
+        }
+        changes.stale.removeAll(changes.deleted);
+        if (changes.stale.isEmpty())
+            return;
+        Transaction tx = this.database.beginTx();
+        try {
+            for (long node : changes.stale)
+                this.recompute(this.database.getNodeById(node));
+            tx.success();
+        } catch (Exception ex) {
+            System.err.println("utils.MinHashIndex Class: " + ex);
+        } finally {
+            tx.close();
+        }
+    }
+    /**
+     * Pairs of nodes with their estimated Jaccard index.
+     */
+    public static final class Pairs {
+        private long[]   first      = new long[16];
+        private long[]   second     = new long[16];
+        private double[] similarity = new double[16];
+        private int      size;
+        private long     candidates;
+        
+        private void add(long a, long b, double value) {
+            if (this.size == this.first.length) {
+                this.first      = Arrays.copyOf(this.first, this.size * 2);
+                this.second     = Arrays.copyOf(this.second, this.size * 2);
+                this.similarity = Arrays.copyOf(this.similarity, this.size * 2);
+            }
+            this.first[this.size]      = a;
+            this.second[this.size]     = b;
+            this.similarity[this.size] = value;
+            this.size++;
+        }
+        public int size() {
+            return this.size;
+        }
+        /**
+         * Number of pairs that shared a bucket, before the threshold.
+         */
+        public long candidates() {
+            return this.candidates;
+        }
+        public long first(int i) {
+            return this.first[i];
+        }
+        public long second(int i) {
+            return this.second[i];
+        }
+        public double similarity(int i) {
+            return this.similarity[i];
+        }
+    }
+    /*
+     * The term changes of one transaction, collected before it commits.
+     */
+    private static final class Changes {
+        private final Map<Long, Set<Long>> added   = new HashMap<Long, Set<Long>>();
+        private final Set<Long>            stale   = new HashSet<Long>();
+        private final Set<Long>            deleted = new HashSet<Long>();
+    }
+    /*
+     * Collects the HAS_TERM and LIKES_TERM changes of every transaction.
+     */
+    private final class Updater extends TransactionEventHandler.Adapter<Changes> {
+        @Override
+        public Changes beforeCommit(TransactionData data) throws Exception {
+            Changes changes = null;
+            for (Relationship r : data.createdRelationships()) {
+                if (!isTerm(r))
+                    continue;
+                if (changes == null)
+                    changes = new Changes();
+                long node = r.getStartNode().getId();
+                Set<Long> terms = changes.added.get(node);
+                if (terms == null) {
+                    terms = new HashSet<Long>();
+                    changes.added.put(node, terms);
+                }
+                terms.add(r.getEndNode().getId());
+            }
+            for (Relationship r : data.deletedRelationships()) {
+                if (!isTerm(r))
+                    continue;
+                if (changes == null)
+                    changes = new Changes();
+                changes.stale.add(r.getStartNode().getId());
+            }
+            for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties())
+                changes = this.weightChanged(entry, changes);
+            for (PropertyEntry<Relationship> entry : data.removedRelationshipProperties())
+                changes = this.weightChanged(entry, changes);
+            for (Node node : data.deletedNodes()) {
+                if (changes == null)
+                    changes = new Changes();
+                changes.deleted.add(node.getId());
+            }
+            return changes;
+        }
+        @Override
+        public void afterCommit(TransactionData data, Changes changes) {
+            if (changes != null)
+                MinHashIndex.this.apply(changes);
+        }
+        private Changes weightChanged(PropertyEntry<Relationship> entry, Changes changes) {
+            if (!MinHashIndex.this.weighted || !"weight".equals(entry.key()) || !isTerm(entry.entity()))
+                return changes;
+            if (changes == null)
+                changes = new Changes();
+            changes.stale.add(entry.entity().getStartNode().getId());
+            return changes;
+        }
+        private boolean isTerm(Relationship r) {
+            return r.isType(GraphSnapshot.Rels.HAS_TERM) || r.isType(GraphSnapshot.Rels.LIKES_TERM);
+        }
+    }
+}
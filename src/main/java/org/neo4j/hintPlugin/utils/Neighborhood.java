@@ -0,0 +1,165 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import java.util.Arrays;
+
+/**
+ * Neighborhood Class
+ * The neighbors of a node as a sorted array of snapshot node indices, with the
+ * "weight" of the relationship to each of them, so that two neighborhoods are
+ * intersected with a linear merge instead of a nested loop.
+ * Only the content relationships (HAS_TERM, LIKES_TERM, KNOWS and any other
+ * type) are neighbors: the derived IS_SIMILAR and MAX_FLOW layers are not.
+ * A neighbor appears once per relationship to it.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class Neighborhood {
+    static final int[] SLOTS = {
+        GraphSnapshot.Rels.HAS_TERM.ordinal(),
+        GraphSnapshot.Rels.LIKES_TERM.ordinal(),
+        GraphSnapshot.Rels.KNOWS.ordinal(),
+        GraphSnapshot.OTHER
+    };
+    private final int[]    nodes;
+    private final double[] weights;
+    
+    private Neighborhood(int[] nodes, double[] weights) {
+        this.nodes   = nodes;
+        this.weights = weights;
+    }
+    /**
+     * Collects and sorts the neighbors of a node.
+     * @param graph: the snapshot to read.
+     * @param v:     the node index.
+     */
+    public static Neighborhood of(GraphSnapshot graph, int v) {
+        int size = 0;
+        for (int slot : SLOTS)
+            size += graph.end(v, slot) - graph.begin(v, slot);
+        // Sort (neighbor, position) pairs packed in a long, then carry the weights...
+        long[]   keys     = new long[size];
+        double[] unsorted = new double[size];
+        int i = 0;
+        for (int slot : SLOTS) {
+            for (int e = graph.begin(v, slot); e < graph.end(v, slot); e++, i++) {
+                keys[i]     = ((long)graph.target(e) << 32) | i;
+                unsorted[i] = graph.weight(e);
+            }
+        }
+        Arrays.sort(keys);
+        int[]    nodes   = new int[size];
+        double[] weights = new double[size];
+        for (i = 0; i < size; i++) {
+            nodes[i]   = (int)(keys[i] >>> 32);
+            weights[i] = unsorted[(int)keys[i]];
+        }
+        return new Neighborhood(nodes, weights);
+    }
+    /**
+     * Number of relationships (the degree).
+     */
+    public int size() {
+        return this.nodes.length;
+    }
+    /**
+     * The i-th neighbor node index, in increasing order.
+     */
+    public int node(int i) {
+        return this.nodes[i];
+    }
+    /**
+     * The weight of the relationship to the i-th neighbor, NaN if none.
+     */
+    public double weight(int i) {
+        return this.weights[i];
+    }
+    /**
+     * Sum of the weights of all the weighted relationships.
+     */
+    public double weightSum() {
+        double sum = 0.0;
+        for (double w : this.weights) {
+            if (!Double.isNaN(w))
+                sum += w;
+        }
+        return sum;
+    }
+    /**
+     * Number of (relationship of a, relationship of b) pairs that reach the same node.
+     */
+    public static long intersection(Neighborhood a, Neighborhood b) {
+        long count = 0;
+        int i = 0, j = 0;
+        while (i < a.nodes.length && j < b.nodes.length) {
+            int x = a.nodes[i], y = b.nodes[j];
+            if (x < y) {
+                i++;
+            } else if (x > y) {
+                j++;
+            } else {
+                int ri = i, rj = j;
+                while (i < a.nodes.length && a.nodes[i] == x) i++;
+                while (j < b.nodes.length && b.nodes[j] == x) j++;
+                count += (long)(i - ri) * (j - rj);
+            }
+        }
+        return count;
+    }
+    /**
+     * Sum of weight(a) + weight(b) over the weighted relationship pairs
+     * of a and b that reach the same node.
+     */
+    public static double weightedIntersection(Neighborhood a, Neighborhood b) {
+        double sum = 0.0;
+        int i = 0, j = 0;
+        while (i < a.nodes.length && j < b.nodes.length) {
+            int x = a.nodes[i], y = b.nodes[j];
+            if (x < y) {
+                i++;
+            } else if (x > y) {
+                j++;
+            } else {
+                int    countA = 0, countB = 0;
+                double sumA   = 0.0, sumB = 0.0;
+                for (; i < a.nodes.length && a.nodes[i] == x; i++) {
+                    if (!Double.isNaN(a.weights[i])) {
+                        countA++;
+                        sumA += a.weights[i];
+                    }
+                }
+                for (; j < b.nodes.length && b.nodes[j] == x; j++) {
+                    if (!Double.isNaN(b.weights[j])) {
+                        countB++;
+                        sumB += b.weights[j];
+                    }
+                }
+                sum += sumA * countB + sumB * countA;
+            }
+        }
+        return sum;
+    }
+}
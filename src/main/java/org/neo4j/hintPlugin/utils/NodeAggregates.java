@@ -0,0 +1,355 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.tooling.GlobalGraphOperations;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Node Aggregates Class
+ * Per node sums over its relationships, in primitive arrays indexed by node id:
+ * the number and the sum of the "weight" properties (Predbag, Predgraph) and of
+ * the "similarity" properties (WPOI).
+ * The aggregates are built with one scan on first use and kept current by a
+ * transaction event handler that applies the difference of every committed
+ * transaction, so reading them costs O(1).
+ * A transaction that starts committing while the scan runs may or may not be
+ * seen by it, so its difference is not applied: the nodes it touched are
+ * aggregated again from the live graph once it has committed, and the scan
+ * only ends when no such transaction is left.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class NodeAggregates {
+    public static final String WEIGHT     = "weight";
+    public static final String SIMILARITY = "similarity";
+    
+    private static final Map<GraphDatabaseService, NodeAggregates> aggregates =
+        new WeakHashMap<GraphDatabaseService, NodeAggregates>();
+    
+    private final GraphDatabaseService database;
+    private int[]    weightCounts     = new int[16];
+    private double[] weightSums       = new double[16];
+    private int[]    similarityCounts = new int[16];
+    private double[] similaritySums   = new double[16];
+    /**
+     * Guards building, inFlight and dirty, never held while waiting on this.
+     */
+    private final Object    pending  = new Object();
+    private boolean         building = true;
+    private int             inFlight;
+    private final Set<Long> dirty    = new HashSet<Long>();
+    
+    private NodeAggregates(GraphDatabaseService database) {
+        this.database = database;
+    }
+    /**
+     * Returns the aggregates of a database, building them on first use.
+     * @param database: the graph database.
+     */
+    public static NodeAggregates get(GraphDatabaseService database) {
+        synchronized (aggregates) {
+            NodeAggregates nodes = aggregates.get(database);
+            if (nodes == null) {
+                nodes = new NodeAggregates(database);
+                // Listen before the scan, so no commit is lost in between...
+                Updater updater = nodes.new Updater();
+                database.registerTransactionEventHandler(updater);
+                try {
+                    nodes.build();
+                } catch (RuntimeException e) {
+                    System.err.println("utils.NodeAggregates Class: " + e);
+                    database.unregisterTransactionEventHandler(updater);
+                    throw e;
+                }
+                aggregates.put(database, nodes);
+            }
+            return nodes;
+        }
+    }
+    /**
+     * Number of relationships of a node with a "weight".
+     */
+    public synchronized int weightCount(long node) {
+        return node < this.weightCounts.length ? this.weightCounts[(int)node] : 0;
+    }
+    /**
+     * Sum of the "weight" of the relationships of a node.
+     */
+    public synchronized double weightSum(long node) {
+        return node < this.weightSums.length ? this.weightSums[(int)node] : 0.0;
+    }
+    /**
+     * Number of relationships of a node with a "similarity".
+     */
+    public synchronized int similarityCount(long node) {
+        return node < this.similarityCounts.length ? this.similarityCounts[(int)node] : 0;
+    }
+    /**
+     * Sum of the "similarity" of the relationships of a node.
+     */
+    public synchronized double similaritySum(long node) {
+        return node < this.similaritySums.length ? this.similaritySums[(int)node] : 0.0;
+    }
+    /*
+     * Adds every relationship once, then aggregates again the nodes touched by
+     * the transactions that committed meanwhile, until none is left.
+     */
+    private synchronized void build() {
+        Transaction tx = this.database.beginTx();
+        try {
+            for (Relationship r : GlobalGraphOperations.at(this.database).getAllRelationships()) {
+                this.add(r, WEIGHT,     r.getProperty(WEIGHT, null),     1);
+                this.add(r, SIMILARITY, r.getProperty(SIMILARITY, null), 1);
+            }
+            tx.success();
+        } finally {
+            tx.close();
+        }
+        while (true) {
+            Set<Long> nodes;
+            synchronized (this.pending) {
+                while (this.dirty.isEmpty() && this.inFlight > 0) {
+                    try {
+                        this.pending.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException(e);
+                    }
+                }
+                if (this.dirty.isEmpty()) {
+                    this.building = false;
+                    return;
+                }
+                nodes = new HashSet<Long>(this.dirty);
+                this.dirty.clear();
+            }
+            tx = this.database.beginTx();
+            try {
+                for (long node : nodes)
+                    this.aggregate(node);
+                tx.success();
+            } finally {
+                tx.close();
+            }
+        }
+    }
+    /*
+     * Sets the aggregates of one node from its relationships in the live graph.
+     */
+    private void aggregate(long id) {
+        this.grow(id);
+        int n = (int)id;
+        this.weightCounts[n]     = 0;
+        this.weightSums[n]       = 0.0;
+        this.similarityCounts[n] = 0;
+        this.similaritySums[n]   = 0.0;
+        Node node;
+        try {
+            node = this.database.getNodeById(id);
+        } catch (NotFoundException e) {
+            return;
+        }
+        for (Relationship r : node.getRelationships()) {
+            Object weight     = r.getProperty(WEIGHT, null);
+            Object similarity = r.getProperty(SIMILARITY, null);
+            if (weight != null)
+                this.add(id, WEIGHT, weight, 1);
+            if (similarity != null)
+                this.add(id, SIMILARITY, similarity, 1);
+        }
+    }
+    /*
+     * Adds (sign 1) or removes (sign -1) a property value at both ends of a relationship.
+     */
+    private void add(Relationship r, String key, Object value, int sign) {
+        if (value == null)
+            return;
+        long start = r.getStartNode().getId();
+        long end   = r.getEndNode().getId();
+        this.add(start, key, value, sign);
+        if (end != start)
+            this.add(end, key, value, sign);
+    }
+    private void grow(long node) {
+        if (node >= this.weightCounts.length) {
+            int length = (int)Math.max(node + 1, 2L * this.weightCounts.length);
+            this.weightCounts     = Arrays.copyOf(this.weightCounts, length);
+            this.weightSums       = Arrays.copyOf(this.weightSums, length);
+            this.similarityCounts = Arrays.copyOf(this.similarityCounts, length);
+            this.similaritySums   = Arrays.copyOf(this.similaritySums, length);
+        }
+    }
+    private void add(long node, String key, Object value, int sign) {
+        this.grow(node);
+        double number = number(value);
+        if (WEIGHT.equals(key)) {
+            this.weightCounts[(int)node] += sign;
+            if (!Double.isNaN(number))
+                this.weightSums[(int)node] += sign * number;
+        } else {
+            this.similarityCounts[(int)node] += sign;
+            if (!Double.isNaN(number))
+                this.similaritySums[(int)node] += sign * number;
+        }
+    }
+    /*
+     * A property value as a double, NaN if it is not a number.
+     */
+    private static double number(Object value) {
+        if (value instanceof Number)
+            return ((Number)value).doubleValue();
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+    private static boolean isAggregated(String key) {
+        return WEIGHT.equals(key) || SIMILARITY.equals(key);
+    }
+    
+    /**
+     * One property value added to or removed from the ends of a relationship.
+     */
+    private static final class Change {
+        private final long   start;
+        private final long   end;
+        private final String key;
+        private final Object value;
+        private final int    sign;
+        
+        Change(Relationship r, String key, Object value, int sign) {
+            this.start = r.getStartNode().getId();
+            this.end   = r.getEndNode().getId();
+            this.key   = key;
+            this.value = value;
+            this.sign  = sign;
+        }
+    }
+    /**
+     * The differences of one transaction, deferred if it committed during the scan.
+     */
+    private static final class Delta {
+        private final Change[] changes;
+        private final boolean  deferred;
+        
+        Delta(Change[] changes, boolean deferred) {
+            this.changes  = changes;
+            this.deferred = deferred;
+        }
+    }
+    /*
+     * Collects the property differences of every transaction before it commits,
+     * and applies them once it has committed.
+     */
+    private final class Updater extends TransactionEventHandler.Adapter<Delta> {
+        @Override
+        public Delta beforeCommit(TransactionData data) throws Exception {
+            List<Change> changes = new ArrayList<Change>();
+            Set<Long> created = new HashSet<Long>();
+            for (Relationship r : data.createdRelationships()) {
+                created.add(r.getId());
+                if (data.isDeleted(r))
+                    continue;
+                for (String key : new String[] {WEIGHT, SIMILARITY}) {
+                    Object value = r.getProperty(key, null);
+                    if (value != null)
+                        changes.add(new Change(r, key, value, 1));
+                }
+            }
+            for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties()) {
+                if (!isAggregated(entry.key()) || created.contains(entry.entity().getId()))
+                    continue;
+                if (entry.previouslyCommitedValue() != null)
+                    changes.add(new Change(entry.entity(), entry.key(), entry.previouslyCommitedValue(), -1));
+                changes.add(new Change(entry.entity(), entry.key(), entry.value(), 1));
+            }
+            // Includes the properties of the deleted relationships...
+            for (PropertyEntry<Relationship> entry : data.removedRelationshipProperties()) {
+                if (!isAggregated(entry.key()) || created.contains(entry.entity().getId()))
+                    continue;
+                if (entry.previouslyCommitedValue() != null)
+                    changes.add(new Change(entry.entity(), entry.key(), entry.previouslyCommitedValue(), -1));
+            }
+            if (changes.isEmpty())
+                return null;
+            boolean deferred;
+            synchronized (NodeAggregates.this.pending) {
+                deferred = NodeAggregates.this.building;
+                if (deferred)
+                    NodeAggregates.this.inFlight++;
+            }
+            return new Delta(changes.toArray(new Change[changes.size()]), deferred);
+        }
+        @Override
+        public void afterCommit(TransactionData data, Delta delta) {
+            if (delta == null)
+                return;
+            if (delta.deferred) {
+                // The scan may have counted it already, aggregate its nodes again...
+                synchronized (NodeAggregates.this.pending) {
+                    for (Change change : delta.changes) {
+                        NodeAggregates.this.dirty.add(change.start);
+                        NodeAggregates.this.dirty.add(change.end);
+                    }
+                    NodeAggregates.this.inFlight--;
+                    NodeAggregates.this.pending.notifyAll();
+                }
+                return;
+            }
+            synchronized (NodeAggregates.this) {
+                for (Change change : delta.changes) {
+                    NodeAggregates.this.add(change.start, change.key, change.value, change.sign);
+                    if (change.end != change.start)
+                        NodeAggregates.this.add(change.end, change.key, change.value, change.sign);
+                }
+            }
+        }
+        @Override
+        public void afterRollback(TransactionData data, Delta delta) {
+            if (delta == null || !delta.deferred)
+                return;
+            synchronized (NodeAggregates.this.pending) {
+                NodeAggregates.this.inFlight--;
+                NodeAggregates.this.pending.notifyAll();
+            }
+        }
+    }
+}
@@ -37,11 +37,6 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.RelationshipType;
-import org.neo4j.graphdb.Node;
-import org.neo4j.helpers.collection.IteratorUtil;
 
 import java.lang.Math;
 
@@ -49,7 +44,6 @@ import java.lang.Math;
 public class Predbag {
     
     private final GraphDatabaseService database;
-    private Node node;
     private double numberOfWords;
     
     /*
@@ -80,30 +74,14 @@ public class Predbag {
     }
     /*
      * Calculates PredBag The average predominance of the n
-     * words in the bag of words of a POI.
+     * words in the bag of words of a POI, read from the NodeAggregates.
+     * A node without weighted relationships has a predbag of 0 (it was NaN).
      * @param node:       The target node.
      */
     private double getPredbag(long node){
-        this.numberOfWords = 0.0;
-        double predbag = 0.0;
-        double degree  = 0.0;
-        Transaction tx = database.beginTx();
-        try {
-            this.node = database.getNodeById(node);
-            for (Relationship r: this.node.getRelationships()){
-                if(r.hasProperty("weight")){
-                    predbag = new Double(r.getProperty("weight").toString()) + predbag;
-                    degree++;
-                }
-            }
-            predbag = predbag/degree;
-            this.numberOfWords = degree;
-            tx.success();
-        } catch (Exception e) {
-            System.out.println("Fail, This happened: " + e);
-        } finally {
-            tx.close();
-        }
-        return predbag;
+        NodeAggregates aggregates = NodeAggregates.get(this.database);
+        double degree  = aggregates.weightCount(node);
+        this.numberOfWords = degree;
+        return degree > 0 ? aggregates.weightSum(node)/degree : 0.0;
     }
-}
\ No newline at end of file
+}
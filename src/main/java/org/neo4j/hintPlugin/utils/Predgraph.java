@@ -80,20 +80,15 @@ public class Predgraph {
      * @param threshold:    the threshold that must be equal or up to create a relationship.
      */
     private double getPredgraph(long node){
-        this.numberOfWords  = 0.0;
-        double predgraph    = 0.0;
-        double degree       = 0.0;
+        NodeAggregates aggregates = NodeAggregates.get(this.database);
+        double predgraph    = aggregates.weightSum(node);
+        this.numberOfWords  = aggregates.weightCount(node);
         Transaction tx = database.beginTx();
         try {
             this.node = database.getNodeById(node);
-            for (Relationship r: this.node.getRelationships()){
-                if(r.hasProperty("weight")){
-                    predgraph = new Double(r.getProperty("weight").toString()) + predgraph;
-                    degree++;
-                }
-            }
-            this.numberOfWords = degree;
-            this.node.setProperty("predgraph",predgraph);
+            // Only write when it changed...
+            if (!Double.valueOf(predgraph).equals(this.node.getProperty("predgraph", null)))
+                this.node.setProperty("predgraph",predgraph);
             tx.success();
         } catch (Exception e) {
             System.out.println("Fail, This happened: " + e);
@@ -102,4 +97,4 @@ public class Predgraph {
         }
         return predgraph;
     }
-}
\ No newline at end of file
+}
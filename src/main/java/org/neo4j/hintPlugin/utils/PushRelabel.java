@@ -0,0 +1,208 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import java.util.Arrays;
+
+/**
+ * Push Relabel Class
+ * Maximum flow by the highest-label push-relabel method with the gap
+ * heuristic, O(n²√m). Labels start as exact BFS distances to the sink.
+ * The algorithm runs until every excess has reached the sink or gone
+ * back to the source, so the result is a flow and not only a preflow.
+ * @see (Goldberg, A. V., Tarjan, R. E. (1988). A new approach to the maximum-flow problem)
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class PushRelabel {
+    private final ResidualGraph residual;
+    private final GraphSnapshot graph;
+    private final GraphSnapshot.Rels type;
+    private final int n;
+    private final int source;
+    private final int sink;
+    private final int[]    height;
+    private final double[] excess;
+    private final int[]    current;
+    private final int[]    count;
+    /** Active nodes by height, doubly linked. */
+    private final int[]    bucket;
+    private final int[]    next;
+    private final int[]    previous;
+    private final boolean[] active;
+    private int maxActive;
+    
+    private PushRelabel(ResidualGraph residual, int source, int sink) {
+        this.residual = residual;
+        this.graph    = residual.graph();
+        this.type     = residual.type();
+        this.n        = this.graph.size();
+        this.source   = source;
+        this.sink     = sink;
+        this.height   = new int[n];
+        this.excess   = new double[n];
+        this.current  = new int[n];
+        this.count    = new int[2 * n + 1];
+        this.bucket   = new int[2 * n + 1];
+        this.next     = new int[n];
+        this.previous = new int[n];
+        this.active   = new boolean[n];
+        this.maxActive = -1;
+        Arrays.fill(this.bucket, -1);
+    }
+    /**
+     * Computes the maximum flow between two nodes.
+     * @param residual  the residual graph, updated in place.
+     * @param source    the source node index
+     * @param sink      the sink node index
+     * @return double   as the maximum flow value.
+     */
+    public static double maxFlow(ResidualGraph residual, int source, int sink) {
+        return new PushRelabel(residual, source, sink).run();
+    }
+    private double run() {
+        this.initialLabels();
+        for (int v = 0; v < n; v++) {
+            this.current[v] = graph.begin(v, type);
+            this.count[this.height[v]]++;
+        }
+        //Saturate everything leaving the source...
+        for (int e = graph.begin(source, type); e < graph.end(source, type); e++) {
+            double amount = residual.residual(e);
+            if (amount > ResidualGraph.EPSILON)
+                this.push(source, e, amount);
+        }
+        while (this.maxActive >= 0) {
+            int v = this.bucket[this.maxActive];
+            if (v < 0) {
+                this.maxActive--;
+                continue;
+            }
+            this.deactivate(v);
+            this.discharge(v);
+        }
+        return this.excess[sink];
+    }
+    /**
+     * Exact distances to the sink through residual entries,
+     * nodes that cannot reach the sink start above the source.
+     */
+    private void initialLabels() {
+        Arrays.fill(this.height, n + 1);
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        this.height[sink] = 0;
+        queue[tail++] = sink;
+        while (head < tail) {
+            int w = queue[head++];
+            for (int e = graph.begin(w, type); e < graph.end(w, type); e++) {
+                int v = graph.target(e);
+                // Undirected capacities: v -> w has the capacity of this entry.
+                if (this.height[v] == n + 1 && v != source && residual.capacity(e) > ResidualGraph.EPSILON) {
+                    this.height[v] = this.height[w] + 1;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        this.height[source] = n;
+    }
+    private void discharge(int v) {
+        while (this.excess[v] > ResidualGraph.EPSILON) {
+            int e = this.current[v];
+            if (e == graph.end(v, type)) {
+                this.relabel(v);
+                if (this.height[v] >= 2 * n)
+                    return;
+                continue;
+            }
+            int w = graph.target(e);
+            double amount = residual.residual(e);
+            if (amount > ResidualGraph.EPSILON && this.height[v] == this.height[w] + 1)
+                this.push(v, e, Math.min(amount, this.excess[v]));
+            else
+                this.current[v]++;
+        }
+    }
+    private void push(int v, int e, double amount) {
+        int w = graph.target(e);
+        residual.push(e, amount);
+        this.excess[v] -= amount;
+        this.excess[w] += amount;
+        if (w != source && w != sink && !this.active[w] && this.excess[w] > ResidualGraph.EPSILON)
+            this.activate(w);
+    }
+    private void relabel(int v) {
+        int oldHeight = this.height[v];
+        int newHeight = 2 * n;
+        for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+            if (residual.residual(e) > ResidualGraph.EPSILON)
+                newHeight = Math.min(newHeight, this.height[graph.target(e)] + 1);
+        }
+        this.count[oldHeight]--;
+        if (this.count[oldHeight] == 0 && oldHeight < n) {
+            //Gap: nothing between oldHeight and n can reach the sink anymore...
+            for (int u = 0; u < n; u++) {
+                if (u != source && this.height[u] > oldHeight && this.height[u] < n) {
+                    this.setHeight(u, n + 1);
+                }
+            }
+            newHeight = Math.max(newHeight, n + 1);
+        }
+        this.height[v] = newHeight;
+        this.count[newHeight]++;
+        this.current[v] = graph.begin(v, type);
+    }
+    private void setHeight(int u, int h) {
+        boolean wasActive = this.active[u];
+        if (wasActive)
+            this.deactivate(u);
+        this.count[this.height[u]]--;
+        this.height[u] = h;
+        this.count[h]++;
+        this.current[u] = graph.begin(u, type);
+        if (wasActive)
+            this.activate(u);
+    }
+    private void activate(int v) {
+        int h = this.height[v];
+        this.active[v]   = true;
+        this.previous[v] = -1;
+        this.next[v]     = this.bucket[h];
+        if (this.bucket[h] >= 0)
+            this.previous[this.bucket[h]] = v;
+        this.bucket[h] = v;
+        this.maxActive = Math.max(this.maxActive, h);
+    }
+    private void deactivate(int v) {
+        int h = this.height[v];
+        if (this.previous[v] >= 0)
+            this.next[this.previous[v]] = this.next[v];
+        else
+            this.bucket[h] = this.next[v];
+        if (this.next[v] >= 0)
+            this.previous[this.next[v]] = this.previous[v];
+        this.active[v] = false;
+    }
+}
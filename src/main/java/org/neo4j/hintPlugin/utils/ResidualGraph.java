@@ -0,0 +1,132 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import java.util.Arrays;
+
+/**
+ * Residual Graph Class
+ * The residual capacities of one relationship type of a GraphSnapshot,
+ * kept in memory so that no temporary property is written to the store
+ * while a flow is being computed.
+ * Relationships are undirected: the capacity is the "weight" in both
+ * directions and the flow is kept by relationship index, positive when it
+ * goes from the start node to the end node.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class ResidualGraph {
+    /**
+     * Residual capacities at or below this value are considered saturated.
+     */
+    public static final double EPSILON = 1e-9;
+    private final GraphSnapshot graph;
+    private final GraphSnapshot.Rels type;
+    private final double[] flow;
+    
+    /**
+     * Creates an empty flow over a relationship type of the snapshot.
+     * @param graph: the snapshot to work on.
+     * @param type:  the relationship type carrying the capacities.
+     */
+    public ResidualGraph(GraphSnapshot graph, GraphSnapshot.Rels type) {
+        this.graph = graph;
+        this.type  = type;
+        this.flow  = new double[graph.relationshipCount()];
+    }
+    public GraphSnapshot graph() {
+        return this.graph;
+    }
+    public GraphSnapshot.Rels type() {
+        return this.type;
+    }
+    /**
+     * Capacity of an adjacency entry, 0 if the relationship has no positive weight.
+     */
+    public double capacity(int e) {
+        double w = this.graph.weight(e);
+        return (w > 0.0) ? w : 0.0;
+    }
+    /**
+     * What can still be pushed through an adjacency entry, from its owner to its target.
+     */
+    public double residual(int e) {
+        double f = this.flow[this.graph.relationship(e)];
+        return this.capacity(e) - (this.graph.isOutgoing(e) ? f : -f);
+    }
+    /**
+     * Pushes flow through an adjacency entry, from its owner to its target.
+     */
+    public void push(int e, double amount) {
+        if (this.graph.isOutgoing(e))
+            this.flow[this.graph.relationship(e)] += amount;
+        else
+            this.flow[this.graph.relationship(e)] -= amount;
+    }
+    /**
+     * The flow through a relationship, positive from its start to its end node.
+     */
+    public double flow(int r) {
+        return this.flow[r];
+    }
+    /**
+     * The flow going through a node (half the flow on its relationships).
+     */
+    public double throughput(int v) {
+        double sum = 0.0;
+        for (int e = this.graph.begin(v, this.type); e < this.graph.end(v, this.type); e++)
+            sum += Math.abs(this.flow[this.graph.relationship(e)]);
+        return sum / 2.0;
+    }
+    /**
+     * The source side of the minimum cut: the nodes still reachable from the
+     * source through entries with residual capacity (valid after a maximum flow).
+     * @param source: the source node index.
+     */
+    public boolean[] sourceSide(int source) {
+        boolean[] reached = new boolean[this.graph.size()];
+        int[] queue = new int[this.graph.size()];
+        int head = 0, tail = 0;
+        reached[source] = true;
+        queue[tail++] = source;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = this.graph.begin(v, this.type); e < this.graph.end(v, this.type); e++) {
+                int w = this.graph.target(e);
+                if (!reached[w] && this.residual(e) > EPSILON) {
+                    reached[w] = true;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return reached;
+    }
+    /**
+     * Removes all the flow.
+     */
+    public void reset() {
+        Arrays.fill(this.flow, 0.0);
+    }
+}
@@ -23,9 +23,13 @@
  */
 package org.neo4j.hintplugin.utils;
 
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
@@ -33,16 +37,21 @@ import javax.ws.rs.core.Response;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonStreamParser;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Node;
-import org.neo4j.helpers.collection.IteratorUtil;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.Math;
+import java.util.Arrays;
 
 @Path("/similarity")
 public class Similarity {
@@ -82,46 +91,244 @@ public class Similarity {
         }
         return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
     }
+    /*
+     * The RESTful Method to be called to retrieve the k nodes most similar to one node.
+     * Only the nodes that share at least one neighbor are scored, nothing is written.
+     * @param node: the node to compare against.
+     * @param k:    the number of similar nodes to return.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{node}/top")
+    public Response topSimilar(@PathParam("node") long node, @QueryParam("k") @DefaultValue("10") int k) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            GraphSnapshot graph = GraphSnapshot.get(this.database);
+            int v = graph.indexOf(node);
+            if (v < 0)
+                throw new IllegalArgumentException("Node " + node + " is not in the snapshot");
+            TopSimilar top     = TopSimilar.of(graph, v, k);
+            JsonArray  similar = new JsonArray();
+            for (int i = 0; i < top.size(); i++) {
+                JsonObject entry = new JsonObject();
+                entry.addProperty("node",         graph.nodeId(top.node(i)));
+                entry.addProperty("similarity",   top.similarity(i));
+                entry.addProperty("intersection", top.intersection(i));
+                similar.add(entry);
+            }
+            obj.addProperty("node",      node);
+            obj.addProperty("k",         k);
+            obj.add("similar",           similar);
+        } catch (Exception ex) {
+            System.err.println("utils.Similarity Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * The RESTful Method to score many pairs in one request.
+     * The body is a JSON array of pairs, or NDJSON with one pair per line, where a
+     * pair is [node_a, node_b] or {"node_a": .., "node_b": ..}. All the similarities
+     * are computed from the snapshot first, then the IS_SIMILAR relationship between
+     * every pair is replaced in commits of batchSize pairs.
+     * @param weighted:  true for the weighted Jaccard index of WSimilarity.
+     * @param batchSize: the number of pairs written per transaction.
+     */
+    @POST
+    @Consumes({MediaType.APPLICATION_JSON, "application/x-ndjson"})
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/batch")
+    public Response batch(InputStream body,
+                          @QueryParam("weighted") @DefaultValue("false") boolean weighted,
+                          @QueryParam("batchSize") @DefaultValue("1000") int batchSize) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            long startTime = System.currentTimeMillis();
+            long[] pairs = readPairs(body);
+            int    count = pairs.length / 2;
+            // Read pass...
+            GraphSnapshot graph        = GraphSnapshot.get(this.database);
+            double[]      similarities = new double[count];
+            int           skipped      = 0;
+            for (int i = 0; i < count; i++) {
+                int a = graph.indexOf(pairs[2*i]);
+                int b = graph.indexOf(pairs[2*i + 1]);
+                if (a < 0 || b < 0) {
+                    similarities[i] = Double.NaN;
+                    skipped++;
+                } else {
+                    similarities[i] = weighted ? WSimilarity.jaccard(graph, a, b) : jaccard(graph, a, b);
+                }
+            }
+            // Write pass...
+            int written = this.saveSimilar(pairs, similarities, this.threshold, Math.max(1, batchSize));
+            JsonArray results = new JsonArray();
+            for (int i = 0; i < count; i++) {
+                JsonObject result = new JsonObject();
+                result.addProperty("node-start", pairs[2*i]);
+                result.addProperty("node-end",   pairs[2*i + 1]);
+                if (Double.isNaN(similarities[i]))
+                    result.addProperty("skipped", true);
+                else
+                    result.addProperty("similarity", similarities[i]);
+                results.add(result);
+            }
+            obj.addProperty("pairs",           count);
+            obj.addProperty("skipped",         skipped);
+            obj.addProperty("written",         written);
+            obj.addProperty("weighted",        weighted);
+            obj.addProperty("threshold",       this.threshold);
+            obj.addProperty("computedSeconds", (System.currentTimeMillis() - startTime)/1000.0);
+            obj.add("similarities",            results);
+        } catch (Exception ex) {
+            System.err.println("utils.Similarity Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * The RESTful Method to build the whole IS_SIMILAR layer.
+     * Every pair at or above the threshold is found exactly with a prefix-filtered
+     * similarity join, then written in commits of batchSize pairs.
+     * @param threshold:   the minimum similarity.
+     * @param measure:     "similarity" for the index of this class, "jaccard" for the Jaccard index.
+     * @param parallelism: number of threads (defaults to the available processors).
+     * @param batchSize:   the number of pairs written per transaction.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/join")
+    public Response join(@QueryParam("threshold") @DefaultValue("0.5") double threshold,
+                         @QueryParam("measure") @DefaultValue("similarity") String measure,
+                         @QueryParam("parallelism") @DefaultValue("0") int parallelism,
+                         @QueryParam("batchSize") @DefaultValue("1000") int batchSize) {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        if (!"similarity".equals(measure) && !"jaccard".equals(measure)) {
+            obj.addProperty("error", "Unknown measure: " + measure);
+            return Response.status(Response.Status.BAD_REQUEST)
+                .entity(gson.toJson(obj)).type(MediaType.APPLICATION_JSON).build();
+        }
+        if (parallelism <= 0)
+            parallelism = Runtime.getRuntime().availableProcessors();
+        try{
+            long startTime = System.currentTimeMillis();
+            GraphSnapshot  graph  = GraphSnapshot.get(this.database);
+            SimilarityJoin result = SimilarityJoin.join(graph, threshold, "jaccard".equals(measure), parallelism);
+            long[]   pairs        = new long[2 * result.size()];
+            double[] similarities = new double[result.size()];
+            for (int i = 0; i < result.size(); i++) {
+                pairs[2*i]      = graph.nodeId(result.first(i));
+                pairs[2*i + 1]  = graph.nodeId(result.second(i));
+                similarities[i] = result.similarity(i);
+            }
+            obj.addProperty("records",         result.records());
+            obj.addProperty("candidates",      result.candidates());
+            obj.addProperty("pairs",           result.size());
+            // Every joined pair already passed the threshold...
+            obj.addProperty("written",         this.saveSimilar(pairs, similarities, 0.0, Math.max(1, batchSize)));
+            obj.addProperty("measure",         measure);
+            obj.addProperty("threshold",       threshold);
+            obj.addProperty("computedSeconds", (System.currentTimeMillis() - startTime)/1000.0);
+        } catch (Exception ex) {
+            System.err.println("utils.Similarity Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Parses the pairs of a batch body into {a0, b0, a1, b1, ...}.
+     */
+    private static long[] readPairs(InputStream body) throws Exception {
+        long[] pairs = new long[64];
+        int    size  = 0;
+        JsonStreamParser parser = new JsonStreamParser(new InputStreamReader(body, "UTF-8"));
+        while (parser.hasNext()) {
+            JsonElement element = parser.next();
+            JsonArray   list    = new JsonArray();
+            if (element.isJsonArray() && (element.getAsJsonArray().size() == 0
+                || !element.getAsJsonArray().get(0).isJsonPrimitive())) {
+                list = element.getAsJsonArray();
+            } else {
+                list.add(element);
+            }
+            for (JsonElement pair : list) {
+                if (size + 2 > pairs.length)
+                    pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                if (pair.isJsonObject()) {
+                    pairs[size++] = pair.getAsJsonObject().get("node_a").getAsLong();
+                    pairs[size++] = pair.getAsJsonObject().get("node_b").getAsLong();
+                } else if (pair.isJsonArray() && pair.getAsJsonArray().size() == 2) {
+                    pairs[size++] = pair.getAsJsonArray().get(0).getAsLong();
+                    pairs[size++] = pair.getAsJsonArray().get(1).getAsLong();
+                } else {
+                    throw new IllegalArgumentException("Not a node pair: " + pair);
+                }
+            }
+        }
+        return Arrays.copyOf(pairs, size);
+    }
+    /*
+     * Replaces the IS_SIMILAR relationship between every scored pair, recreating
+     * it at or above threshold, batchSize pairs per transaction.
+     * Returns the relationships created.
+     */
+    private int saveSimilar(long[] pairs, double[] similarities, double threshold, int batchSize) {
+        int written = 0;
+        for (int start = 0; start < similarities.length; start += batchSize) {
+            Transaction tx = database.beginTx();
+            try {
+                int created = 0;
+                for (int i = start; i < Math.min(similarities.length, start + batchSize); i++) {
+                    if (Double.isNaN(similarities[i]))
+                        continue;
+                    Node a = database.getNodeById(pairs[2*i]);
+                    Node b = database.getNodeById(pairs[2*i + 1]);
+                    for (Relationship r: a.getRelationships(MyRelationshipTypes.IS_SIMILAR)){
+                        if (r.getOtherNode(a).getId() == b.getId())
+                            r.delete();
+                    }
+                    if(similarities[i] >= threshold){
+                        Relationship rs = a.createRelationshipTo(b, MyRelationshipTypes.IS_SIMILAR);
+                        rs.setProperty("similarity", similarities[i]);
+                        created++;
+                    }
+                }
+                tx.success();
+                written += created;
+            } catch (Exception e) {
+                tx.failure();
+                System.err.println("utils.Similarity Class: " + e);
+            } finally {
+                tx.close();
+            }
+        }
+        return written;
+    }
     /*
      * Calculates Similarity Between Two Nodes, Based on Jaccard Index.
+     * The neighborhoods are read from the GraphSnapshot as sorted arrays
+     * and intersected with a linear merge.
      * @param node_a:       the start node to calculate similarity.
      * @param node_b:       the end node to calculate similarity.
      * @param threshold:    the threshold that must be equal or up to create a relationship.
      */
     private double getSimilarity(long node_a, long node_b){
-        double node_a_degree        = 0.0;
-        double node_b_degree        = 0.0;
         double similarity           = 0.0;
-        double node_intersection    = 0.0;
-        double node_union           = 0.0;
+        GraphSnapshot graph = GraphSnapshot.get(this.database);
+        int a = graph.indexOf(node_a);
+        int b = graph.indexOf(node_b);
+        if (a < 0 || b < 0)
+            throw new IllegalArgumentException("Node " + (a < 0 ? node_a : node_b) + " is not in the snapshot");
+        similarity = jaccard(graph, a, b);
         Transaction tx = database.beginTx();
         try {
             this.node_a = database.getNodeById(node_a);
             this.node_b = database.getNodeById(node_b);
-            Iterable<Relationship> relationships_a = this.node_a.getRelationships();
-            Iterable<Relationship> relationships_b = this.node_b.getRelationships();
-            node_a_degree = IteratorUtil.count(relationships_a);
-            node_b_degree = IteratorUtil.count(relationships_b);
-            node_union = node_a_degree + node_b_degree;
-            for (Relationship a: this.node_a.getRelationships()) {
-                for (Relationship b: this.node_b.getRelationships()) {
-                    if(a.getEndNode().getId() == b.getEndNode().getId())
-                        node_intersection++;
-                }
-            }
-            System.out.println("****** Union:" + node_union);
-            System.out.println("****** Inter:" + node_intersection);
-            if (node_union != 0) {
-                similarity = Math.abs(node_intersection)/Math.abs(node_union);
-            } else {
-                similarity = 1.0;
-            }
-            System.out.println("******" + similarity);
             //Destroy any "similarity" relationships... (if any)
             for (Relationship r: this.node_a.getRelationships(MyRelationshipTypes.IS_SIMILAR)){
                 r.delete();
             }
-            if(similarity >= 0.5){
+            if(similarity >= this.threshold){
                 Relationship rs = this.node_a.createRelationshipTo(this.node_b, MyRelationshipTypes.IS_SIMILAR);
                 rs.setProperty("similarity", similarity);
             }
@@ -133,4 +340,21 @@ public class Similarity {
         }
         return similarity;
     }
-}
\ No newline at end of file
+    /*
+     * Jaccard index of two snapshot nodes, 1.0 when neither has neighbors.
+     * @param graph: the snapshot to read.
+     * @param a:     the first node index.
+     * @param b:     the second node index.
+     */
+    static double jaccard(GraphSnapshot graph, int a, int b) {
+        double node_intersection    = 0.0;
+        double node_union           = 0.0;
+        Neighborhood neighbors_a = Neighborhood.of(graph, a);
+        Neighborhood neighbors_b = Neighborhood.of(graph, b);
+        node_union        = neighbors_a.size() + neighbors_b.size();
+        node_intersection = Neighborhood.intersection(neighbors_a, neighbors_b);
+        if (node_union != 0)
+            return Math.abs(node_intersection)/Math.abs(node_union);
+        return 1.0;
+    }
+}
@@ -0,0 +1,387 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Similarity Join Class
+ * Finds every pair of nodes whose neighbor sets are at least threshold similar,
+ * exactly, without scoring all the n² pairs (AllPairs with the positional filter
+ * of PPJoin, Bayardo et al. 2007 / Xiao et al. 2008).
+ *
+ * Both measures have the form overlap >= c (|x| + |y|): the index of Similarity,
+ * |x ∩ y| / (|x| + |y|), with c = t and the Jaccard index with c = t / (1 + t).
+ * Neighbors are sorted from the rarest to the most frequent, so a pair must share
+ * a neighbor in short prefixes of both lists (prefix filter); records are visited
+ * by size, so short records are skipped (length filter); and a candidate is dropped
+ * as soon as its remaining neighbors cannot reach the overlap (positional filter).
+ * The survivors are verified with a merge of the two lists.
+ *
+ * Neighbors are the ones of Neighborhood taken as a set, nodes without neighbors
+ * are left out. The probes are split across a ForkJoinPool.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class SimilarityJoin {
+    private static final double EPSILON = 1e-9;
+    
+    private final GraphSnapshot graph;
+    private final boolean jaccard;
+    private final double  threshold;
+    private final double  c;
+    // Records in (size, node) order, neighbors as frequency ranks...
+    private final int[] nodes;
+    private final int[] offsets;
+    private final int[] tokens;
+    // Index prefix postings by rank: record and position...
+    private final int[] postingOffsets;
+    private final int[] postingRecords;
+    private final int[] postingPositions;
+    
+    private int[]    first      = new int[16];
+    private int[]    second     = new int[16];
+    private double[] similarity = new double[16];
+    private int      size;
+    private long     candidates;
+    
+    private SimilarityJoin(GraphSnapshot graph, double threshold, boolean jaccard) {
+        this.graph     = graph;
+        this.jaccard   = jaccard;
+        this.threshold = threshold;
+        this.c         = jaccard ? threshold / (1.0 + threshold) : threshold;
+        int n = graph.size();
+        // Distinct neighbor sets and the frequency of every neighbor...
+        int[][] sets      = new int[n][];
+        int[]   frequency = new int[n];
+        int     records   = 0;
+        for (int v = 0; v < n; v++) {
+            Neighborhood neighborhood = Neighborhood.of(graph, v);
+            int[] set = new int[neighborhood.size()];
+            int   k   = 0;
+            for (int i = 0; i < neighborhood.size(); i++) {
+                if (k == 0 || set[k - 1] != neighborhood.node(i))
+                    set[k++] = neighborhood.node(i);
+            }
+            sets[v] = Arrays.copyOf(set, k);
+            for (int t : sets[v])
+                frequency[t]++;
+            if (k > 0)
+                records++;
+        }
+        // Rank the neighbors, rarest first...
+        long[] byFrequency = new long[n];
+        for (int t = 0; t < n; t++)
+            byFrequency[t] = ((long)frequency[t] << 32) | t;
+        Arrays.sort(byFrequency);
+        int[] rank = new int[n];
+        for (int i = 0; i < n; i++)
+            rank[(int)byFrequency[i]] = i;
+        // Order the records by size...
+        long[] bySize = new long[records];
+        for (int v = 0, r = 0; v < n; v++) {
+            if (sets[v].length > 0)
+                bySize[r++] = ((long)sets[v].length << 32) | v;
+        }
+        Arrays.sort(bySize);
+        this.nodes   = new int[records];
+        this.offsets = new int[records + 1];
+        for (int r = 0; r < records; r++) {
+            this.nodes[r]       = (int)bySize[r];
+            this.offsets[r + 1] = this.offsets[r] + sets[this.nodes[r]].length;
+        }
+        this.tokens = new int[this.offsets[records]];
+        for (int r = 0; r < records; r++) {
+            int[] set = sets[this.nodes[r]];
+            for (int i = 0; i < set.length; i++)
+                this.tokens[this.offsets[r] + i] = rank[set[i]];
+            Arrays.sort(this.tokens, this.offsets[r], this.offsets[r + 1]);
+        }
+        // Index the prefixes...
+        this.postingOffsets = new int[n + 1];
+        for (int r = 0; r < records; r++) {
+            for (int i = 0; i < this.indexPrefix(r); i++)
+                this.postingOffsets[this.tokens[this.offsets[r] + i] + 1]++;
+        }
+        for (int t = 0; t < n; t++)
+            this.postingOffsets[t + 1] += this.postingOffsets[t];
+        this.postingRecords   = new int[this.postingOffsets[n]];
+        this.postingPositions = new int[this.postingOffsets[n]];
+        int[] fill = Arrays.copyOf(this.postingOffsets, n);
+        for (int r = 0; r < records; r++) {
+            for (int i = 0; i < this.indexPrefix(r); i++) {
+                int p = fill[this.tokens[this.offsets[r] + i]]++;
+                this.postingRecords[p]   = r;
+                this.postingPositions[p] = i;
+            }
+        }
+    }
+    /**
+     * Joins the whole snapshot.
+     * @param graph:       the snapshot to read.
+     * @param threshold:   the minimum similarity, in (0, 1].
+     * @param jaccard:     true for the Jaccard index, false for the index of Similarity.
+     * @param parallelism: the number of workers (at most the available processors), 1 runs in the calling thread.
+     */
+    public static SimilarityJoin join(GraphSnapshot graph, double threshold,
+                                      boolean jaccard, int parallelism) {
+        if (!(threshold > 0.0 && threshold <= 1.0))
+            throw new IllegalArgumentException("The threshold must be in (0, 1]: " + threshold);
+        SimilarityJoin join = new SimilarityJoin(graph, threshold, jaccard);
+        if (join.c > 0.5 + EPSILON)
+            return join;
+        List<Probe> probes = new ArrayList<Probe>();
+        // Every worker keeps node-sized arrays, at most one per processor...
+        parallelism = Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+        if (parallelism <= 1) {
+            Probe probe = new Probe(join, new AtomicInteger());
+            probe.compute();
+            probes.add(probe);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                probes = pool.invoke(new AllProbes(join, parallelism));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        for (Probe probe : probes) {
+            for (int i = 0; i < probe.size; i++)
+                join.add(probe.first[i], probe.second[i], probe.similarity[i]);
+            join.candidates += probe.candidates;
+        }
+        return join;
+    }
+    /**
+     * Number of nodes with neighbors.
+     */
+    public int records() {
+        return this.nodes.length;
+    }
+    /**
+     * Number of pairs that survived the filters and were verified.
+     */
+    public long candidates() {
+        return this.candidates;
+    }
+    /**
+     * Number of pairs at or above the threshold.
+     */
+    public int size() {
+        return this.size;
+    }
+    /**
+     * Node index of the i-th pair, the one with the lower neo4j id.
+     */
+    public int first(int i) {
+        return this.first[i];
+    }
+    /**
+     * Node index of the i-th pair, the one with the higher neo4j id.
+     */
+    public int second(int i) {
+        return this.second[i];
+    }
+    public double similarity(int i) {
+        return this.similarity[i];
+    }
+    private void add(int a, int b, double value) {
+        if (this.size == this.first.length) {
+            this.first      = Arrays.copyOf(this.first, this.size * 2);
+            this.second     = Arrays.copyOf(this.second, this.size * 2);
+            this.similarity = Arrays.copyOf(this.similarity, this.size * 2);
+        }
+        this.first[this.size]      = a;
+        this.second[this.size]     = b;
+        this.similarity[this.size] = value;
+        this.size++;
+    }
+    private int length(int r) {
+        return this.offsets[r + 1] - this.offsets[r];
+    }
+    /*
+     * Overlap needed by two records of the given sizes.
+     */
+    private int overlap(int x, int y) {
+        return (int)Math.ceil(this.c * (x + y) - EPSILON);
+    }
+    /*
+     * Shortest record that can reach the threshold with a record of size x.
+     */
+    private int minLength(int x) {
+        return (int)Math.ceil(this.c * x / (1.0 - this.c) - EPSILON);
+    }
+    /*
+     * Prefix indexed for the longer records that come later.
+     */
+    private int indexPrefix(int r) {
+        int x = this.length(r);
+        return Math.max(0, Math.min(x, x - this.overlap(x, x) + 1));
+    }
+    /*
+     * Prefix probed against the shorter records that came before.
+     */
+    private int probePrefix(int r) {
+        int x = this.length(r);
+        return Math.max(0, Math.min(x, x - this.overlap(x, this.minLength(x)) + 1));
+    }
+    /*
+     * Similarity of two records from their overlap.
+     */
+    private double value(int x, int y, int overlap) {
+        return this.jaccard ? (double)overlap / (x + y - overlap) : (double)overlap / (x + y);
+    }
+    
+    /**
+     * Forks one Probe per worker and collects their pairs.
+     */
+    private static final class AllProbes extends RecursiveTask<List<Probe>> {
+        private final SimilarityJoin join;
+        private final int parallelism;
+        
+        AllProbes(SimilarityJoin join, int parallelism) {
+            this.join        = join;
+            this.parallelism = parallelism;
+        }
+        @Override
+        protected List<Probe> compute() {
+            AtomicInteger next  = new AtomicInteger();
+            List<Probe>   tasks = new ArrayList<Probe>();
+            for (int i = 0; i < this.parallelism; i++) {
+                Probe task = new Probe(this.join, next);
+                tasks.add(task);
+                task.fork();
+            }
+            for (Probe task : tasks)
+                task.join();
+            return tasks;
+        }
+    }
+    /**
+     * Takes blocks of records from a shared counter and probes each one against
+     * the records before it, keeping its own overlap counters and pairs.
+     */
+    private static final class Probe extends RecursiveTask<Probe> {
+        private static final int BLOCK = 256;
+        private final SimilarityJoin join;
+        private final AtomicInteger next;
+        private final int[] overlap;
+        private final int[] touched;
+        private int[]    first      = new int[16];
+        private int[]    second     = new int[16];
+        private double[] similarity = new double[16];
+        private int      size;
+        private long     candidates;
+        
+        Probe(SimilarityJoin join, AtomicInteger next) {
+            this.join    = join;
+            this.next    = next;
+            this.overlap = new int[join.records()];
+            this.touched = new int[join.records()];
+        }
+        @Override
+        protected Probe compute() {
+            int records = this.join.records();
+            int block;
+            while ((block = this.next.getAndAdd(BLOCK)) < records) {
+                for (int r = block; r < Math.min(block + BLOCK, records); r++)
+                    this.probe(r);
+            }
+            return this;
+        }
+        private void probe(int r) {
+            SimilarityJoin join = this.join;
+            int x       = join.length(r);
+            int base    = join.offsets[r];
+            int minimum = join.minLength(x);
+            int count   = 0;
+            for (int i = 0; i < join.probePrefix(r); i++) {
+                int t = join.tokens[base + i];
+                for (int p = join.postingOffsets[t]; p < join.postingOffsets[t + 1]; p++) {
+                    int s = join.postingRecords[p];
+                    if (s >= r)
+                        break;
+                    int y = join.length(s);
+                    if (y < minimum || this.overlap[s] < 0)
+                        continue;
+                    if (this.overlap[s] == 0)
+                        this.touched[count++] = s;
+                    // Positional filter: what is left after both positions...
+                    int bound = this.overlap[s] + 1 + Math.min(x - i - 1, y - join.postingPositions[p] - 1);
+                    if (bound >= join.overlap(x, y))
+                        this.overlap[s]++;
+                    else
+                        this.overlap[s] = Integer.MIN_VALUE;
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                int s = this.touched[k];
+                if (this.overlap[s] > 0)
+                    this.verify(r, s);
+                this.overlap[s] = 0;
+            }
+        }
+        private void verify(int r, int s) {
+            SimilarityJoin join = this.join;
+            this.candidates++;
+            int x = join.length(r), y = join.length(s);
+            int i = join.offsets[r], j = join.offsets[s], common = 0;
+            while (i < join.offsets[r + 1] && j < join.offsets[s + 1]) {
+                if (join.tokens[i] < join.tokens[j]) {
+                    i++;
+                } else if (join.tokens[i] > join.tokens[j]) {
+                    j++;
+                } else {
+                    common++;
+                    i++;
+                    j++;
+                }
+            }
+            double value = join.value(x, y, common);
+            if (value < join.threshold - EPSILON)
+                return;
+            int a = join.nodes[r], b = join.nodes[s];
+            if (join.graph.nodeId(a) > join.graph.nodeId(b)) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            if (this.size == this.first.length) {
+                this.first      = Arrays.copyOf(this.first, this.size * 2);
+                this.second     = Arrays.copyOf(this.second, this.size * 2);
+                this.similarity = Arrays.copyOf(this.similarity, this.size * 2);
+            }
+            this.first[this.size]      = a;
+            this.second[this.size]     = b;
+            this.similarity[this.size] = value;
+            this.size++;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Similarity Updater Class
+ * Keeps the IS_SIMILAR layer of Similarity current while the graph changes.
+ * A transaction event handler records the start node of every HAS_TERM and
+ * LIKES_TERM relationship created or deleted (the POI or Person whose terms
+ * changed); the nodes are queued, coalesced, and a background thread recomputes
+ * their IS_SIMILAR relationships, batchSize nodes per transaction.
+ *
+ * Only the pairs that contain a changed node can change, so for a node x every
+ * node sharing a neighbor with x is scored with the index of Similarity, read
+ * from the live graph: x gets an IS_SIMILAR relationship to each one at or above
+ * the threshold, and the other IS_SIMILAR relationships the updater wrote for x are
+ * deleted. Its relationships carry a "source" of "updater", the ones other writers
+ * made are never touched, and pairs between unchanged nodes are not either.
+ *
+ * A batch that fails is retried one node per transaction; a node that still fails
+ * MAX_FAILURES times is dropped, so one bad node does not hold the queue forever.
+ * @see Similarity
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class SimilarityUpdater extends TransactionEventHandler.Adapter<Set<Long>>
+    implements Runnable {
+    
+    private static final Map<GraphDatabaseService, SimilarityUpdater> updaters =
+        new WeakHashMap<GraphDatabaseService, SimilarityUpdater>();
+    
+    private static final long   RETRY_DELAY  = 1000;
+    private static final int    MAX_FAILURES = 3;
+    static final String         SOURCE       = "updater";
+    
+    private final GraphDatabaseService database;
+    private final double threshold;
+    private final int    batchSize;
+    private final Set<Long> queue = new LinkedHashSet<Long>();
+    private volatile boolean running = true;
+    private volatile long    nodesUpdated;
+    private volatile long    relationshipsWritten;
+    private volatile long    relationshipsDeleted;
+    private volatile long    nodesDropped;
+    private volatile String  error;
+    private Thread thread;
+    private long   written;
+    private long   deleted;
+    private final Map<Long, Integer> failures = new HashMap<Long, Integer>();
+    
+    private SimilarityUpdater(GraphDatabaseService database, double threshold, int batchSize) {
+        this.database  = database;
+        this.threshold = threshold;
+        this.batchSize = Math.max(1, batchSize);
+    }
+    /**
+     * Starts the updater of a database, or returns the one already running
+     * with the same settings.
+     * @param database:  the graph database.
+     * @param threshold: the minimum similarity of an IS_SIMILAR relationship.
+     * @param batchSize: the number of nodes recomputed per transaction.
+     * @throws IllegalStateException if it is running with other settings.
+     */
+    public static SimilarityUpdater start(GraphDatabaseService database, double threshold, int batchSize) {
+        synchronized (updaters) {
+            SimilarityUpdater updater = updaters.get(database);
+            if (updater == null) {
+                updater = new SimilarityUpdater(database, threshold, batchSize);
+                updater.thread = new Thread(updater, "hintplugin-similarity-updater");
+                updater.thread.setDaemon(true);
+                updater.thread.start();
+                database.registerTransactionEventHandler(updater);
+                updaters.put(database, updater);
+            } else if (updater.threshold != threshold || updater.batchSize != Math.max(1, batchSize)) {
+                throw new IllegalStateException("The similarity updater is running with threshold "
+                                                + updater.threshold + " and batchSize " + updater.batchSize
+                                                + ", stop it first");
+            }
+            return updater;
+        }
+    }
+    /**
+     * Returns the updater of a database, null if it is not running.
+     */
+    public static SimilarityUpdater get(GraphDatabaseService database) {
+        synchronized (updaters) {
+            return updaters.get(database);
+        }
+    }
+    /**
+     * Stops the updater of a database, the nodes still queued are dropped.
+     * Returns the stopped updater, null if none was running.
+     */
+    public static SimilarityUpdater stop(GraphDatabaseService database) {
+        synchronized (updaters) {
+            SimilarityUpdater updater = updaters.remove(database);
+            if (updater != null) {
+                database.unregisterTransactionEventHandler(updater);
+                updater.running = false;
+                updater.thread.interrupt();
+            }
+            return updater;
+        }
+    }
+    @Override
+    public Set<Long> beforeCommit(TransactionData data) throws Exception {
+        Set<Long> changed = null;
+        for (Relationship r : data.createdRelationships())
+            changed = this.changed(r, changed);
+        for (Relationship r : data.deletedRelationships())
+            changed = this.changed(r, changed);
+        return changed;
+    }
+    @Override
+    public void afterCommit(TransactionData data, Set<Long> changed) {
+        if (changed == null)
+            return;
+        synchronized (this.queue) {
+            this.queue.addAll(changed);
+            this.queue.notifyAll();
+        }
+    }
+    private Set<Long> changed(Relationship r, Set<Long> changed) {
+        if (!r.isType(GraphSnapshot.Rels.HAS_TERM) && !r.isType(GraphSnapshot.Rels.LIKES_TERM))
+            return changed;
+        if (changed == null)
+            changed = new HashSet<Long>();
+        changed.add(r.getStartNode().getId());
+        return changed;
+    }
+    @Override
+    public void run() {
+        while (this.running) {
+            long[] batch;
+            synchronized (this.queue) {
+                while (this.running && this.queue.isEmpty()) {
+                    try {
+                        this.queue.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!this.running)
+                    return;
+                batch = new long[Math.min(this.batchSize, this.queue.size())];
+                Iterator<Long> it = this.queue.iterator();
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = it.next();
+                    it.remove();
+                }
+            }
+            // The degrees of the candidates, read once per batch...
+            Map<Long, Integer> degrees = new HashMap<Long, Integer>();
+            if (this.commit(batch, degrees))
+                continue;
+            // Retry the nodes one by one, to keep the ones that fail apart...
+            boolean failed = false;
+            for (long node : batch) {
+                if (batch.length == 1 || !this.commit(new long[] {node}, degrees)) {
+                    this.failed(node);
+                    failed = true;
+                }
+            }
+            if (failed) {
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+    /*
+     * Recomputes some nodes in one transaction, returns whether it committed.
+     */
+    private boolean commit(long[] nodes, Map<Long, Integer> degrees) {
+        this.written = 0;
+        this.deleted = 0;
+        try {
+            Transaction tx = this.database.beginTx();
+            try {
+                for (long node : nodes)
+                    this.recompute(node, degrees);
+                tx.success();
+            } finally {
+                tx.close();
+            }
+        } catch (Exception ex) {
+            this.error = ex.toString();
+            System.err.println("utils.SimilarityUpdater Class: " + ex);
+            return false;
+        }
+        this.nodesUpdated         += nodes.length;
+        this.relationshipsWritten += this.written;
+        this.relationshipsDeleted += this.deleted;
+        if (!this.failures.isEmpty()) {
+            for (long node : nodes)
+                this.failures.remove(node);
+        }
+        return true;
+    }
+    /*
+     * Queues a node that failed on its own again, or drops it after MAX_FAILURES.
+     */
+    private void failed(long node) {
+        Integer count = this.failures.get(node);
+        count = (count == null) ? 1 : count + 1;
+        if (count >= MAX_FAILURES) {
+            this.failures.remove(node);
+            this.nodesDropped++;
+            System.err.println("utils.SimilarityUpdater Class: node " + node + " dropped after "
+                               + count + " failures");
+            return;
+        }
+        this.failures.put(node, count);
+        synchronized (this.queue) {
+            this.queue.add(node);
+        }
+    }
+    /*
+     * Rewrites the IS_SIMILAR relationships of one node, must run in a transaction.
+     */
+    private void recompute(long id, Map<Long, Integer> degrees) {
+        Node x;
+        try {
+            x = this.database.getNodeById(id);
+        } catch (NotFoundException e) {
+            return;
+        }
+        // Neighbors of x, with the relationships to each of them...
+        Map<Long, Integer> neighbors = new HashMap<Long, Integer>();
+        int degree = 0;
+        for (Relationship r : x.getRelationships()) {
+            if (!isContent(r))
+                continue;
+            long other = r.getOtherNode(x).getId();
+            Integer count = neighbors.get(other);
+            neighbors.put(other, count == null ? 1 : count + 1);
+            degree++;
+        }
+        degrees.put(id, degree);
+        // Intersections with every node two hops away...
+        Map<Long, Long> intersections = new HashMap<Long, Long>();
+        for (Map.Entry<Long, Integer> neighbor : neighbors.entrySet()) {
+            Node t = this.database.getNodeById(neighbor.getKey());
+            for (Relationship r : t.getRelationships()) {
+                if (!isContent(r))
+                    continue;
+                long y = r.getOtherNode(t).getId();
+                if (y == id)
+                    continue;
+                Long count = intersections.get(y);
+                intersections.put(y, (count == null ? 0L : count) + neighbor.getValue());
+            }
+        }
+        Map<Long, Double> similar = new HashMap<Long, Double>();
+        for (Map.Entry<Long, Long> candidate : intersections.entrySet()) {
+            Integer other = degrees.get(candidate.getKey());
+            if (other == null) {
+                other = contentDegree(this.database.getNodeById(candidate.getKey()));
+                degrees.put(candidate.getKey(), other);
+            }
+            double similarity = (double)candidate.getValue() / (degree + other);
+            if (similarity >= this.threshold)
+                similar.put(candidate.getKey(), similarity);
+        }
+        // Update, delete, then create, only the relationships of the updater...
+        for (Relationship r : x.getRelationships(GraphSnapshot.Rels.IS_SIMILAR)) {
+            if (!SOURCE.equals(r.getProperty(MinHash.SOURCE, null)))
+                continue;
+            Double similarity = similar.remove(r.getOtherNode(x).getId());
+            if (similarity == null) {
+                r.delete();
+                this.deleted++;
+            } else {
+                r.setProperty("similarity", similarity);
+            }
+        }
+        for (Map.Entry<Long, Double> pair : similar.entrySet()) {
+            Relationship rs = x.createRelationshipTo(this.database.getNodeById(pair.getKey()),
+                                                     GraphSnapshot.Rels.IS_SIMILAR);
+            rs.setProperty(MinHash.SOURCE, SOURCE);
+            rs.setProperty("similarity", pair.getValue());
+            this.written++;
+        }
+    }
+    /*
+     * The relationships Similarity counts, the derived layers are not.
+     */
+    private static boolean isContent(Relationship r) {
+        return !r.isType(GraphSnapshot.Rels.IS_SIMILAR) && !r.isType(GraphSnapshot.Rels.MAX_FLOW);
+    }
+    private static int contentDegree(Node node) {
+        int degree = 0;
+        for (Relationship r : node.getRelationships()) {
+            if (isContent(r))
+                degree++;
+        }
+        return degree;
+    }
+    public double getThreshold() {
+        return this.threshold;
+    }
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+    /**
+     * Number of nodes waiting to be recomputed.
+     */
+    public int getQueued() {
+        synchronized (this.queue) {
+            return this.queue.size();
+        }
+    }
+    public long getNodesUpdated() {
+        return this.nodesUpdated;
+    }
+    public long getRelationshipsWritten() {
+        return this.relationshipsWritten;
+    }
+    public long getRelationshipsDeleted() {
+        return this.relationshipsDeleted;
+    }
+    /**
+     * Number of nodes given up on after MAX_FAILURES failed recomputations.
+     */
+    public long getNodesDropped() {
+        return this.nodesDropped;
+    }
+    public String getError() {
+        return this.error;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+/**
+ * Snapshot Class
+ * RESTful access to the shared in-memory GraphSnapshot.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+@Path("/snapshot")
+public class Snapshot {
+    
+    private final GraphDatabaseService database;
+    /*
+     * The Public constructor.
+     */
+    public Snapshot(@Context GraphDatabaseService database) {
+        this.database = database;
+    }
+    /*
+     * Returns the size of the current snapshot (builds it if needed).
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response snapshot() {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            this.describe(GraphSnapshot.get(this.database), obj);
+        } catch (Exception ex) {
+            System.err.println("utils.Snapshot Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Rebuilds the snapshot from the database,
+     * call it after bulk loads so the endpoints see the new graph.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/refresh")
+    public Response refresh() {
+        Gson       gson = new GsonBuilder().create();
+        JsonObject obj  = new JsonObject();
+        try{
+            long startTime = System.currentTimeMillis();
+            this.describe(GraphSnapshot.refresh(this.database), obj);
+            obj.addProperty("computedSeconds", (System.currentTimeMillis() - startTime)/1000.0);
+        } catch (Exception ex) {
+            System.err.println("utils.Snapshot Class: " + ex);
+        }
+        return Response.ok(gson.toJson(obj), MediaType.APPLICATION_JSON).build();
+    }
+    /*
+     * Adds the snapshot counters to a JSON object.
+     */
+    private void describe(GraphSnapshot snapshot, JsonObject obj) {
+        obj.addProperty("nodes",         snapshot.size());
+        obj.addProperty("relationships", snapshot.relationshipCount());
+        for (GraphSnapshot.Rels type : GraphSnapshot.Rels.values()) {
+            obj.addProperty(type.name(), snapshot.relationshipCount(type));
+        }
+        obj.addProperty("builtAt",       snapshot.builtAt());
+    }
+}
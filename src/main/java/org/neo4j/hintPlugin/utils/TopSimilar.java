@@ -0,0 +1,218 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+/**
+ * TopSimilar Class
+ * Finds the k nodes most similar to one node by the Jaccard index of Similarity.
+ * The adjacency of every neighbor in the GraphSnapshot is used as an inverted
+ * index (Term -> the POIs and Persons related to it), so only the nodes that
+ * share at least one neighbor are scored. Intersections are accumulated in a
+ * dense int array and the best k are kept in a bounded min-heap. The dense
+ * arrays belong to the calling thread and are reused from query to query, only
+ * the entries a query touched are cleared after it.
+ * @see Similarity
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class TopSimilar {
+    private final int[]    nodes;
+    private final long[]   intersections;
+    private final double[] similarities;
+    
+    /**
+     * The score and touched arrays of a thread, grown to the largest snapshot seen.
+     */
+    private static final class Buffers {
+        int[] score   = new int[0];
+        int[] touched = new int[0];
+    }
+    private static final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+    
+    private TopSimilar(int[] nodes, long[] intersections, double[] similarities) {
+        this.nodes         = nodes;
+        this.intersections = intersections;
+        this.similarities  = similarities;
+    }
+    /**
+     * Scores every node that shares a neighbor with v and keeps the best k.
+     * @param graph: the snapshot to read.
+     * @param v:     the node index.
+     * @param k:     the number of nodes to return.
+     */
+    public static TopSimilar of(GraphSnapshot graph, int v, int k) {
+        Buffers buffer = buffers.get();
+        if (buffer.score.length < graph.size()) {
+            buffer.score   = new int[graph.size()];
+            buffer.touched = new int[graph.size()];
+        }
+        int[] score = buffer.score;
+        int   count = 0;
+        try {
+            count = scores(graph, v, score, buffer.touched);
+            return top(graph, v, k, score, buffer.touched, count);
+        } finally {
+            // Leave the buffer zeroed for the next query...
+            for (int i = 0; i < count; i++)
+                score[buffer.touched[i]] = 0;
+        }
+    }
+    /*
+     * Counts the neighbors every node shares with v, returns how many were touched.
+     */
+    private static int scores(GraphSnapshot graph, int v, int[] score, int[] touched) {
+        int count = 0;
+        // Walk the posting list of every neighbor of v...
+        for (int slot : Neighborhood.SLOTS) {
+            for (int e = graph.begin(v, slot); e < graph.end(v, slot); e++) {
+                int t = graph.target(e);
+                for (int s : Neighborhood.SLOTS) {
+                    for (int f = graph.begin(t, s); f < graph.end(t, s); f++) {
+                        int u = graph.target(f);
+                        if (u == v)
+                            continue;
+                        if (score[u]++ == 0)
+                            touched[count++] = u;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+    /*
+     * The k best of the touched nodes.
+     */
+    private static TopSimilar top(GraphSnapshot graph, int v, int k, int[] score, int[] touched, int count) {
+        int degree = degree(graph, v);
+        // Bounded min-heap, the worst of the best k at the root...
+        k = Math.max(0, Math.min(k, count));
+        int[]    heap  = new int[k];
+        double[] value = new double[k];
+        int      size  = 0;
+        for (int i = 0; i < count; i++) {
+            int    u          = touched[i];
+            double similarity = (double)score[u] / (degree + degree(graph, u));
+            if (size < k) {
+                heap[size]  = u;
+                value[size] = similarity;
+                up(heap, value, size++, graph);
+            } else if (k > 0 && better(similarity, u, value[0], heap[0], graph)) {
+                heap[0]  = u;
+                value[0] = similarity;
+                down(heap, value, size, graph);
+            }
+        }
+        // Pop from the heap, best last...
+        int[]    nodes         = new int[size];
+        long[]   intersections = new long[size];
+        double[] similarities  = new double[size];
+        for (int i = size - 1; i >= 0; i--) {
+            nodes[i]         = heap[0];
+            intersections[i] = score[heap[0]];
+            similarities[i]  = value[0];
+            heap[0]  = heap[i];
+            value[0] = value[i];
+            down(heap, value, i, graph);
+        }
+        return new TopSimilar(nodes, intersections, similarities);
+    }
+    /**
+     * Number of nodes returned.
+     */
+    public int size() {
+        return this.nodes.length;
+    }
+    /**
+     * The node index of the i-th most similar node.
+     */
+    public int node(int i) {
+        return this.nodes[i];
+    }
+    /**
+     * The number of neighbors shared with the i-th most similar node.
+     */
+    public long intersection(int i) {
+        return this.intersections[i];
+    }
+    /**
+     * The Jaccard index of the i-th most similar node.
+     */
+    public double similarity(int i) {
+        return this.similarities[i];
+    }
+    /**
+     * Number of content relationships of v, the size of its Neighborhood.
+     */
+    static int degree(GraphSnapshot graph, int v) {
+        int degree = 0;
+        for (int slot : Neighborhood.SLOTS)
+            degree += graph.end(v, slot) - graph.begin(v, slot);
+        return degree;
+    }
+    /*
+     * Higher similarity first, then the lower node id.
+     */
+    private static boolean better(double a, int u, double b, int w, GraphSnapshot graph) {
+        if (a != b)
+            return a > b;
+        return graph.nodeId(u) < graph.nodeId(w);
+    }
+    private static void up(int[] heap, double[] value, int i, GraphSnapshot graph) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(value[parent], heap[parent], value[i], heap[i], graph))
+                return;
+            swap(heap, value, i, parent);
+            i = parent;
+        }
+    }
+    private static void down(int[] heap, double[] value, int size, GraphSnapshot graph) {
+        int i = 0;
+        while (true) {
+            int worst = i, l = 2 * i + 1, r = l + 1;
+            if (l < size && better(value[worst], heap[worst], value[l], heap[l], graph))
+                worst = l;
+            if (r < size && better(value[worst], heap[worst], value[r], heap[r], graph))
+                worst = r;
+            if (worst == i)
+                return;
+            swap(heap, value, i, worst);
+            i = worst;
+        }
+    }
+    private static void swap(int[] heap, double[] value, int i, int j) {
+        int    h = heap[i];
+        double d = value[i];
+        heap[i]  = heap[j];
+        value[i] = value[j];
+        heap[j]  = h;
+        value[j] = d;
+    }
+}
@@ -79,26 +79,25 @@ public class WPOI {
      */
     private double getWPOI(long targetNodeId){
         double wpoi = 0.0;
-        double similaritySum = 0.0;
-        double similarityCount = 0.0;
+        NodeAggregates aggregates = NodeAggregates.get(this.database);
+        double similaritySum   = aggregates.similaritySum(targetNodeId);
+        double similarityCount = aggregates.similarityCount(targetNodeId);
         Transaction tx = database.beginTx();
         try {
             Node targetNode  = database.getNodeById(targetNodeId);
-            for (Relationship rel : targetNode.getRelationships()){
-                if(rel.hasProperty("similarity")){
-                    similaritySum += (Double)rel.getProperty("similarity");
-                    similarityCount++;
-                }
-            }
-            if(targetNode.hasProperty("predgraph")){
-                wpoi = (similaritySum/similarityCount) * (Double)targetNode.getProperty("predgraph");
-            }
-            targetNode.setProperty("wpoi",wpoi);
+            // The "predgraph" written by Predgraph, 0 until it was...
+            double predgraph = GraphSnapshot.weightOf(targetNode, "predgraph");
+            if (similarityCount > 0 && !Double.isNaN(predgraph))
+                wpoi = (similaritySum/similarityCount) * predgraph;
+            // Only write when it changed...
+            if (!Double.valueOf(wpoi).equals(targetNode.getProperty("wpoi", null)))
+                targetNode.setProperty("wpoi",wpoi);
             tx.success();
         } catch (Exception e){
             System.out.println(e);
         } finally {
+            tx.close();
         }
         return wpoi;
     }
-}
\ No newline at end of file
+}
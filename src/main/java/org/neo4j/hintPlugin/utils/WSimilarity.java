@@ -38,11 +38,7 @@ import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Node;
-import org.neo4j.helpers.collection.IteratorUtil;
 import java.lang.Math;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Arrays;
 
 @Path("/wsimilarity")
 public class WSimilarity {
@@ -75,11 +71,15 @@ public class WSimilarity {
         double jaccardWSimilarity = 0.0;
         Gson       gson = new GsonBuilder().create();
         JsonObject obj  = new JsonObject();
-        jaccardWSimilarity = this.getJaccardSimilarity(node_a,node_b);
-        euclideanDistance  = this.getEuclideanSimilarity(node_a,node_b);
         try{
+            jaccardWSimilarity = this.getJaccardSimilarity(node_a,node_b);
+            euclideanDistance  = this.getEuclideanSimilarity(node_a,node_b);
+            GraphSnapshot graph   = GraphSnapshot.get(this.database);
+            WeightVectors weights = WeightVectors.of(graph);
             obj.addProperty("jaccardWSimilarity", jaccardWSimilarity);
             obj.addProperty("euclideanWSimilarity",euclideanDistance);
+            obj.addProperty("cosineWSimilarity",  weights.cosine(graph.indexOf(node_a), graph.indexOf(node_b)));
+            obj.addProperty("pearsonWSimilarity", weights.pearson(graph.indexOf(node_a), graph.indexOf(node_b)));
             obj.addProperty("nodeStart",    node_a);
             obj.addProperty("nodeEnd",      node_b);
             obj.addProperty("threshold",    this.threshold);
@@ -96,44 +96,21 @@ public class WSimilarity {
      */
     private double getJaccardSimilarity (long node_a, long node_b) {
         double similarity       = 0.0;
-        double nodeUnion        = 0.0;
-        double nodeIntersection = 0.0;
+        GraphSnapshot graph = GraphSnapshot.get(this.database);
+        int a = graph.indexOf(node_a);
+        int b = graph.indexOf(node_b);
+        if (a < 0 || b < 0)
+            throw new IllegalArgumentException("Node " + (a < 0 ? node_a : node_b) + " is not in the snapshot");
+        similarity = jaccard(graph, a, b);
         Transaction tx = database.beginTx();
         try {
             this.node_a = database.getNodeById(node_a);
             this.node_b = database.getNodeById(node_b);
-            //Union;
-            for (Relationship a: this.node_a.getRelationships()) {
-                if(a.hasProperty("weight"))
-                    nodeUnion = new Double(a.getProperty("weight").toString()) + nodeUnion;
-            }
-            for (Relationship b: this.node_b.getRelationships()) {
-                if(b.hasProperty("weight"))
-                    nodeUnion = new Double(b.getProperty("weight").toString()) + nodeUnion;
-            }
-            //Intersection;
-            for (Relationship a: this.node_a.getRelationships()) {
-                for (Relationship b: this.node_b.getRelationships()) {
-                    if(a.hasProperty("weight") && b.hasProperty("weight")){
-                        if(a.getEndNode().getId() == b.getEndNode().getId()){
-                            nodeIntersection = new Double(a.getProperty("weight").toString()) +
-                            new Double(b.getProperty("weight").toString()) + nodeIntersection;
-                        }
-                    }
-                }
-            }
-            //Jaccard Index...
-            if (Math.abs(nodeUnion) >= 0) {
-                similarity = Math.abs(nodeIntersection)/Math.abs(nodeUnion);
-                //              similarity = Math.round((similarity * 100.0)/100.0);
-            } else {
-                similarity = 1.0;
-            }
             //Destroy any "similarity" relationships... (if any)
             for (Relationship r: this.node_a.getRelationships(MyRelationshipTypes.IS_SIMILAR)){
                 r.delete();
             }
-            if(similarity >= 0.5){
+            if(similarity >= this.threshold){
                 Relationship rs = this.node_a.createRelationshipTo(this.node_b, MyRelationshipTypes.IS_SIMILAR);
                 rs.setProperty("similarity", similarity);
             }
@@ -145,57 +122,51 @@ public class WSimilarity {
         }
         return Math.round(Math.abs(similarity)*100.0)/100.0;
     }
+    /*
+     * Weighted Jaccard index of two snapshot nodes, no rounding.
+     * @param graph: the snapshot to read.
+     * @param a:     the first node index.
+     * @param b:     the second node index.
+     */
+    static double jaccard(GraphSnapshot graph, int a, int b) {
+        double nodeUnion        = 0.0;
+        double nodeIntersection = 0.0;
+        Neighborhood neighborsA = Neighborhood.of(graph, a);
+        Neighborhood neighborsB = Neighborhood.of(graph, b);
+        //Union;
+        nodeUnion = neighborsA.weightSum() + neighborsB.weightSum();
+        //Intersection, weights aligned by neighbor;
+        nodeIntersection = Neighborhood.weightedIntersection(neighborsA, neighborsB);
+        //Jaccard Index...
+        if (Math.abs(nodeUnion) > 0)
+            return Math.abs(nodeIntersection)/Math.abs(nodeUnion);
+        return 0.0;
+    }
     /*
      * Calculates Similarity between to nodes using Eucliean Distance...
-     * @param array1:
-     * @param array2:
+     * The weight vectors are aligned by neighbor, a term missing in one of them weighs 0.
+     * @param nodeA:       the start node to calculate similarity.
+     * @param nodeB:       the end node to calculate similarity.
      */
     private double getEuclideanSimilarity(long nodeA, long nodeB){
         double similarity = 0.0;
         double euclideanDistance = 0.0;
-        double[] array1 = null;
-        double[] array2 = null;
-        int nodeADegree = 0;
-        int nodeBDegree = 0;
-        int i = 0,j=0;
+        GraphSnapshot graph = GraphSnapshot.get(this.database);
+        int a = graph.indexOf(nodeA);
+        int b = graph.indexOf(nodeB);
+        if (a < 0 || b < 0)
+            throw new IllegalArgumentException("Node " + (a < 0 ? nodeA : nodeB) + " is not in the snapshot");
+        euclideanDistance = WeightVectors.of(graph).euclidean(a, b);
+        similarity = Math.round(Math.abs(1/(1+euclideanDistance))*100.0)/100.0;
         Transaction tx = database.beginTx();
         try {
             this.node_a = database.getNodeById(nodeA);
             this.node_b = database.getNodeById(nodeB);
-            for (Relationship a: this.node_a.getRelationships()) {
-                nodeADegree++;
-            }
-            for (Relationship b: this.node_b.getRelationships()) {
-                nodeBDegree++;
-            }
-            if(nodeADegree >= nodeBDegree){
-                array1 = new double[nodeADegree];
-                array2 = new double[nodeADegree];
-            } else if (nodeADegree <= nodeBDegree) {
-                array1 = new double[nodeBDegree];
-                array2 = new double[nodeBDegree];
-            }
-            
-            Arrays.fill(array1,0.0);
-            Arrays.fill(array2,0.0);
-            
-            for (Relationship a: this.node_a.getRelationships()) {
-                if(a.hasProperty("weight"))
-                    array1[i] = new Double(a.getProperty("weight").toString()).doubleValue();
-                i++;
-            }
-            for (Relationship b: this.node_b.getRelationships()) {
-                if(b.hasProperty("weight"))
-                    array2[j] = new Double(b.getProperty("weight").toString()).doubleValue();
-                j++;
-            }
-            euclideanDistance = this.euclideanDistance(array1,array2);
-            similarity = Math.round(Math.abs(1/(1+euclideanDistance))*100.0)/100.0;
             //Destroy any "similarity" relationships... (if any)
             for (Relationship r: this.node_a.getRelationships(MyRelationshipTypes.IS_SIMILAR)){
                 r.delete();
             }
-            if(similarity >= 0.5){
+            if(similarity >= this.threshold){
                 Relationship rs = this.node_a.createRelationshipTo(this.node_b, MyRelationshipTypes.IS_SIMILAR);
                 rs.setProperty("similarity", similarity);
             }
@@ -207,16 +178,4 @@ public class WSimilarity {
         }
         return similarity;
     }
-    /*
-     * Calculates the Euclidean Distance Between to set of nodes.
-     * @param array1:
-     * @param array2:
-     */
-    private double euclideanDistance(double[] array1, double[] array2) {
-        double sum = 0.0;
-        for(int i=0; i < array1.length; i++) {
-            sum = sum + Math.pow((array1[i]-array2[i]),2.0);
-        }
-        return Math.sqrt(sum);
-    }
-}
\ No newline at end of file
+}
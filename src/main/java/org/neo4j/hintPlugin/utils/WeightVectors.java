@@ -0,0 +1,189 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.hintplugin.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Weight Vectors Class
+ * The "weight" of the relationships of every node as a sparse vector keyed by
+ * neighbor: sorted neighbor indices with the summed weight to each of them
+ * (missing weights count as 0), built once per GraphSnapshot in CSR form.
+ * Two vectors are aligned by neighbor with a merge-join, so the Euclidean,
+ * cosine and Pearson measures compare the same terms and allocate nothing.
+ * Neighbors are the ones of Neighborhood.
+ * @see WSimilarity
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public final class WeightVectors {
+    private static final Map<GraphSnapshot, WeightVectors> vectors =
+        new WeakHashMap<GraphSnapshot, WeightVectors>();
+    
+    private final int[]    offsets;
+    private final int[]    keys;
+    private final double[] values;
+    private final double[] sums;
+    private final double[] squares;
+    
+    private WeightVectors(GraphSnapshot graph) {
+        int n = graph.size();
+        int[]    keys   = new int[Math.max(16, 2 * graph.relationshipCount())];
+        double[] values = new double[keys.length];
+        this.offsets = new int[n + 1];
+        this.sums    = new double[n];
+        this.squares = new double[n];
+        int e = 0;
+        for (int v = 0; v < n; v++) {
+            Neighborhood neighborhood = Neighborhood.of(graph, v);
+            for (int i = 0; i < neighborhood.size(); i++) {
+                if (i == 0 || neighborhood.node(i) != neighborhood.node(i - 1)) {
+                    if (e == keys.length) {
+                        keys   = Arrays.copyOf(keys, 2 * e);
+                        values = Arrays.copyOf(values, 2 * e);
+                    }
+                    keys[e++] = neighborhood.node(i);
+                }
+                if (!Double.isNaN(neighborhood.weight(i)))
+                    values[e - 1] += neighborhood.weight(i);
+            }
+            this.offsets[v + 1] = e;
+            for (int k = this.offsets[v]; k < e; k++) {
+                this.sums[v]    += values[k];
+                this.squares[v] += values[k] * values[k];
+            }
+        }
+        this.keys   = Arrays.copyOf(keys, e);
+        this.values = Arrays.copyOf(values, e);
+    }
+    /**
+     * Returns the cached vectors of a snapshot, building them if needed.
+     */
+    public static WeightVectors of(GraphSnapshot graph) {
+        synchronized (vectors) {
+            WeightVectors weights = vectors.get(graph);
+            if (weights == null) {
+                weights = new WeightVectors(graph);
+                vectors.put(graph, weights);
+            }
+            return weights;
+        }
+    }
+    /**
+     * Number of distinct neighbors of v.
+     */
+    public int size(int v) {
+        return this.offsets[v + 1] - this.offsets[v];
+    }
+    /**
+     * Sum of the weights of v.
+     */
+    public double sum(int v) {
+        return this.sums[v];
+    }
+    /**
+     * Euclidean norm of v.
+     */
+    public double norm(int v) {
+        return Math.sqrt(this.squares[v]);
+    }
+    /**
+     * Dot product of two vectors.
+     */
+    public double dot(int a, int b) {
+        double dot = 0.0;
+        int i = this.offsets[a], iEnd = this.offsets[a + 1];
+        int j = this.offsets[b], jEnd = this.offsets[b + 1];
+        while (i < iEnd && j < jEnd) {
+            if (this.keys[i] < this.keys[j]) {
+                i++;
+            } else if (this.keys[i] > this.keys[j]) {
+                j++;
+            } else {
+                dot += this.values[i++] * this.values[j++];
+            }
+        }
+        return dot;
+    }
+    /**
+     * Euclidean distance of two vectors, over the union of their neighbors.
+     */
+    public double euclidean(int a, int b) {
+        double sum = 0.0;
+        int i = this.offsets[a], iEnd = this.offsets[a + 1];
+        int j = this.offsets[b], jEnd = this.offsets[b + 1];
+        while (i < iEnd && j < jEnd) {
+            double d;
+            if (this.keys[i] < this.keys[j]) {
+                d = this.values[i++];
+            } else if (this.keys[i] > this.keys[j]) {
+                d = this.values[j++];
+            } else {
+                d = this.values[i++] - this.values[j++];
+            }
+            sum += d * d;
+        }
+        for (; i < iEnd; i++)
+            sum += this.values[i] * this.values[i];
+        for (; j < jEnd; j++)
+            sum += this.values[j] * this.values[j];
+        return Math.sqrt(sum);
+    }
+    /**
+     * Cosine of two vectors, 0 if one of them is all zeros.
+     */
+    public double cosine(int a, int b) {
+        double norms = this.norm(a) * this.norm(b);
+        return norms > 0.0 ? this.dot(a, b) / norms : 0.0;
+    }
+    /**
+     * Pearson correlation of two vectors over the union of their neighbors,
+     * a neighbor missing in one of them counts as 0. Returns 0 if one of them is constant.
+     */
+    public double pearson(int a, int b) {
+        double dot = 0.0;
+        int common = 0;
+        int i = this.offsets[a], iEnd = this.offsets[a + 1];
+        int j = this.offsets[b], jEnd = this.offsets[b + 1];
+        while (i < iEnd && j < jEnd) {
+            if (this.keys[i] < this.keys[j]) {
+                i++;
+            } else if (this.keys[i] > this.keys[j]) {
+                j++;
+            } else {
+                dot += this.values[i++] * this.values[j++];
+                common++;
+            }
+        }
+        double n  = this.size(a) + this.size(b) - common;
+        double va = n * this.squares[a] - this.sums[a] * this.sums[a];
+        double vb = n * this.squares[b] - this.sums[b] * this.sums[b];
+        if (!(va > 0.0 && vb > 0.0))
+            return 0.0;
+        return (n * dot - this.sums[a] * this.sums[b]) / Math.sqrt(va * vb);
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.centrality.Brandes;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Brandes Test Class
+ * Checks the exact betweenness against the definition: the sum, over every
+ * unordered pair {s, t}, of the fraction of the shortest s-t paths through v.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class BrandesTest {
+    private static final GraphSnapshot.Rels KNOWS = GraphSnapshot.Rels.KNOWS;
+    
+    @Test
+    public void shouldCountTheMiddleOfAPath() {
+        GraphSnapshot graph = RandomGraphs.of(3, new int[] {0, 1}, new int[] {1, 2},
+                                              new int[] {KNOWS.ordinal(), KNOWS.ordinal()},
+                                              new double[] {1.0, 1.0});
+        double[] betweenness = Brandes.compute(graph, KNOWS, false, 1);
+        assertEquals(0.0, betweenness[0], 1e-12);
+        assertEquals(1.0, betweenness[1], 1e-12);
+        assertEquals(0.0, betweenness[2], 1e-12);
+    }
+    
+    @Test
+    public void shouldMatchTheDefinitionUnweighted() {
+        this.compare(false);
+    }
+    
+    @Test
+    public void shouldMatchTheDefinitionWeighted() {
+        this.compare(true);
+    }
+    
+    @Test
+    public void shouldNotDependOnTheParallelism() {
+        Random random = new Random(4);
+        for (int it = 0; it < 10; it++) {
+            int n = 50 + random.nextInt(400);
+            GraphSnapshot graph = RandomGraphs.of(random, n, random.nextInt(4 * n), KNOWS, 4);
+            boolean  weighted = it % 2 == 0;
+            double[] expected = Brandes.compute(graph, KNOWS, weighted, 1);
+            for (int parallelism = 2; parallelism <= 8; parallelism *= 2) {
+                double[] betweenness = Brandes.compute(graph, KNOWS, weighted, parallelism);
+                for (int v = 0; v < n; v++)
+                    assertEquals("node " + v, expected[v], betweenness[v], 1e-9 * Math.max(1.0, expected[v]));
+            }
+        }
+    }
+    
+    @Test
+    public void shouldStayWithinTheErrorBound() {
+        Random random = new Random(6);
+        GraphSnapshot graph = RandomGraphs.of(random, 500, 2000, KNOWS, 0);
+        double[] exact    = Brandes.compute(graph, KNOWS, false, 2);
+        double[] estimate = Brandes.sample(graph, KNOWS, false, 200, 2, new Random(1));
+        double   bound    = Brandes.errorBound(graph, 200, 0.99);
+        for (int v = 0; v < graph.size(); v++)
+            assertTrue("node " + v, Math.abs(estimate[v] - exact[v]) <= bound);
+    }
+    
+    @Test
+    public void shouldDeriveThePivotsFromEpsilon() {
+        // ln(2 / 0.05) / (2 * 0.01^2) = 18444.4
+        assertEquals(18445, Brandes.samplesFor(0.01, 0.95));
+        for (double[] invalid : new double[][] {{0.0, 0.95}, {-0.1, 0.95}, {0.1, 0.0}, {0.1, 1.0}, {0.1, 1.5}}) {
+            try {
+                Brandes.samplesFor(invalid[0], invalid[1]);
+                fail("epsilon " + invalid[0] + ", confidence " + invalid[1]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+    
+    private void compare(boolean weighted) {
+        Random random = new Random(3);
+        for (int it = 0; it < 60; it++) {
+            int n = 1 + random.nextInt(25);
+            GraphSnapshot graph = RandomGraphs.of(random, n, random.nextInt(3 * n), KNOWS, 4);
+            double[] expected    = definition(graph, weighted);
+            double[] betweenness = Brandes.compute(graph, KNOWS, weighted, 1);
+            for (int v = 0; v < n; v++)
+                assertEquals("node " + v, expected[v], betweenness[v], 1e-9 * Math.max(1.0, expected[v]));
+        }
+    }
+    /*
+     * All-pairs distances and shortest path counts, then the pair dependencies.
+     */
+    private static double[] definition(GraphSnapshot graph, boolean weighted) {
+        int n = graph.size();
+        double[][] dist  = new double[n][n];
+        double[][] sigma = new double[n][n];
+        for (int s = 0; s < n; s++) {
+            Arrays.fill(dist[s], Double.POSITIVE_INFINITY);
+            dist[s][s] = 0.0;
+            for (int e = graph.begin(s, KNOWS); e < graph.end(s, KNOWS); e++)
+                dist[s][graph.target(e)] = Math.min(dist[s][graph.target(e)], length(graph, e, weighted));
+        }
+        for (int k = 0; k < n; k++)
+            for (int s = 0; s < n; s++)
+                for (int t = 0; t < n; t++)
+                    dist[s][t] = Math.min(dist[s][t], dist[s][k] + dist[k][t]);
+        for (int s = 0; s < n; s++) {
+            Integer[] order = new Integer[n];
+            for (int t = 0; t < n; t++)
+                order[t] = t;
+            final double[] from = dist[s];
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(from[a], from[b]);
+                }
+            });
+            sigma[s][s] = 1.0;
+            for (int t : order) {
+                if (t == s || Double.isInfinite(dist[s][t]))
+                    continue;
+                for (int e = graph.begin(t, KNOWS); e < graph.end(t, KNOWS); e++) {
+                    int u = graph.target(e);
+                    if (dist[s][u] + length(graph, e, weighted) == dist[s][t])
+                        sigma[s][t] += sigma[s][u];
+                }
+            }
+        }
+        double[] betweenness = new double[n];
+        for (int s = 0; s < n; s++)
+            for (int t = s + 1; t < n; t++) {
+                if (Double.isInfinite(dist[s][t]))
+                    continue;
+                for (int v = 0; v < n; v++)
+                    if (v != s && v != t && dist[s][v] + dist[v][t] == dist[s][t])
+                        betweenness[v] += sigma[s][v] * sigma[v][t] / sigma[s][t];
+            }
+        return betweenness;
+    }
+    private static double length(GraphSnapshot graph, int e, boolean weighted) {
+        return weighted ? graph.weight(e) : 1.0;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.centrality.Closenesses;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Closenesses Test Class
+ * Checks the sums of the all-nodes closeness against one BFS per node, and
+ * the average distance sampled from pivots against its error bound.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class ClosenessesTest {
+    private static final GraphSnapshot.Rels KNOWS = GraphSnapshot.Rels.KNOWS;
+    
+    @Test
+    public void shouldMatchOneSearchPerNode() {
+        Random random = new Random(9);
+        for (int it = 0; it < 50; it++) {
+            int n = 1 + random.nextInt(120);
+            GraphSnapshot graph = RandomGraphs.of(random, n, random.nextInt(2 * n + 1), KNOWS, 0);
+            Closenesses.Result result = Closenesses.compute(graph, KNOWS, false, 1 + it % 3);
+            int[] dist = new int[n];
+            for (int v = 0; v < n; v++) {
+                bfs(graph, v, dist);
+                int reached = 0;
+                double farness = 0.0, harmonic = 0.0;
+                for (int w = 0; w < n; w++) {
+                    if (dist[w] < 0)
+                        continue;
+                    reached++;
+                    farness += dist[w];
+                    if (w != v)
+                        harmonic += 1.0 / dist[w];
+                }
+                assertEquals(reached, result.reached(v));
+                assertEquals(farness, result.farness(v), 1e-9);
+                assertEquals((n > 1) ? harmonic / (n - 1) : 0.0, result.harmonic(v), 1e-12);
+            }
+        }
+    }
+    
+    @Test
+    public void shouldScoreEveryVariant() {
+        // A star of four leaves and an isolated pair...
+        int knows = KNOWS.ordinal();
+        GraphSnapshot graph = RandomGraphs.of(7, new int[] {0, 0, 0, 0, 5}, new int[] {1, 2, 3, 4, 6},
+                                              new int[] {knows, knows, knows, knows, knows},
+                                              new double[] {1, 1, 1, 1, 1});
+        Closenesses.Result result = Closenesses.compute(graph, KNOWS, false, 1);
+        assertEquals(1.0,       result.standard(0),       1e-12);
+        assertEquals(4.0 / 6.0, result.harmonic(0),       1e-12);
+        assertEquals(4.0 / 6.0, result.wassermanFaust(0), 1e-12);
+        assertEquals(4.0 / 7.0, result.standard(1),       1e-12);
+        assertEquals(2.5 / 6.0, result.harmonic(1),       1e-12);
+        assertEquals(1.0,       result.standard(5),       1e-12);
+        assertEquals(1.0 / 6.0, result.harmonic(5),       1e-12);
+        assertEquals(1.0 / 6.0, result.wassermanFaust(5), 1e-12);
+    }
+    @Test
+    public void shouldStayWithinTheErrorBound() {
+        // A ring with short chords, so distances are long enough to sample...
+        Random random = new Random(1);
+        int n = 2000, m = 6000;
+        int[] start = new int[m], end = new int[m], type = new int[m];
+        double[] weight = new double[m];
+        for (int r = 0; r < m; r++) {
+            start[r]  = random.nextInt(n);
+            end[r]    = (start[r] + 1 + random.nextInt(30)) % n;
+            type[r]   = KNOWS.ordinal();
+            weight[r] = Double.NaN;
+        }
+        GraphSnapshot graph = RandomGraphs.of(n, start, end, type, weight);
+        Closenesses.Result exact    = Closenesses.compute(graph, KNOWS, false, 2);
+        Closenesses.Result estimate = Closenesses.sample(graph, KNOWS, false, 200, 2, new Random(3));
+        double bound = Closenesses.errorBound(estimate, 200, 0.99);
+        for (int v = 0; v < n; v++) {
+            assertEquals(exact.reached(v), estimate.reached(v));
+            assertEquals("node " + v, exact.farness(v) / exact.reached(v),
+                         estimate.farness(v) / estimate.reached(v), bound);
+        }
+    }
+    /*
+     * Unweighted distances from a source over the KNOWS slice, -1 if unreached.
+     */
+    private static void bfs(GraphSnapshot graph, int source, int[] dist) {
+        Arrays.fill(dist, -1);
+        int[] queue = new int[graph.size()];
+        int head = 0, tail = 0;
+        dist[source]  = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = graph.begin(v, KNOWS); e < graph.end(v, KNOWS); e++) {
+                int w = graph.target(e);
+                if (dist[w] < 0) {
+                    dist[w] = dist[v] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+    }
+}
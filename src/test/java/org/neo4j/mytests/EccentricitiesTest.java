@@ -0,0 +1,98 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.centrality.Eccentricities;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Eccentricities Test Class
+ * Checks the eccentricities found by bounding diameters against one BFS per
+ * node over every relationship type, with the radius and diameter they give.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class EccentricitiesTest {
+    
+    @Test
+    public void shouldMatchOneSearchPerNode() {
+        Random random = new Random(2);
+        for (int it = 0; it < 50; it++) {
+            int n = 1 + random.nextInt(1500);
+            int m = random.nextInt(2 * n + 1);
+            int[] start = new int[m], end = new int[m], type = new int[m];
+            double[] weight = new double[m];
+            for (int r = 0; r < m; r++) {
+                start[r]  = random.nextInt(n);
+                end[r]    = random.nextInt(n);
+                type[r]   = random.nextInt(GraphSnapshot.TYPES);
+                weight[r] = Double.NaN;
+            }
+            GraphSnapshot graph = RandomGraphs.of(n, start, end, type, weight);
+            Eccentricities.Result result = Eccentricities.compute(graph);
+            int[] dist = new int[n];
+            int radius = Integer.MAX_VALUE, diameter = 0;
+            for (int v = 0; v < n; v++) {
+                int eccentricity = eccentricity(graph, v, dist);
+                assertEquals("node " + v, eccentricity, result.eccentricity(v));
+                diameter = Math.max(diameter, eccentricity);
+                if (eccentricity > 0)
+                    radius = Math.min(radius, eccentricity);
+            }
+            assertEquals(diameter, result.diameter());
+            assertEquals((radius == Integer.MAX_VALUE) ? 0 : radius, result.radius());
+            assertTrue(result.bfsRuns() <= n);
+        }
+    }
+    /*
+     * The largest BFS distance from a node over all the relationships.
+     */
+    private static int eccentricity(GraphSnapshot graph, int source, int[] dist) {
+        Arrays.fill(dist, -1);
+        int[] queue = new int[graph.size()];
+        int head = 0, tail = 0, farthest = 0;
+        dist[source]  = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int v = queue[head++];
+            farthest = dist[v];
+            for (int e = graph.begin(v); e < graph.end(v); e++) {
+                int w = graph.target(e);
+                if (dist[w] < 0) {
+                    dist[w] = dist[v] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return farthest;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.utils.GomoryHuTree;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import org.neo4j.hintplugin.utils.MaximumFlow;
+import org.neo4j.hintplugin.utils.ResidualGraph;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Gomory Hu Tree Test Class
+ * Checks the maximum flow read from the tree against a maximum flow run
+ * for every pair of nodes, disconnected ones included.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class GomoryHuTreeTest {
+    private static final GraphSnapshot.Rels HAS_TERM = GraphSnapshot.Rels.HAS_TERM;
+    private static final String[] ENGINES = {"edmondskarp", "dinic", "pushrelabel"};
+    
+    @Test
+    public void shouldMatchEveryPairwiseFlow() {
+        Random random = new Random(11);
+        for (int it = 0; it < 60; it++) {
+            int n = 2 + random.nextInt(15);
+            GraphSnapshot graph = RandomGraphs.of(random, n, random.nextInt(3 * n), HAS_TERM, 5);
+            for (String engine : ENGINES) {
+                GomoryHuTree tree = GomoryHuTree.build(graph, HAS_TERM, engine);
+                for (int u = 0; u < n; u++)
+                    for (int v = u + 1; v < n; v++) {
+                        double expected = MaximumFlow.maxFlow(new ResidualGraph(graph, HAS_TERM), u, v, "edmondskarp");
+                        assertEquals(engine + " " + u + "-" + v, expected, tree.maxFlow(u, v), 1e-6);
+                        assertEquals(engine + " " + v + "-" + u, expected, tree.maxFlow(v, u), 1e-6);
+                    }
+            }
+        }
+    }
+    
+    @Test
+    public void shouldReadEveryRowInOneWalk() {
+        Random random = new Random(8);
+        for (int it = 0; it < 100; it++) {
+            int n = 1 + random.nextInt(40);
+            GraphSnapshot graph = RandomGraphs.of(random, n, random.nextInt(3 * n), HAS_TERM, 5);
+            GomoryHuTree tree = GomoryHuTree.build(graph, HAS_TERM, "dinic");
+            double[] flows = new double[n];
+            for (int s = 0; s < n; s++) {
+                tree.row(s, flows);
+                for (int t = 0; t < n; t++)
+                    assertEquals(s + "-" + t, tree.maxFlow(s, t), flows[t], 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Graph Snapshot Test Class
+ * Checks that the CSR slices hold every relationship once per endpoint,
+ * under its type, with its weight and direction.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class GraphSnapshotTest {
+    
+    @Test
+    public void shouldIndexTheNodeIds() {
+        GraphSnapshot graph = RandomGraphs.of(3, new int[] {0}, new int[] {2},
+                                              new int[] {GraphSnapshot.Rels.KNOWS.ordinal()},
+                                              new double[] {Double.NaN});
+        for (int v = 0; v < 3; v++)
+            assertEquals(v, graph.indexOf(graph.nodeId(v)));
+        assertEquals(-1, graph.indexOf(0));
+        assertEquals(-1, graph.indexOf(1000));
+        assertEquals(1, graph.relationshipCount(GraphSnapshot.Rels.KNOWS));
+        assertEquals(0, graph.degree(1));
+    }
+    
+    @Test
+    public void shouldListEveryRelationshipOncePerEndpoint() {
+        Random random = new Random(1);
+        for (int it = 0; it < 50; it++) {
+            int n = 1 + random.nextInt(30), m = random.nextInt(4 * n);
+            int[] start = new int[m], end = new int[m], type = new int[m];
+            double[] weight = new double[m];
+            for (int r = 0; r < m; r++) {
+                start[r]  = random.nextInt(n);
+                end[r]    = random.nextInt(n);
+                type[r]   = random.nextInt(GraphSnapshot.TYPES);
+                weight[r] = random.nextInt(5);
+            }
+            GraphSnapshot graph = RandomGraphs.of(n, start, end, type, weight);
+            assertEquals(m, graph.relationshipCount());
+            int[] seen = new int[m];
+            for (int v = 0; v < n; v++) {
+                assertEquals(graph.begin(v), graph.begin(v, 0));
+                assertEquals(graph.end(v), graph.end(v, GraphSnapshot.TYPES - 1));
+                for (int slot = 0; slot < GraphSnapshot.TYPES; slot++)
+                    for (int e = graph.begin(v, slot); e < graph.end(v, slot); e++) {
+                        int r = graph.relationship(e);
+                        seen[r]++;
+                        assertEquals(type[r], slot);
+                        assertEquals(weight[r], graph.weight(e), 0.0);
+                        assertEquals(graph.isOutgoing(e) ? end[r] : start[r], graph.target(e));
+                        assertEquals(graph.isOutgoing(e) ? start[r] : end[r], v);
+                    }
+            }
+            for (int r = 0; r < m; r++)
+                assertEquals("relationship " + r, (start[r] == end[r]) ? 1 : 2, seen[r]);
+        }
+    }
+}
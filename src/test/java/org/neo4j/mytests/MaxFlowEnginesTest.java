@@ -0,0 +1,101 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import org.neo4j.hintplugin.utils.MaximumFlow;
+import org.neo4j.hintplugin.utils.ResidualGraph;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+/**
+ * Maximum Flow Engines Test Class
+ * Checks Dinic and push-relabel against Edmonds-Karp, and every flow against
+ * the capacity of the minimum cut it saturates.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class MaxFlowEnginesTest {
+    private static final GraphSnapshot.Rels HAS_TERM = GraphSnapshot.Rels.HAS_TERM;
+    private static final String[] ENGINES = {"edmondskarp", "dinic", "pushrelabel"};
+    
+    @Test
+    public void shouldFindAKnownFlow() {
+        // Two disjoint paths of capacity 3 and 2, and a crossing of 1...
+        int t = HAS_TERM.ordinal();
+        GraphSnapshot graph = RandomGraphs.of(4, new int[] {0, 1, 0, 2, 1}, new int[] {1, 3, 2, 3, 2},
+                                              new int[] {t, t, t, t, t}, new double[] {4, 3, 2, 3, 1});
+        for (String engine : ENGINES)
+            assertEquals(engine, 6.0, MaximumFlow.maxFlow(new ResidualGraph(graph, HAS_TERM), 0, 3, engine), 1e-9);
+    }
+    
+    @Test
+    public void shouldSaturateAMinimumCut() {
+        Random random = new Random(5);
+        for (int it = 0; it < 300; it++) {
+            int n = 2 + random.nextInt(40);
+            GraphSnapshot graph = RandomGraphs.of(random, n, random.nextInt(3 * n), HAS_TERM, 10);
+            int source = random.nextInt(n), sink = random.nextInt(n);
+            if (source == sink)
+                continue;
+            double expected = MaximumFlow.maxFlow(new ResidualGraph(graph, HAS_TERM), source, sink, "edmondskarp");
+            for (String engine : ENGINES) {
+                ResidualGraph residual = new ResidualGraph(graph, HAS_TERM);
+                assertEquals(engine, expected, MaximumFlow.maxFlow(residual, source, sink, engine), 1e-6);
+                // The saturated cut has the capacity of the flow...
+                boolean[] side = residual.sourceSide(source);
+                assertFalse(engine, side[sink]);
+                double cut = 0.0;
+                for (int v = 0; v < n; v++) {
+                    if (!side[v])
+                        continue;
+                    for (int e = graph.begin(v, HAS_TERM); e < graph.end(v, HAS_TERM); e++)
+                        if (!side[graph.target(e)])
+                            cut += residual.capacity(e);
+                }
+                assertEquals(engine, expected, cut, 1e-6);
+            }
+        }
+    }
+    
+    @Test
+    public void shouldReuseAResetResidualGraph() {
+        Random random = new Random(7);
+        GraphSnapshot graph = RandomGraphs.of(random, 30, 90, HAS_TERM, 10);
+        for (String engine : ENGINES) {
+            ResidualGraph residual = new ResidualGraph(graph, HAS_TERM);
+            for (int source = 0; source < 5; source++) {
+                residual.reset();
+                double flow = MaximumFlow.maxFlow(residual, source, 29 - source, engine);
+                assertEquals(engine, MaximumFlow.maxFlow(new ResidualGraph(graph, HAS_TERM), source, 29 - source, "edmondskarp"),
+                             flow, 1e-6);
+            }
+        }
+    }
+}
@@ -162,6 +162,8 @@ public class MaxflowTest {
         }catch(Exception ex){
             System.out.println("***** ERROR: " + ex);
         }
+        double expected[] = {6.0, 4.0, 2.0, 4.0, 2.0, 2.0};
+        double flows[]    = new double[uriArray.length];
         //Establish a connection to the server and get Content.
         for(int i =0; i<uriArray.length; i++){
             try {
@@ -179,11 +181,14 @@ public class MaxflowTest {
                 JSONObject obj = new JSONObject(text.toString());
                 //              System.out.println("******* JSON: " + text.toString());
                 System.out.println("***Flow-JSON: " + obj.optDouble("maxflow"));
+                flows[i] = obj.optDouble("maxflow");
             } catch(Exception ex) {
                 System.out.println("MaxflowTest Exception: " + ex);
             }
         }
-        assertEquals("200","200");
+        for(int i =0; i<uriArray.length; i++){
+            assertEquals(expected[i], flows[i], 0.001);
+        }
     }
 
     private Client jerseyClient() {
@@ -0,0 +1,142 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.utils.MinHashIndex;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * MinHash Index Test Class
+ * Checks the MinHash and ICWS signatures against the exact Jaccard and
+ * weighted Jaccard indexes of random term sets.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class MinHashIndexTest {
+    
+    @Test
+    public void shouldEstimateTheJaccardIndex() {
+        Random random = new Random(13);
+        double bias = 0.0;
+        int    runs = 500;
+        for (int it = 0; it < runs; it++) {
+            Set<Long> a = new HashSet<Long>(), b = new HashSet<Long>();
+            int terms = 1 + random.nextInt(200);
+            for (int i = 0; i < terms; i++) {
+                long term = random.nextInt(4 * terms);
+                if (random.nextBoolean())
+                    a.add(term);
+                if (random.nextInt(3) > 0)
+                    b.add(term);
+            }
+            a.add(-1L);
+            b.add(-2L);
+            Set<Long> common = new HashSet<Long>(a);
+            common.retainAll(b);
+            double jaccard  = (double)common.size() / (a.size() + b.size() - common.size());
+            double estimate = agreement(MinHashIndex.signature(toArray(a)), MinHashIndex.signature(toArray(b)));
+            assertTrue(Math.abs(estimate - jaccard) < 0.3);
+            bias += estimate - jaccard;
+        }
+        assertEquals(0.0, bias / runs, 0.02);
+    }
+    
+    @Test
+    public void shouldEstimateTheWeightedJaccardIndex() {
+        Random random = new Random(14);
+        double bias = 0.0;
+        int    runs = 500;
+        for (int it = 0; it < runs; it++) {
+            int      terms = 1 + random.nextInt(100);
+            long[]   ids   = new long[terms];
+            double[] a     = new double[terms], b = new double[terms];
+            double   min   = 0.0, max = 0.0;
+            for (int i = 0; i < terms; i++) {
+                ids[i] = 1000L * it + i;
+                a[i]   = random.nextInt(4) == 0 ? 0.0 : 0.1 + 10 * random.nextDouble();
+                b[i]   = random.nextInt(4) == 0 ? 0.0 : (random.nextBoolean() ? a[i] : 0.1 + 10 * random.nextDouble());
+                min   += Math.min(a[i], b[i]);
+                max   += Math.max(a[i], b[i]);
+            }
+            if (max == 0.0)
+                continue;
+            double estimate = agreement(weighted(ids, a), weighted(ids, b));
+            assertTrue(Math.abs(estimate - min / max) < 0.3);
+            bias += estimate - min / max;
+        }
+        assertEquals(0.0, bias / runs, 0.02);
+    }
+    
+    @Test
+    public void shouldAgreeOnEqualSetsOnly() {
+        long[] terms = {3, 7, 11, 19, 23};
+        assertEquals(1.0, agreement(MinHashIndex.signature(terms), MinHashIndex.signature(new long[] {23, 19, 11, 7, 3})));
+        assertEquals(0.0, agreement(MinHashIndex.signature(terms), MinHashIndex.signature(new long[] {4, 8, 12})), 0.1);
+    }
+    
+    private static double agreement(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < MinHashIndex.HASHES; i++) {
+            if (a[i] == b[i])
+                equal++;
+        }
+        return (double)equal / MinHashIndex.HASHES;
+    }
+    
+    /*
+     * The ICWS signature of the positive weights, an empty one otherwise.
+     */
+    private static int[] weighted(long[] ids, double[] weights) {
+        int n = 0;
+        for (double weight : weights) {
+            if (weight > 0)
+                n++;
+        }
+        long[]   terms    = new long[n];
+        double[] positive = new double[n];
+        for (int i = 0, j = 0; i < ids.length; i++) {
+            if (weights[i] > 0) {
+                terms[j]      = ids[i];
+                positive[j++] = weights[i];
+            }
+        }
+        return MinHashIndex.weightedSignature(terms, positive);
+    }
+    
+    private static long[] toArray(Set<Long> set) {
+        long[] array = new long[set.size()];
+        int    i     = 0;
+        for (long value : set)
+            array[i++] = value;
+        return array;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import org.neo4j.hintplugin.utils.Neighborhood;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Neighborhood Test Class
+ * Checks the sorted neighborhoods and their merge intersections against
+ * comparing every pair of relationships, on multigraphs with missing weights.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class NeighborhoodTest {
+    static final GraphSnapshot.Rels[] TYPES = {
+        GraphSnapshot.Rels.HAS_TERM, GraphSnapshot.Rels.LIKES_TERM, GraphSnapshot.Rels.KNOWS
+    };
+    
+    @Test
+    public void shouldMatchEveryPairOfRelationships() {
+        Random random = new Random(11);
+        for (int it = 0; it < 200; it++) {
+            GraphSnapshot graph = randomGraph(random);
+            int n = graph.size();
+            for (int q = 0; q < 10; q++) {
+                int a = random.nextInt(n), b = random.nextInt(n);
+                Neighborhood x = Neighborhood.of(graph, a), y = Neighborhood.of(graph, b);
+                int[] targets = targets(graph, a);
+                Arrays.sort(targets);
+                assertEquals(targets.length, x.size());
+                for (int i = 0; i < x.size(); i++)
+                    assertEquals(targets[i], x.node(i));
+                long   count = 0;
+                double sum   = 0.0, weights = 0.0;
+                for (GraphSnapshot.Rels s : TYPES) {
+                    for (int e = graph.begin(a, s); e < graph.end(a, s); e++) {
+                        if (!Double.isNaN(graph.weight(e)))
+                            weights += graph.weight(e);
+                        for (GraphSnapshot.Rels t : TYPES) {
+                            for (int f = graph.begin(b, t); f < graph.end(b, t); f++) {
+                                if (graph.target(e) != graph.target(f))
+                                    continue;
+                                count++;
+                                if (!Double.isNaN(graph.weight(e)) && !Double.isNaN(graph.weight(f)))
+                                    sum += graph.weight(e) + graph.weight(f);
+                            }
+                        }
+                    }
+                }
+                assertEquals(weights, x.weightSum(), 1e-9);
+                assertEquals(count, Neighborhood.intersection(x, y));
+                assertEquals(sum, Neighborhood.weightedIntersection(x, y), 1e-9);
+            }
+        }
+    }
+    /*
+     * A multigraph of the three content types, with a few popular terms and some weights missing.
+     */
+    static GraphSnapshot randomGraph(Random random) {
+        int n = 1 + random.nextInt(40);
+        int m = random.nextInt(4 * n + 1);
+        int[] start = new int[m], end = new int[m], type = new int[m];
+        double[] weight = new double[m];
+        for (int r = 0; r < m; r++) {
+            start[r]  = random.nextInt(n);
+            end[r]    = random.nextInt(Math.max(1, n / 3));
+            type[r]   = TYPES[random.nextInt(TYPES.length)].ordinal();
+            weight[r] = random.nextInt(4) == 0 ? Double.NaN : 1 + random.nextInt(9);
+        }
+        return RandomGraphs.of(n, start, end, type, weight);
+    }
+    private static int[] targets(GraphSnapshot graph, int v) {
+        int size = 0;
+        for (GraphSnapshot.Rels type : TYPES)
+            size += graph.end(v, type) - graph.begin(v, type);
+        int[] targets = new int[size];
+        int   i       = 0;
+        for (GraphSnapshot.Rels type : TYPES) {
+            for (int e = graph.begin(v, type); e < graph.end(v, type); e++)
+                targets[i++] = graph.target(e);
+        }
+        return targets;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+
+/**
+ * Random Graphs Class
+ * Detached snapshots of random multigraphs (loops and parallel relationships
+ * included) for the unit tests of the in-memory engines.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+final class RandomGraphs {
+    
+    private RandomGraphs() {
+    }
+    /**
+     * A snapshot of n nodes and m relationships of one type.
+     * @param random:  the source of the relationships.
+     * @param type:    the relationship type of every relationship.
+     * @param weights: the largest integer weight, 0 for no weight (NaN).
+     */
+    static GraphSnapshot of(Random random, int n, int m, GraphSnapshot.Rels type, int weights) {
+        int[] start = new int[m], end = new int[m], types = new int[m];
+        double[] weight = new double[m];
+        Arrays.fill(types, type.ordinal());
+        for (int r = 0; r < m; r++) {
+            start[r]  = random.nextInt(n);
+            end[r]    = random.nextInt(n);
+            weight[r] = (weights > 0) ? 1 + random.nextInt(weights) : Double.NaN;
+        }
+        return of(n, start, end, types, weight);
+    }
+    /**
+     * A snapshot whose node ids are the node indices shifted by 10.
+     */
+    static GraphSnapshot of(int n, int[] start, int[] end, int[] type, double[] weight) {
+        long[] nodeIds = new long[n];
+        for (int v = 0; v < n; v++)
+            nodeIds[v] = v + 10;
+        return GraphSnapshot.of(nodeIds, start, end, type, weight);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import org.neo4j.hintplugin.utils.Neighborhood;
+import org.neo4j.hintplugin.utils.SimilarityJoin;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Similarity Join Test Class
+ * Checks the filtered join against a brute force comparison of every pair of
+ * neighbor sets, for both measures and thresholds up to the largest value.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class SimilarityJoinTest {
+    private static final GraphSnapshot.Rels[] TYPES = {
+        GraphSnapshot.Rels.HAS_TERM, GraphSnapshot.Rels.LIKES_TERM, GraphSnapshot.Rels.KNOWS
+    };
+    
+    @Test
+    public void shouldMatchTheBruteForceJoin() {
+        Random random = new Random(5);
+        for (int it = 0; it < 200; it++) {
+            int n = 30 + random.nextInt(40);
+            int m = n * (2 + random.nextInt(4));
+            // Few popular terms, so that the sets overlap...
+            int[] start = new int[m], end = new int[m], type = new int[m];
+            double[] weight = new double[m];
+            for (int r = 0; r < m; r++) {
+                start[r]  = random.nextInt(n);
+                end[r]    = random.nextInt(Math.max(1, n / 3));
+                type[r]   = TYPES[random.nextInt(TYPES.length)].ordinal();
+                weight[r] = 1.0;
+            }
+            GraphSnapshot graph = RandomGraphs.of(n, start, end, type, weight);
+            boolean jaccard   = random.nextBoolean();
+            double  threshold = jaccard ? 0.1 + 0.9 * random.nextDouble() : 0.05 + 0.45 * random.nextDouble();
+            if (it % 10 == 0)
+                threshold = jaccard ? 1.0 : 0.5;
+            Map<String, Double> expected = bruteForce(graph, threshold, jaccard);
+            SimilarityJoin join = SimilarityJoin.join(graph, threshold, jaccard, 1 + random.nextInt(3));
+            assertEquals("pairs", expected.size(), join.size());
+            for (int i = 0; i < join.size(); i++) {
+                Double similarity = expected.get(join.first(i) + "," + join.second(i));
+                assertTrue("unexpected pair " + join.first(i) + "," + join.second(i), similarity != null);
+                assertEquals(similarity, join.similarity(i), 1e-12);
+            }
+        }
+    }
+    /*
+     * Every pair above the threshold, keyed from the lower to the higher node id.
+     */
+    private static Map<String, Double> bruteForce(GraphSnapshot graph, double threshold, boolean jaccard) {
+        int n = graph.size();
+        Map<String, Double> pairs = new HashMap<String, Double>();
+        for (int a = 0; a < n; a++) {
+            TreeSet<Integer> x = neighbors(graph, a);
+            if (x.isEmpty())
+                continue;
+            for (int b = 0; b < n; b++) {
+                if (a == b || graph.nodeId(a) > graph.nodeId(b))
+                    continue;
+                TreeSet<Integer> y = neighbors(graph, b);
+                if (y.isEmpty())
+                    continue;
+                TreeSet<Integer> both = new TreeSet<Integer>(x);
+                both.retainAll(y);
+                int overlap = both.size();
+                double similarity = jaccard ? (double)overlap / (x.size() + y.size() - overlap)
+                                            : (double)overlap / (x.size() + y.size());
+                if (similarity >= threshold - 1e-9)
+                    pairs.put(a + "," + b, similarity);
+            }
+        }
+        return pairs;
+    }
+    private static TreeSet<Integer> neighbors(GraphSnapshot graph, int v) {
+        Neighborhood neighborhood = Neighborhood.of(graph, v);
+        TreeSet<Integer> set = new TreeSet<Integer>();
+        for (int i = 0; i < neighborhood.size(); i++)
+            set.add(neighborhood.node(i));
+        return set;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.centrality.Closenesses;
+import org.neo4j.hintplugin.centrality.TopCloseness;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Top Closeness Test Class
+ * Checks the pruned top-k searches against the ranking of the all-nodes
+ * closeness.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class TopClosenessTest {
+    private static final GraphSnapshot.Rels KNOWS = GraphSnapshot.Rels.KNOWS;
+    private static final String[] VARIANTS = {"standard", "harmonic", "wassermanfaust"};
+    
+    @Test
+    public void shouldRankLikeTheAllNodesCloseness() {
+        Random random = new Random(9);
+        for (int it = 0; it < 100; it++) {
+            int n = 1 + random.nextInt(300);
+            GraphSnapshot graph = RandomGraphs.of(random, n, random.nextInt(3 * n + 1), KNOWS, 0);
+            Closenesses.Result result = Closenesses.compute(graph, KNOWS, false, 1);
+            for (String variant : VARIANTS) {
+                int k = 1 + random.nextInt(20);
+                TopCloseness top = TopCloseness.of(graph, KNOWS, false, variant, k, 1 + it % 3);
+                double[] scores = new double[n];
+                for (int v = 0; v < n; v++)
+                    scores[v] = result.closeness(v, variant);
+                double[] sorted = scores.clone();
+                Arrays.sort(sorted);
+                assertEquals(variant, Math.min(k, n), top.size());
+                for (int i = 0; i < top.size(); i++) {
+                    assertEquals(variant, sorted[n - 1 - i], top.score(i), 1e-12);
+                    assertEquals(variant, scores[top.node(i)], top.score(i), 1e-12);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void shouldRankAStarCenterAboveAnIsolatedPairWhenHarmonic() {
+        int knows = KNOWS.ordinal();
+        GraphSnapshot graph = RandomGraphs.of(7, new int[] {0, 0, 0, 0, 5}, new int[] {1, 2, 3, 4, 6},
+                                              new int[] {knows, knows, knows, knows, knows},
+                                              new double[] {1, 1, 1, 1, 1});
+        TopCloseness top = TopCloseness.of(graph, KNOWS, false, "harmonic", 1, 1);
+        assertEquals(0, top.node(0));
+        assertEquals(4.0 / 6.0, top.score(0), 1e-12);
+    }
+}
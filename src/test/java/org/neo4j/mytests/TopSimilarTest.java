@@ -0,0 +1,122 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import org.neo4j.hintplugin.utils.TopSimilar;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Top Similar Test Class
+ * Checks the k most similar nodes against scoring every other node, with
+ * queries on snapshots of different sizes reusing the same thread buffers.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class TopSimilarTest {
+    private static final GraphSnapshot.Rels[] TYPES = {
+        GraphSnapshot.Rels.HAS_TERM, GraphSnapshot.Rels.LIKES_TERM, GraphSnapshot.Rels.KNOWS
+    };
+    
+    @Test
+    public void shouldRankLikeScoringEveryNode() {
+        Random random = new Random(12);
+        for (int it = 0; it < 200; it++) {
+            int n = 2 + random.nextInt(60);
+            int m = n * (1 + random.nextInt(4));
+            int[] start = new int[m], end = new int[m], type = new int[m];
+            double[] weight = new double[m];
+            for (int r = 0; r < m; r++) {
+                start[r]  = random.nextInt(n);
+                end[r]    = random.nextInt(Math.max(1, n / 3));
+                type[r]   = TYPES[random.nextInt(TYPES.length)].ordinal();
+                weight[r] = 1.0;
+            }
+            final GraphSnapshot graph = RandomGraphs.of(n, start, end, type, weight);
+            for (int q = 0; q < 5; q++) {
+                final int v = random.nextInt(n);
+                int       k = random.nextInt(n + 2);
+                final double[] similarity = new double[n];
+                final int[]    shared     = new int[n];
+                List<Integer>  expected   = new ArrayList<Integer>();
+                for (int u = 0; u < n; u++) {
+                    if (u == v)
+                        continue;
+                    shared[u] = shared(graph, v, u);
+                    if (shared[u] == 0)
+                        continue;
+                    similarity[u] = (double)shared[u] / (degree(graph, v) + degree(graph, u));
+                    expected.add(u);
+                }
+                Collections.sort(expected, new Comparator<Integer>() {
+                    public int compare(Integer a, Integer b) {
+                        if (similarity[a] != similarity[b])
+                            return Double.compare(similarity[b], similarity[a]);
+                        return Long.compare(graph.nodeId(a), graph.nodeId(b));
+                    }
+                });
+                TopSimilar top = TopSimilar.of(graph, v, k);
+                assertEquals(Math.min(k, expected.size()), top.size());
+                for (int i = 0; i < top.size(); i++) {
+                    assertEquals((int)expected.get(i), top.node(i));
+                    assertEquals(shared[top.node(i)], top.intersection(i));
+                    assertEquals(similarity[top.node(i)], top.similarity(i), 1e-12);
+                }
+            }
+        }
+    }
+    /*
+     * The paths v - t - u, one per pair of relationships.
+     */
+    private static int shared(GraphSnapshot graph, int v, int u) {
+        int shared = 0;
+        for (GraphSnapshot.Rels a : TYPES) {
+            for (int e = graph.begin(v, a); e < graph.end(v, a); e++) {
+                int t = graph.target(e);
+                for (GraphSnapshot.Rels b : TYPES) {
+                    for (int f = graph.begin(t, b); f < graph.end(t, b); f++) {
+                        if (graph.target(f) == u)
+                            shared++;
+                    }
+                }
+            }
+        }
+        return shared;
+    }
+    private static int degree(GraphSnapshot graph, int v) {
+        int degree = 0;
+        for (GraphSnapshot.Rels type : TYPES)
+            degree += graph.end(v, type) - graph.begin(v, type);
+        return degree;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Francisco G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.neo4j.mytests;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.hintplugin.utils.GraphSnapshot;
+import org.neo4j.hintplugin.utils.WeightVectors;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Weight Vectors Test Class
+ * Checks the Euclidean, cosine and Pearson measures of the sparse vectors
+ * against dense vectors over every node, a missing weight counting as 0.
+ * @author  Francisco Gutiérrez. (fsalvador23@gmail.com)
+ * @version 0.1
+ * @since 2014-05-01
+ */
+public class WeightVectorsTest {
+    
+    @Test
+    public void shouldMatchTheDenseVectors() {
+        Random random = new Random(17);
+        for (int it = 0; it < 200; it++) {
+            GraphSnapshot graph   = NeighborhoodTest.randomGraph(random);
+            WeightVectors vectors = WeightVectors.of(graph);
+            int n = graph.size();
+            for (int q = 0; q < 10; q++) {
+                int a = random.nextInt(n), b = random.nextInt(n);
+                double[]  x = new double[n], y = new double[n];
+                boolean[] inX = new boolean[n], inY = new boolean[n];
+                dense(graph, a, x, inX);
+                dense(graph, b, y, inY);
+                double dot = 0.0, distance = 0.0, xx = 0.0, yy = 0.0, sx = 0.0, sy = 0.0;
+                int    size = 0;
+                for (int t = 0; t < n; t++) {
+                    dot      += x[t] * y[t];
+                    distance += (x[t] - y[t]) * (x[t] - y[t]);
+                    xx       += x[t] * x[t];
+                    yy       += y[t] * y[t];
+                    if (inX[t] || inY[t]) {
+                        size++;
+                        sx += x[t];
+                        sy += y[t];
+                    }
+                }
+                assertEquals(dot, vectors.dot(a, b), 1e-9);
+                assertEquals(Math.sqrt(distance), vectors.euclidean(a, b), 1e-9);
+                assertEquals(xx > 0 && yy > 0 ? dot / Math.sqrt(xx * yy) : 0.0, vectors.cosine(a, b), 1e-9);
+                // Pearson over the union of the neighbors...
+                double mx = sx / size, my = sy / size, cov = 0.0, vx = 0.0, vy = 0.0;
+                for (int t = 0; t < n; t++) {
+                    if (!inX[t] && !inY[t])
+                        continue;
+                    cov += (x[t] - mx) * (y[t] - my);
+                    vx  += (x[t] - mx) * (x[t] - mx);
+                    vy  += (y[t] - my) * (y[t] - my);
+                }
+                double pearson = vx > 1e-9 && vy > 1e-9 ? cov / Math.sqrt(vx * vy) : 0.0;
+                assertEquals(pearson, vectors.pearson(a, b), 1e-6);
+            }
+        }
+    }
+    /*
+     * The summed weights of v by neighbor, and which neighbors it has.
+     */
+    private static void dense(GraphSnapshot graph, int v, double[] values, boolean[] neighbors) {
+        for (GraphSnapshot.Rels type : NeighborhoodTest.TYPES) {
+            for (int e = graph.begin(v, type); e < graph.end(v, type); e++) {
+                neighbors[graph.target(e)] = true;
+                if (!Double.isNaN(graph.weight(e)))
+                    values[graph.target(e)] += graph.weight(e);
+            }
+        }
+    }
+}